@@ -5,6 +5,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
@@ -44,6 +46,12 @@ public class SnowstormApplication extends Config implements ApplicationRunner {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private QueryService queryService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
 	@Autowired
 	private ApplicationContext applicationContext;
 
@@ -66,6 +74,10 @@ public class SnowstormApplication extends Config implements ApplicationRunner {
 			mrcmService.loadFromFiles();
 			referenceSetMemberService.init();
 
+			// Warns if the indices need to be rebuilt
+			queryService.isAttributeCountIndexed();
+			descriptionService.isTermPrefixIndexed();
+
 			logger.info("--- Snowstorm startup complete ---");
 
 			if (applicationArguments.containsOption(IMPORT_ARG)) {
@@ -19,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.langauges.ecl.ECLQueryBuilder;
 import org.snomed.snowstorm.config.elasticsearch.SnowstormElasticsearchMappingContext;
+import org.snomed.snowstorm.config.elasticsearch.SnowstormElasticsearchTemplate;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.config.ConceptStoreMixIn;
 import org.snomed.snowstorm.core.data.repositories.config.DescriptionStoreMixIn;
@@ -133,7 +134,24 @@ public abstract class Config {
 	private String indexNamePrefix;
 
 	@Bean
-	public ElasticsearchTemplate elasticsearchTemplate() {
+	public SnowstormElasticsearchTemplate elasticsearchTemplate() {
+		return new SnowstormElasticsearchTemplate(
+				elasticsearchClient(),
+				new MappingElasticsearchConverter(elasticsearchMappingContext()),
+				fastResultsMapper()
+		);
+	}
+
+	@Bean
+	public SimpleElasticsearchMappingContext elasticsearchMappingContext() {
+		return new SnowstormElasticsearchMappingContext(indexNamePrefix);
+	}
+
+	/**
+	 * The results mapper of the template, also used to map the responses of requests made with the client directly.
+	 */
+	@Bean
+	public FastResultsMapper fastResultsMapper() {
 		final ObjectMapper elasticSearchMapper = Jackson2ObjectMapperBuilder
 				.json()
 				.defaultViewInclusion(false)
@@ -157,14 +175,7 @@ public abstract class Config {
 			}
 		};
 
-		SimpleElasticsearchMappingContext mappingContext = new SnowstormElasticsearchMappingContext(indexNamePrefix);
-		FastResultsMapper fastResultsMapper = new FastResultsMapper(mappingContext, entityMapper);
-
-		return new ElasticsearchTemplate(
-				elasticsearchClient(),
-				new MappingElasticsearchConverter(mappingContext),
-				fastResultsMapper
-		);
+		return new FastResultsMapper(elasticsearchMappingContext(), entityMapper);
 	}
 
 	@Bean
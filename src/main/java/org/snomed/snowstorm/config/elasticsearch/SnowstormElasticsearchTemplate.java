@@ -0,0 +1,98 @@
+package org.snomed.snowstorm.config.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.data.elasticsearch.ElasticsearchException;
+import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.ResourceUtil;
+import org.springframework.data.elasticsearch.core.ResultsMapper;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.rest.ElasticsearchRestClient;
+
+import java.io.IOException;
+
+public class SnowstormElasticsearchTemplate extends ElasticsearchTemplate {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	// Index to put the mapping of a class to, when not the index of the class
+	private final ThreadLocal<String> mappingIndexName = new ThreadLocal<>();
+
+	public SnowstormElasticsearchTemplate(ElasticsearchRestClient client, ElasticsearchConverter elasticsearchConverter, ResultsMapper resultsMapper) {
+		super(client, elasticsearchConverter, resultsMapper);
+	}
+
+	/**
+	 * Spring Data ignores the shards and replicas of the @Document annotation when the class has a setting file.
+	 * Those are added to the settings here so that the annotation stays the one place where they are configured.
+	 */
+	@Override
+	public <T> boolean createIndex(Class<T> clazz) {
+		if (clazz.isAnnotationPresent(Setting.class)) {
+			return createIndex(getPersistentEntityFor(clazz).getIndexName(), getIndexSettings(clazz));
+		}
+		return super.createIndex(clazz);
+	}
+
+	/**
+	 * @return The settings of the setting file of the class, if any, with the shards, replicas and refresh interval of its @Document annotation.
+	 */
+	public <T> String getIndexSettings(Class<T> clazz) {
+		ObjectNode settings = objectMapper.createObjectNode();
+		Setting setting = clazz.getAnnotation(Setting.class);
+		if (setting != null) {
+			try {
+				settings = (ObjectNode) objectMapper.readTree(ResourceUtil.readFileFromClasspath(setting.settingPath()));
+			} catch (IOException | ClassCastException e) {
+				throw new ElasticsearchException("Failed to read index settings " + setting.settingPath(), e);
+			}
+		}
+		ElasticsearchPersistentEntity<T> persistentEntity = getPersistentEntityFor(clazz);
+		settings.with("index")
+				.put("number_of_shards", persistentEntity.getShards())
+				.put("number_of_replicas", persistentEntity.getReplicas())
+				.put("refresh_interval", persistentEntity.getRefreshInterval());
+		return settings.toString();
+	}
+
+	/**
+	 * Once an index has been migrated its name is an alias, which the delete index API does not accept.
+	 * The indices behind the alias are deleted instead, which also removes the alias.
+	 */
+	@Override
+	public boolean deleteIndex(String indexName) {
+		if (!indexExists(indexName)) {
+			return false;
+		}
+		String[] concreteIndexNames = getClient().admin().indices().prepareGetIndex().setIndices(indexName).get().getIndices();
+		boolean deleted = true;
+		for (String concreteIndexName : concreteIndexNames) {
+			deleted &= super.deleteIndex(concreteIndexName);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Puts the mapping built from the class to the given index rather than to the index of the class.
+	 */
+	public <T> boolean putMapping(String indexName, Class<T> clazz) {
+		mappingIndexName.set(indexName);
+		try {
+			return putMapping(clazz);
+		} finally {
+			mappingIndexName.remove();
+		}
+	}
+
+	@Override
+	public <T> boolean putMapping(Class<T> clazz, Object mapping) {
+		String indexName = mappingIndexName.get();
+		if (indexName != null) {
+			return putMapping(indexName, getPersistentEntityFor(clazz).getIndexType(), mapping);
+		}
+		return super.putMapping(clazz, mapping);
+	}
+
+}
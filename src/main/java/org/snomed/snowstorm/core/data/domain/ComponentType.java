@@ -7,4 +7,18 @@ public enum ComponentType {
 		int lastDigit = Integer.parseInt(partitionId.substring(partitionId.length() - 1));
 		return ComponentType.values()[lastDigit];
 	}
+
+	/**
+	 * @return The component type from the partition identifier of the given SCTID or null if not a core component identifier.
+	 */
+	public static ComponentType getTypeFromSCTID(String sctid) {
+		if (sctid == null || sctid.length() < 6) {
+			return null;
+		}
+		int partitionDigit = Character.digit(sctid.charAt(sctid.length() - 2), 10);
+		if (partitionDigit < 0 || partitionDigit >= values().length) {
+			return null;
+		}
+		return values()[partitionDigit];
+	}
 }
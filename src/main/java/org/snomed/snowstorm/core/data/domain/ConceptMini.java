@@ -47,6 +47,29 @@ public class ConceptMini {
 		this.languageCodes = languageCodes;
 	}
 
+	public ConceptMini(ConceptMini conceptMini) {
+		this();
+		conceptId = conceptMini.conceptId;
+		effectiveTime = conceptMini.effectiveTime;
+		conceptMini.activeDescriptions.forEach(description -> activeDescriptions.add(copyDescription(description)));
+		languageCodes = conceptMini.languageCodes != null ? new ArrayList<>(conceptMini.languageCodes) : null;
+		definitionStatusId = conceptMini.definitionStatusId;
+		leafInferred = conceptMini.leafInferred;
+		leafStated = conceptMini.leafStated;
+		moduleId = conceptMini.moduleId;
+		active = conceptMini.active;
+		flattenFsn = conceptMini.flattenFsn;
+	}
+
+	/**
+	 * Copies the description fields needed for the FSN and PT so that the copy does not share state with the original.
+	 */
+	private static Description copyDescription(Description description) {
+		return new Description(description.getDescriptionId(), description.getEffectiveTimeI(), description.isActive(), description.getModuleId(),
+				description.getConceptId(), description.getLanguageCode(), description.getTypeId(), description.getTerm(), description.getCaseSignificanceId())
+				.setAcceptabilityMap(new HashMap<>(description.getAcceptabilityMap()));
+	}
+
 	public void addActiveDescription(Description fsn) {
 		activeDescriptions.add(fsn);
 	}
@@ -55,6 +78,11 @@ public class ConceptMini {
 		activeDescriptions.addAll(fsns);
 	}
 
+	@JsonIgnore
+	public Set<Description> getActiveDescriptions() {
+		return activeDescriptions;
+	}
+
 	@JsonView(value = View.Component.class)
 	public String getConceptId() {
 		return conceptId;
@@ -2,12 +2,16 @@ package org.snomed.snowstorm.core.data.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.rest.View;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -19,11 +23,14 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Document(indexName = "es-description", type = "description", shards = 8)
+@Setting(settingPath = "elasticsearch/description-settings.json")
 public class Description extends SnomedComponent<Description> implements SnomedComponentWithInactivationIndicator, SnomedComponentWithAssociations {
 
 	public interface Fields extends SnomedComponent.Fields {
 		String DESCRIPTION_ID = "descriptionId";
 		String TERM = "term";
+		String TERM_FOLDED = "term.folded";
+		String TERM_PREFIX = "term.prefix";
 		String TERM_LEN = "termLen";
 		String TAG = "tag";
 		String CONCEPT_ID = "conceptId";
@@ -36,8 +43,19 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	@Size(min = 5, max = 18)
 	private String descriptionId;
 
+	// The prefix sub-field indexes the edge n-grams of each word so that typeahead searches are plain term lookups.
+	// Sub-fields are accent folded. Languages in STEMMED_LANGUAGE_CODES also have a stemmed sub-field named by language code.
 	@JsonView(value = View.Component.class)
-	@Field(type = FieldType.text)
+	@MultiField(
+			mainField = @Field(type = FieldType.text),
+			otherFields = {
+					@InnerField(suffix = "folded", type = FieldType.text, indexAnalyzer = "folding_analyzer", searchAnalyzer = "folding_analyzer"),
+					@InnerField(suffix = "prefix", type = FieldType.text, indexAnalyzer = "prefix_index_analyzer", searchAnalyzer = "prefix_search_analyzer"),
+					@InnerField(suffix = "es", type = FieldType.text, indexAnalyzer = "spanish_folding_analyzer", searchAnalyzer = "spanish_folding_analyzer"),
+					@InnerField(suffix = "da", type = FieldType.text, indexAnalyzer = "danish_folding_analyzer", searchAnalyzer = "danish_folding_analyzer"),
+					@InnerField(suffix = "sv", type = FieldType.text, indexAnalyzer = "swedish_folding_analyzer", searchAnalyzer = "swedish_folding_analyzer")
+			}
+	)
 	@NotNull
 	private String term;
 
@@ -94,6 +112,8 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	// Populated when requesting an update
 	private Map<String, Set<String>> associationTargetStrings;
 
+	public static final Set<String> STEMMED_LANGUAGE_CODES = ImmutableSet.of("es", "da", "sv");
+
 	private static final Logger logger = LoggerFactory.getLogger(Description.class);
 
 	public Description() {
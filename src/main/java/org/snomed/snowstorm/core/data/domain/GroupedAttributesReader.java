@@ -0,0 +1,206 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.snomed.snowstorm.core.data.domain.QueryConcept.CONCRETE_VALUE_PREFIX;
+
+/**
+ * Reads the compact encoding of the grouped attributes of a {@link QueryConcept}.
+ * Iterating concept values does not allocate, only concrete values are copied when requested.
+ * <p>
+ * The encoding is base64 of a sequence of unsigned varints:
+ * <pre>
+ * group: groupNo, attributeCount, attribute...
+ * attribute: typeId delta from the previous type of the group (types ascending), valueCount, value...
+ * value: (zigzag(conceptId delta from the previous concept value of the attribute) &lt;&lt; 1)
+ *     or (concrete value UTF-8 length &lt;&lt; 1 | 1) followed by the concrete value bytes without the prefix
+ * </pre>
+ * Value order is kept.
+ */
+public final class GroupedAttributesReader {
+
+	private final byte[] bytes;
+	private int position;
+
+	private int group;
+	private int attributesRemaining;
+	private long type;
+	private int valuesRemaining;
+	private long previousConceptValue;
+
+	private boolean concreteValue;
+	private long conceptValue;
+	private int concreteValueStart;
+	private int concreteValueLength;
+
+	public GroupedAttributesReader(String encoded) {
+		bytes = encoded == null || encoded.isEmpty() ? new byte[0] : Base64.getDecoder().decode(encoded);
+	}
+
+	public GroupedAttributesReader reset() {
+		position = 0;
+		attributesRemaining = 0;
+		valuesRemaining = 0;
+		return this;
+	}
+
+	/**
+	 * Moves to the next group, skipping any unread attributes of the current group.
+	 */
+	public boolean nextGroup() {
+		while (nextAttribute()) {
+			// Skip
+		}
+		if (position >= bytes.length) {
+			return false;
+		}
+		group = (int) readVarLong();
+		attributesRemaining = (int) readVarLong();
+		type = 0;
+		return true;
+	}
+
+	/**
+	 * Moves to the next attribute type of the current group, skipping any unread values of the current attribute.
+	 */
+	public boolean nextAttribute() {
+		while (nextValue()) {
+			// Skip
+		}
+		if (attributesRemaining == 0) {
+			return false;
+		}
+		attributesRemaining--;
+		type += readVarLong();
+		valuesRemaining = (int) readVarLong();
+		previousConceptValue = 0;
+		return true;
+	}
+
+	public boolean nextValue() {
+		if (valuesRemaining == 0) {
+			return false;
+		}
+		valuesRemaining--;
+		long header = readVarLong();
+		concreteValue = (header & 1) == 1;
+		if (concreteValue) {
+			concreteValueLength = (int) (header >>> 1);
+			concreteValueStart = position;
+			position += concreteValueLength;
+		} else {
+			long zigzag = header >>> 1;
+			conceptValue = previousConceptValue + ((zigzag >>> 1) ^ -(zigzag & 1));
+			previousConceptValue = conceptValue;
+		}
+		return true;
+	}
+
+	public int getGroup() {
+		return group;
+	}
+
+	public long getType() {
+		return type;
+	}
+
+	public boolean isConcreteValue() {
+		return concreteValue;
+	}
+
+	public long getConceptValue() {
+		return conceptValue;
+	}
+
+	public double getConcreteValue() {
+		return Double.parseDouble(new String(bytes, concreteValueStart, concreteValueLength, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return The value in the string form used by {@link QueryConcept#addAttribute(int, Long, String)}.
+	 */
+	public String getValue() {
+		return concreteValue ?
+				CONCRETE_VALUE_PREFIX + new String(bytes, concreteValueStart, concreteValueLength, StandardCharsets.UTF_8) :
+				Long.toString(conceptValue);
+	}
+
+	private long readVarLong() {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	static Map<Integer, Map<String, List<String>>> decode(String encoded) {
+		Map<Integer, Map<String, List<String>>> groupedAttributesMap = new HashMap<>();
+		GroupedAttributesReader reader = new GroupedAttributesReader(encoded);
+		while (reader.nextGroup()) {
+			Map<String, List<String>> attributes = new HashMap<>();
+			groupedAttributesMap.put(reader.getGroup(), attributes);
+			while (reader.nextAttribute()) {
+				List<String> values = new ArrayList<>();
+				attributes.put(Long.toString(reader.getType()), values);
+				while (reader.nextValue()) {
+					values.add(reader.getValue());
+				}
+			}
+		}
+		return groupedAttributesMap;
+	}
+
+	static String encode(Map<Integer, Map<String, List<String>>> groupedAttributesMap) {
+		if (groupedAttributesMap == null || groupedAttributesMap.isEmpty()) {
+			return "";
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Map.Entry<Integer, Map<String, List<String>>> group : groupedAttributesMap.entrySet()) {
+			Map<String, List<String>> attributes = group.getValue();
+			long[] types = new long[attributes.size()];
+			int i = 0;
+			for (String type : attributes.keySet()) {
+				types[i++] = Long.parseLong(type);
+			}
+			Arrays.sort(types);
+
+			writeVarLong(out, group.getKey());
+			writeVarLong(out, types.length);
+			long previousType = 0;
+			for (long type : types) {
+				List<String> values = attributes.get(Long.toString(type));
+				writeVarLong(out, type - previousType);
+				writeVarLong(out, values.size());
+				previousType = type;
+				long previousConceptValue = 0;
+				for (String value : values) {
+					if (QueryConcept.isConcreteValue(value)) {
+						byte[] concreteValue = value.substring(CONCRETE_VALUE_PREFIX.length()).getBytes(StandardCharsets.UTF_8);
+						writeVarLong(out, ((long) concreteValue.length << 1) | 1);
+						out.write(concreteValue, 0, concreteValue.length);
+					} else {
+						long conceptValue = Long.parseLong(value);
+						long delta = conceptValue - previousConceptValue;
+						writeVarLong(out, ((delta << 1) ^ (delta >> 63)) << 1);
+						previousConceptValue = conceptValue;
+					}
+				}
+			}
+		}
+		return Base64.getEncoder().encodeToString(out.toByteArray());
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
@@ -1,7 +1,7 @@
 package org.snomed.snowstorm.core.data.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.google.common.collect.Lists;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.kaicode.elasticvc.domain.DomainEntity;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
@@ -16,6 +16,7 @@ import java.util.*;
 public class QueryConcept extends DomainEntity<QueryConcept> {
 
 	public static final String ATTR_TYPE_WILDCARD = "all";
+	public static final String CONCRETE_VALUE_PREFIX = "#";
 
 	public interface Fields {
 		String CONCEPT_ID_FORM = "conceptIdForm";
@@ -24,7 +25,13 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 		String ANCESTORS = "ancestors";
 		String STATED = "stated";
 		String ATTR = "attr";
+		String ATTR_ENC = "attrEnc";
+		// Only present in documents indexed before attrEnc was introduced
 		String ATTR_MAP = "attrMap";
+		String ATTR_COUNT = "attrCount";
+		String ATTR_NUM = "attrNum";
+		String ATTR_NUM_TYPE = ATTR_NUM + "." + NumericAttribute.TYPE;
+		String ATTR_NUM_VALUE = ATTR_NUM + "." + NumericAttribute.VALUE;
 	}
 	@Field(type = FieldType.keyword)
 	private String conceptIdForm;
@@ -45,10 +52,20 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 	private Map<String, Set<String>> attr;
 
 	@Field(type = FieldType.keyword, index = false, store = true)
-	// Format:
-	// groupNo:attr=value:attr=value,value|groupNo:attr=value:attr=value,value
-	private String attrMap;
+	// Compact encoding of the grouped attributes, see GroupedAttributesReader.
+	// Kept as loaded until the attributes are changed so that unchanged concepts are not decoded.
+	private String attrEnc;
 
+	@Field(type = FieldType.Object)
+	// Number of values of each attribute type across all groups, including the wildcard type.
+	// Allows attribute cardinality outside of groups to be checked within the query.
+	private Map<String, Integer> attrCount;
+
+	@Field(type = FieldType.Nested)
+	// Numeric concrete values, nested so that range queries match the value of the right attribute type.
+	private List<NumericAttribute> attrNum;
+
+	// Decoded on demand
 	private Map<Integer, Map<String, List<String>>> groupedAttributesMap;
 
 	public QueryConcept() {
@@ -63,23 +80,29 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 	}
 
 	public void addAttribute(int group, Long type, Long value) {
-		if (groupedAttributesMap == null) {
-			groupedAttributesMap = new HashMap<>();
-		}
-		groupedAttributesMap.computeIfAbsent(group, (g) -> new HashMap<>())
-				.computeIfAbsent(type.toString(), (t) -> new ArrayList<>()).add(value.toString());
+		addAttribute(group, type, value.toString());
+	}
+
+	/**
+	 * @param value Concept id or concrete value prefixed with {@link #CONCRETE_VALUE_PREFIX}.
+	 */
+	public void addAttribute(int group, Long type, String value) {
+		getGroupedAttributesMap().computeIfAbsent(group, (g) -> new HashMap<>())
+				.computeIfAbsent(type.toString(), (t) -> new ArrayList<>()).add(value);
+		attrEnc = null;
 	}
 
 	public void removeAttribute(int group, Long type, Long value) {
-		if (groupedAttributesMap == null) {
-			groupedAttributesMap = new HashMap<>();
-		}
-		Map<String, List<String>> groupAttributes = groupedAttributesMap.get(group);
+		removeAttribute(group, type, value.toString());
+	}
+
+	public void removeAttribute(int group, Long type, String value) {
+		Map<String, List<String>> groupAttributes = getGroupedAttributesMap().get(group);
 		if (groupAttributes != null) {
 
 			List<String> typeValues = groupAttributes.get(type.toString());
 			if (typeValues != null) {
-				typeValues.remove(value.toString());
+				typeValues.remove(value);
 				if (typeValues.isEmpty()) {
 					groupAttributes.remove(type.toString());
 				}
@@ -88,28 +111,82 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 			if (groupAttributes.isEmpty()) {
 				groupedAttributesMap.remove(group);
 			}
+			attrEnc = null;
 		}
 	}
 
 	@JsonIgnore
 	public Map<Integer, Map<String, List<String>>> getGroupedAttributesMap() {
+		if (groupedAttributesMap == null) {
+			groupedAttributesMap = GroupedAttributesReader.decode(attrEnc);
+		}
 		return groupedAttributesMap;
 	}
 
+	/**
+	 * @return A new reader over the attributes, for matching without decoding them into maps.
+	 */
+	@JsonIgnore
+	public GroupedAttributesReader getAttributesReader() {
+		return new GroupedAttributesReader(getAttrEnc());
+	}
+
 	public Map<String, Set<String>> getAttr() {
-		return GroupedAttributesMapSerializer.serializeFlatMap(groupedAttributesMap);
+		return GroupedAttributesMapSerializer.serializeFlatMap(getAttributesReader());
 	}
 
 	public void setAttr(Map attr) {
 		this.attr = attr;
 	}
 
+	public Map<String, Integer> getAttrCount() {
+		return GroupedAttributesMapSerializer.serializeCountMap(getAttributesReader());
+	}
+
+	public void setAttrCount(Map<String, Integer> attrCount) {
+		this.attrCount = attrCount;
+	}
+
+	public List<NumericAttribute> getAttrNum() {
+		return GroupedAttributesMapSerializer.serializeNumericAttributes(getAttributesReader());
+	}
+
+	public void setAttrNum(List<NumericAttribute> attrNum) {
+		this.attrNum = attrNum;
+	}
+
+	public static boolean isConcreteValue(String attributeValue) {
+		return attributeValue.startsWith(CONCRETE_VALUE_PREFIX);
+	}
+
+	public String getAttrEnc() {
+		if (attrEnc == null) {
+			attrEnc = GroupedAttributesReader.encode(groupedAttributesMap);
+		}
+		return attrEnc;
+	}
+
+	public void setAttrEnc(String attrEnc) {
+		this.attrEnc = attrEnc;
+		groupedAttributesMap = null;
+	}
+
+	/**
+	 * @return Readable form of the attributes.
+	 * Format: groupNo:attr=value:attr=value,value|groupNo:attr=value:attr=value,value
+	 */
+	@JsonIgnore
 	public String getAttrMap() {
-		return GroupedAttributesMapSerializer.serializeMap(groupedAttributesMap);
+		return GroupedAttributesMapSerializer.serializeMap(getGroupedAttributesMap());
 	}
 
+	/**
+	 * Reads the attributes of documents indexed before attrEnc was introduced.
+	 */
+	@JsonProperty(Fields.ATTR_MAP)
 	public void setAttrMap(String attrMap) {
 		groupedAttributesMap = GroupedAttributesMapSerializer.deserializeMap(attrMap);
+		attrEnc = null;
 	}
 
 	private void updateConceptIdForm() {
@@ -188,6 +265,54 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 				'}';
 	}
 
+	public static final class NumericAttribute {
+
+		static final String TYPE = "type";
+		static final String VALUE = "value";
+
+		@Field(type = FieldType.keyword)
+		private String type;
+
+		@Field(type = FieldType.Integer)
+		private int group;
+
+		@Field(type = FieldType.Double)
+		private double value;
+
+		public NumericAttribute() {
+		}
+
+		NumericAttribute(String type, int group, double value) {
+			this.type = type;
+			this.group = group;
+			this.value = value;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public void setType(String type) {
+			this.type = type;
+		}
+
+		public int getGroup() {
+			return group;
+		}
+
+		public void setGroup(int group) {
+			this.group = group;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public void setValue(double value) {
+			this.value = value;
+		}
+	}
+
 	private static final class GroupedAttributesMapSerializer {
 
 		private static String serializeMap(Map<Integer, Map<String, List<String>>> groupedAttributesMap) {
@@ -223,39 +348,100 @@ public class QueryConcept extends DomainEntity<QueryConcept> {
 			return builder;
 		}
 
+		// Single pass over the string without intermediate split arrays, only the type and value strings are copied
 		private static Map<Integer, Map<String, List<String>>> deserializeMap(String attrMap) {
 			Map<Integer, Map<String, List<String>>> groupedAttributesMap = new HashMap<>();
-			if (attrMap.isEmpty()) {
-				return groupedAttributesMap;
-			}
-			String[] groups = attrMap.split("\\|");
-			for (String group : groups) {
-				String[] attributes = group.split(":");
-				int groupNo = Integer.parseInt(attributes[0]);
-				Map<String, List<String>> attributeMap = new HashMap<>();
-				for (int i = 1; i < attributes.length; i++) {
-					String attribute = attributes[i];
-					String[] attrParts = attribute.split("=");
-					String type = attrParts[0];
-					String[] values = attrParts[1].split(",");
-					attributeMap.put(type, Lists.newArrayList(values));
+			int length = attrMap.length();
+			int i = 0;
+			while (i < length) {
+				// Group number
+				int groupNo = 0;
+				char c;
+				while ((c = attrMap.charAt(i++)) != ':') {
+					groupNo = (groupNo * 10) + (c - '0');
 				}
+				Map<String, List<String>> attributeMap = new HashMap<>();
 				groupedAttributesMap.put(groupNo, attributeMap);
+
+				// Attributes of the group
+				boolean endOfGroup = false;
+				while (!endOfGroup) {
+					int typeEnd = attrMap.indexOf('=', i);
+					String type = attrMap.substring(i, typeEnd);
+					List<String> values = new ArrayList<>();
+					attributeMap.put(type, values);
+					i = typeEnd + 1;
+					boolean endOfAttribute = false;
+					while (!endOfAttribute) {
+						int valueStart = i;
+						while (i < length && (c = attrMap.charAt(i)) != ',' && c != ':' && c != '|') {
+							i++;
+						}
+						values.add(attrMap.substring(valueStart, i));
+						if (i == length || attrMap.charAt(i) == '|') {
+							endOfAttribute = true;
+							endOfGroup = true;
+						} else if (attrMap.charAt(i) == ':') {
+							endOfAttribute = true;
+						}
+						i++;
+					}
+				}
 			}
 			return groupedAttributesMap;
 		}
 
-		private static Map<String, Set<String>> serializeFlatMap(Map<Integer, Map<String, List<String>>> groupedAttributesMap) {
+		private static Map<String, Integer> serializeCountMap(GroupedAttributesReader reader) {
+			Map<String, Integer> countMap = new HashMap<>();
+			int allCount = 0;
+			while (reader.nextGroup()) {
+				while (reader.nextAttribute()) {
+					int valueCount = 0;
+					while (reader.nextValue()) {
+						if (!reader.isConcreteValue()) {
+							valueCount++;
+						}
+					}
+					if (valueCount > 0) {
+						countMap.merge(Long.toString(reader.getType()), valueCount, Integer::sum);
+						allCount += valueCount;
+					}
+				}
+			}
+			if (allCount > 0) {
+				countMap.put(ATTR_TYPE_WILDCARD, allCount);
+			}
+			return countMap;
+		}
+
+		private static List<NumericAttribute> serializeNumericAttributes(GroupedAttributesReader reader) {
+			List<NumericAttribute> numericAttributes = new ArrayList<>();
+			while (reader.nextGroup()) {
+				while (reader.nextAttribute()) {
+					while (reader.nextValue()) {
+						if (reader.isConcreteValue()) {
+							numericAttributes.add(new NumericAttribute(Long.toString(reader.getType()), reader.getGroup(), reader.getConcreteValue()));
+						}
+					}
+				}
+			}
+			return numericAttributes;
+		}
+
+		private static Map<String, Set<String>> serializeFlatMap(GroupedAttributesReader reader) {
 			Map<String, Set<String>> attributesMap = new HashMap<>();
 			Set<String> allValues = new HashSet<>();
-			if (groupedAttributesMap != null) {
-				groupedAttributesMap.forEach((group, attributes) -> {
-					attributes.forEach((type, values) -> {
-						Set<String> valueList = attributesMap.computeIfAbsent(type, (t) -> new HashSet<>());
-						valueList.addAll(values);
-						allValues.addAll(values);
-					});
-				});
+			while (reader.nextGroup()) {
+				while (reader.nextAttribute()) {
+					while (reader.nextValue()) {
+						// Only concept values, concrete values are indexed separately
+						if (!reader.isConcreteValue()) {
+							String value = reader.getValue();
+							attributesMap.computeIfAbsent(Long.toString(reader.getType()), (t) -> new HashSet<>()).add(value);
+							allValues.add(value);
+						}
+					}
+				}
 			}
 			attributesMap.put(ATTR_TYPE_WILDCARD, allValues);
 			return attributesMap;
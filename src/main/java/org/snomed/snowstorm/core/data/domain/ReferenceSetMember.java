@@ -19,6 +19,7 @@ public class ReferenceSetMember extends SnomedComponent<ReferenceSetMember> {
 		String REFSET_ID = "refsetId";
 		String CONCEPT_ID = "conceptId";
 		String REFERENCED_COMPONENT_ID = "referencedComponentId";
+		String REFERENCED_COMPONENT_TYPE = "referencedComponentType";
 		String ADDITIONAL_FIELDS = "additionalFields";
 		String ADDITIONAL_FIELDS_PREFIX = ADDITIONAL_FIELDS + ".";
 
@@ -69,6 +70,10 @@ public class ReferenceSetMember extends SnomedComponent<ReferenceSetMember> {
 	@Size(min = 5, max = 18)
 	private String referencedComponentId;
 
+	// Derived from the partition of the referencedComponentId so that members can be filtered by component type using a term query
+	@Field(type = FieldType.keyword)
+	private String referencedComponentType;
+
 	// Used when the referencedComponentId is a description (or later possibly a relationship, depending how we implement concrete domains)
 	@Field(type = FieldType.keyword, store = true)
 	private String conceptId;
@@ -94,7 +99,7 @@ public class ReferenceSetMember extends SnomedComponent<ReferenceSetMember> {
 		this.active = active;
 		this.moduleId = moduleId;
 		this.refsetId = refsetId;
-		this.referencedComponentId = referencedComponentId;
+		setReferencedComponentId(referencedComponentId);
 	}
 
 	public ReferenceSetMember(String moduleId, String refsetId, String referencedComponentId) {
@@ -181,9 +186,19 @@ public class ReferenceSetMember extends SnomedComponent<ReferenceSetMember> {
 
 	public ReferenceSetMember setReferencedComponentId(String referencedComponentId) {
 		this.referencedComponentId = referencedComponentId;
+		ComponentType componentType = ComponentType.getTypeFromSCTID(referencedComponentId);
+		this.referencedComponentType = componentType != null ? componentType.name() : null;
 		return this;
 	}
 
+	public String getReferencedComponentType() {
+		return referencedComponentType;
+	}
+
+	public void setReferencedComponentType(String referencedComponentType) {
+		this.referencedComponentType = referencedComponentType;
+	}
+
 	public String getConceptId() {
 		return conceptId;
 	}
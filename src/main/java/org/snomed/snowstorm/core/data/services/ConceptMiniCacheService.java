@@ -0,0 +1,258 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.PathUtil;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Caches the ConceptMini labels of a branch head so that popular concepts such as attribute types and top level hierarchies
+ * are not loaded again on every request.
+ * Each branch has its own label cache, keyed by language codes and concept id, which is only valid for the branch head recorded in the branch state.
+ * A content commit evicts just the concepts changed in that commit and moves the branch state on to the new head.
+ * Any other change to the branch head drops the branch state together with its labels.
+ * A branch which has not changed a concept uses the entry of the parent branch when the parent has not moved on since the branch base.
+ */
+@Service
+public class ConceptMiniCacheService implements CommitListener {
+
+	private static final int MAX_BRANCHES = 50;
+	private static final int MAX_LABELS_PER_BRANCH = 2_000;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	private final Cache<String, BranchLabelState> branchStates = CacheBuilder.newBuilder()
+			.maximumSize(MAX_BRANCHES)
+			.build();
+
+	private Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		branchService.addCommitListener(this);
+	}
+
+	/**
+	 * Returns copies of the cached ConceptMinis of the branch head. Concepts not in the cache are passed to the loader in one call.
+	 */
+	public Map<String, ConceptMini> getConceptMinis(Branch branch, Collection<String> conceptIds, List<String> languageCodes,
+			Function<Collection<String>, Map<String, ConceptMini>> loader) {
+
+		String path = branch.getPath();
+		String languageKey = languageCodes != null ? String.join(",", languageCodes) : "";
+		BranchLabelState state = getState(branch);
+		state.languageKeys.add(languageKey);
+
+		Map<String, ConceptMini> conceptMinis = new HashMap<>();
+		Set<String> missingIds = new HashSet<>();
+		for (String conceptId : conceptIds) {
+			ConceptMini cached = state.labels.getIfPresent(getKey(languageKey, conceptId));
+			if (cached != null) {
+				conceptMinis.put(conceptId, new ConceptMini(cached));
+			} else {
+				missingIds.add(conceptId);
+			}
+		}
+
+		Map<String, ConceptMini> found = new HashMap<>();
+		if (!missingIds.isEmpty()) {
+			found.putAll(findInParent(branch, state, languageKey, missingIds));
+			missingIds.removeAll(found.keySet());
+		}
+		if (!missingIds.isEmpty()) {
+			found.putAll(loader.apply(missingIds));
+		}
+		if (!found.isEmpty()) {
+			synchronized (state) {
+				// Entries loaded while the branch was being committed belong to the previous head
+				if (branchStates.getIfPresent(path) == state) {
+					found.forEach((conceptId, conceptMini) -> state.labels.put(getKey(languageKey, conceptId), conceptMini));
+				}
+			}
+			found.forEach((conceptId, conceptMini) -> conceptMinis.put(conceptId, new ConceptMini(conceptMini)));
+		}
+		return conceptMinis;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		String path = commit.getBranch().getPath();
+		BranchLabelState state = branchStates.getIfPresent(path);
+		if (state == null) {
+			return;
+		}
+		synchronized (state) {
+			if (commit.getCommitType() != Commit.CommitType.CONTENT) {
+				// Rebase and promotion bring in content from another branch
+				branchStates.invalidate(path);
+				return;
+			}
+			Date timepoint = commit.getTimepoint();
+			LongSet changedConceptIds = findChangedConceptIds(path, timepoint, timepoint, commit.getEntityVersionsReplaced());
+			for (String languageKey : state.languageKeys) {
+				for (Long conceptId : changedConceptIds) {
+					state.labels.invalidate(getKey(languageKey, conceptId.toString()));
+				}
+			}
+			// The new state keeps the remaining labels, loads still running against the old state will no longer add to them
+			BranchLabelState nextState = new BranchLabelState(timepoint.getTime(), state.baseTimestamp, state.labels);
+			nextState.languageKeys.addAll(state.languageKeys);
+			if (state.changedOnBranch != null) {
+				nextState.changedOnBranch = new LongOpenHashSet(state.changedOnBranch);
+				nextState.changedOnBranch.addAll(changedConceptIds);
+			}
+			branchStates.put(path, nextState);
+			logger.debug("Evicted {} concept labels on {}.", changedConceptIds.size(), path);
+		}
+	}
+
+	private BranchLabelState getState(Branch branch) {
+		String path = branch.getPath();
+		synchronized (branchStates) {
+			BranchLabelState state = branchStates.getIfPresent(path);
+			if (state == null || state.headTimestamp != branch.getHeadTimestamp()) {
+				// Head moved without a commit in this instance, nothing cached for the branch can be trusted
+				state = new BranchLabelState(branch.getHeadTimestamp(), branch.getBaseTimestamp(), newLabelCache());
+				branchStates.put(path, state);
+			}
+			return state;
+		}
+	}
+
+	private Map<String, ConceptMini> findInParent(Branch branch, BranchLabelState state, String languageKey, Set<String> conceptIds) {
+		String parentPath = PathUtil.getParentPath(branch.getPath());
+		if (parentPath == null) {
+			return Collections.emptyMap();
+		}
+		// The parent entries are only what this branch sees if the parent has not moved on since the branch base
+		BranchLabelState parentState = branchStates.getIfPresent(parentPath);
+		if (parentState == null || parentState.headTimestamp != branch.getBaseTimestamp()) {
+			return Collections.emptyMap();
+		}
+		Map<String, ConceptMini> parentMinis = new HashMap<>();
+		for (String conceptId : conceptIds) {
+			ConceptMini cached = parentState.labels.getIfPresent(getKey(languageKey, conceptId));
+			if (cached != null) {
+				parentMinis.put(conceptId, cached);
+			}
+		}
+		if (!parentMinis.isEmpty()) {
+			LongSet changedOnBranch = getChangedOnBranch(branch, state);
+			parentMinis.keySet().removeIf(conceptId -> changedOnBranch.contains(Long.parseLong(conceptId)));
+		}
+		return parentMinis;
+	}
+
+	private LongSet getChangedOnBranch(Branch branch, BranchLabelState state) {
+		synchronized (state) {
+			if (state.changedOnBranch == null) {
+				Date start = new Date(branch.getBaseTimestamp() + 1);
+				state.changedOnBranch = findChangedConceptIds(branch.getPath(), start, branch.getHead(), branch.getVersionsReplaced());
+			}
+			return state.changedOnBranch;
+		}
+	}
+
+	private LongSet findChangedConceptIds(String path, Date start, Date end, Map<String, Set<String>> versionsReplaced) {
+		LongSet conceptIds = new LongOpenHashSet();
+		BoolQueryBuilder updatesCriteria = versionControlHelper.getUpdatesOnBranchDuringRangeCriteria(path, start, end);
+		collectConceptIds(boolQuery().must(updatesCriteria), Concept.class, Concept.Fields.CONCEPT_ID, Concept::getConceptId, conceptIds);
+		collectConceptIds(boolQuery().must(updatesCriteria), Description.class, Description.Fields.CONCEPT_ID, Description::getConceptId, conceptIds);
+		collectConceptIds(boolQuery().must(updatesCriteria).must(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)),
+				ReferenceSetMember.class, ReferenceSetMember.Fields.CONCEPT_ID, ReferenceSetMember::getConceptId, conceptIds);
+
+		// Versions of the parent branch which were replaced or deleted on this branch
+		if (versionsReplaced != null) {
+			collectReplacedConceptIds(versionsReplaced, Concept.class, Concept.Fields.CONCEPT_ID, Concept::getConceptId, conceptIds);
+			collectReplacedConceptIds(versionsReplaced, Description.class, Description.Fields.CONCEPT_ID, Description::getConceptId, conceptIds);
+			collectReplacedConceptIds(versionsReplaced, ReferenceSetMember.class, ReferenceSetMember.Fields.CONCEPT_ID, ReferenceSetMember::getConceptId, conceptIds);
+		}
+		return conceptIds;
+	}
+
+	private <T> void collectReplacedConceptIds(Map<String, Set<String>> versionsReplaced, Class<T> entityClass, String conceptIdField,
+			Function<T, String> conceptIdGetter, LongSet conceptIds) {
+
+		Set<String> internalIds = versionsReplaced.getOrDefault(entityClass.getSimpleName(), Collections.emptySet());
+		for (List<String> internalIdsSegment : Iterables.partition(internalIds, CLAUSE_LIMIT)) {
+			collectConceptIds(boolQuery().must(termsQuery("_id", internalIdsSegment)), entityClass, conceptIdField, conceptIdGetter, conceptIds);
+		}
+	}
+
+	private <T> void collectConceptIds(BoolQueryBuilder query, Class<T> entityClass, String conceptIdField, Function<T, String> conceptIdGetter, LongSet conceptIds) {
+		try (CloseableIterator<T> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withFields(conceptIdField)// This triggers the fast results mapper
+				.withPageable(LARGE_PAGE)
+				.build(), entityClass)) {
+			stream.forEachRemaining(entity -> {
+				String conceptId = conceptIdGetter.apply(entity);
+				if (conceptId != null) {
+					conceptIds.add(Long.parseLong(conceptId));
+				}
+			});
+		}
+	}
+
+	private static Cache<String, ConceptMini> newLabelCache() {
+		return CacheBuilder.newBuilder()
+				.maximumSize(MAX_LABELS_PER_BRANCH)
+				.build();
+	}
+
+	private String getKey(String languageKey, String conceptId) {
+		return languageKey + "|" + conceptId;
+	}
+
+	private static final class BranchLabelState {
+
+		private final long headTimestamp;
+		private final long baseTimestamp;
+		private final Cache<String, ConceptMini> labels;
+		private final Set<String> languageKeys = ConcurrentHashMap.newKeySet();
+
+		// Concepts changed on the branch since its base, loaded when first needed to use the parent labels
+		private LongSet changedOnBranch;
+
+		private BranchLabelState(long headTimestamp, long baseTimestamp, Cache<String, ConceptMini> labels) {
+			this.headTimestamp = headTimestamp;
+			this.baseTimestamp = baseTimestamp;
+			this.labels = labels;
+		}
+	}
+}
@@ -13,7 +13,10 @@ import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.elasticvc.domain.DomainEntity;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -35,8 +38,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
 import org.springframework.data.util.CloseableIterator;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.context.SecurityContext;
@@ -61,6 +66,9 @@ import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_CODES;
 @Service
 public class ConceptService extends ComponentService {
 
+	private static final SourceFilter CONCEPT_MINI_SOURCE_FILTER = new FetchSourceFilter(new String[] {Concept.Fields.CONCEPT_ID, Concept.Fields.ACTIVE,
+			Concept.Fields.DEFINITION_STATUS_ID, Concept.Fields.MODULE_ID, Concept.Fields.EFFECTIVE_TIME}, null);
+
 	@Autowired
 	private ConceptRepository conceptRepository;
 
@@ -100,6 +108,12 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private TraceabilityLogService traceabilityLogService;
 
+	@Autowired
+	private ConceptMiniCacheService conceptMiniCacheService;
+
+	@Autowired
+	private ExecutorService executorService;
+
 	private final Cache<String, AsyncConceptChangeBatch> batchConceptChanges;
 	private final ValidatorFactory validatorFactory;
 
@@ -133,6 +147,18 @@ public class ConceptService extends ComponentService {
 		return doFind(ids, languageCodes, path, PageRequest.of(0, ids.size())).getContent();
 	}
 
+	/**
+	 * Finds concepts with their descriptions and language reference set members.
+	 * Relationships, axioms and inactivation information are not loaded.
+	 */
+	public Collection<Concept> findWithDescriptions(String path, Collection<? extends Object> ids, List<String> languageCodes) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
+		return doFind(ids, languageCodes, branchCriteria, PageRequest.of(0, ids.size()), false, false).getContent();
+	}
+
 	public boolean exists(String id, String path) {
 		return getNonExistentConceptIds(Collections.singleton(id), path).isEmpty();
 	}
@@ -176,8 +202,30 @@ public class ConceptService extends ComponentService {
 		if (conceptIds.isEmpty()) {
 			return new ResultMapPage<>(new HashMap<>(), 0);
 		}
-		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
-		return findConceptMinis(branchCriteria, conceptIds, languageCodes);
+		return findConceptMinis(branchService.findBranchOrThrow(path), conceptIds, languageCodes);
+	}
+
+	/**
+	 * Finds ConceptMinis on the head of the branch using the label cache of the branch.
+	 */
+	public ResultMapPage<String, ConceptMini> findConceptMinis(Branch branch, Collection<? extends Object> conceptIds, List<String> languageCodes) {
+		if (conceptIds.isEmpty()) {
+			return new ResultMapPage<>(new HashMap<>(), 0);
+		}
+		Set<String> conceptIdStrings = conceptIds.stream().map(Object::toString).collect(Collectors.toSet());
+		Map<String, ConceptMini> conceptMinis = conceptMiniCacheService.getConceptMinis(branch, conceptIdStrings, languageCodes,
+				missingIds -> doFindConceptMinis(versionControlHelper.getBranchCriteria(branch), missingIds, languageCodes));
+		return new ResultMapPage<>(conceptMinis, conceptMinis.size());
+	}
+
+	/**
+	 * Adds the active FSN and synonym descriptions to the given ConceptMinis, other fields are left as they are.
+	 */
+	public void populateConceptMinis(String path, Map<String, ConceptMini> minisToPopulate, List<String> languageCodes) {
+		if (!minisToPopulate.isEmpty()) {
+			Map<String, ConceptMini> conceptMinis = findConceptMinis(path, minisToPopulate.keySet(), languageCodes).getResultsMap();
+			conceptMinis.values().forEach(loaded -> minisToPopulate.get(loaded.getConceptId()).addActiveDescriptions(loaded.getActiveDescriptions()));
+		}
 	}
 
 	public ResultMapPage<String, ConceptMini> findConceptMinis(BranchCriteria branchCriteria, List<String> languageCodes, PageRequest pageRequest) {
@@ -195,21 +243,93 @@ public class ConceptService extends ComponentService {
 		if (conceptIds != null && conceptIds.isEmpty()) {
 			return new ResultMapPage<>(new HashMap<>(), 0);
 		}
-		Page<Concept> concepts = doFind(conceptIds, languageCodes, branchCriteria, pageRequest, false, false);
-		return new ResultMapPage<>(
-				concepts.getContent().stream().map(concept -> new ConceptMini(concept, languageCodes)).collect(Collectors.toMap(ConceptMini::getConceptId, Function.identity())),
-				concepts.getTotalElements());
+		if (conceptIds == null) {
+			// Page of all concepts
+			Page<Concept> concepts = elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery().must(branchCriteria.getEntityBranchCriteria(Concept.class)))
+					.withSourceFilter(CONCEPT_MINI_SOURCE_FILTER)
+					.withPageable(pageRequest)
+					.build(), Concept.class);
+			Map<String, ConceptMini> conceptMinis = doFindConceptMinis(branchCriteria,
+					concepts.getContent().stream().map(Concept::getConceptId).collect(Collectors.toList()), languageCodes);
+			return new ResultMapPage<>(conceptMinis, concepts.getTotalElements());
+		}
+		Map<String, ConceptMini> conceptMinis = doFindConceptMinis(branchCriteria, conceptIds.stream().map(Object::toString).collect(Collectors.toList()), languageCodes);
+		return new ResultMapPage<>(conceptMinis, conceptMinis.size());
 	}
 
 	private void populateConceptMinis(BranchCriteria branchCriteria, Map<String, ConceptMini> minisToPopulate, List<String> languageCodes) {
 		if (!minisToPopulate.isEmpty()) {
-			Set<String> conceptIds = minisToPopulate.keySet();
-			Page<Concept> concepts = doFind(conceptIds, languageCodes, branchCriteria, PageRequest.of(0, conceptIds.size()), false, false);
-			concepts.getContent().forEach(c -> {
-				ConceptMini conceptMini = minisToPopulate.get(c.getConceptId());
-				conceptMini.setDefinitionStatus(c.getDefinitionStatus());
-				conceptMini.addActiveDescriptions(c.getDescriptions().stream().filter(SnomedComponent::isActive).collect(Collectors.toSet()));
-			});
+			Map<String, ConceptMini> conceptMinis = doFindConceptMinis(branchCriteria, minisToPopulate.keySet(), languageCodes);
+			copyConceptMiniDetails(conceptMinis, minisToPopulate);
+		}
+	}
+
+	private void copyConceptMiniDetails(Map<String, ConceptMini> loadedMinis, Map<String, ConceptMini> minisToPopulate) {
+		loadedMinis.values().forEach(loaded -> {
+			ConceptMini conceptMini = minisToPopulate.get(loaded.getConceptId());
+			conceptMini.setDefinitionStatus(loaded.getDefinitionStatus());
+			conceptMini.addActiveDescriptions(loaded.getActiveDescriptions());
+		});
+	}
+
+	/**
+	 * Loads ConceptMinis without the full concept join. Concept fields, FSN and synonym descriptions and preferred language refset members
+	 * are fetched by three concurrent queries and joined here.
+	 */
+	private Map<String, ConceptMini> doFindConceptMinis(BranchCriteria branchCriteria, Collection<String> conceptIds, List<String> languageCodes) {
+		final TimerUtil timer = new TimerUtil("Find concept minis", Level.DEBUG);
+		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
+		if (conceptIds.isEmpty()) {
+			return conceptMiniMap;
+		}
+
+		Future<List<Concept>> conceptsFuture = executorService.submit(() -> {
+			List<Concept> concepts = new ArrayList<>();
+			for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+				NativeSearchQuery query = new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+								.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsSegment)))
+						.withSourceFilter(CONCEPT_MINI_SOURCE_FILTER)
+						.withPageable(LARGE_PAGE)
+						.build();
+				try (CloseableIterator<Concept> stream = elasticsearchTemplate.stream(query, Concept.class)) {
+					stream.forEachRemaining(concepts::add);
+				}
+			}
+			return concepts;
+		});
+		Future<Map<String, Description>> descriptionsFuture = languageCodes != null && !languageCodes.isEmpty() ?
+				executorService.submit(() -> descriptionService.findActiveFsnAndSynonyms(branchCriteria, conceptIds, languageCodes)) :
+				CompletableFuture.completedFuture(Collections.emptyMap());
+		Future<List<ReferenceSetMember>> langRefsetMembersFuture = executorService.submit(() -> descriptionService.findPreferredLanguageRefsetMembers(branchCriteria, conceptIds));
+
+		for (Concept concept : getMinisFuture(conceptsFuture)) {
+			conceptMiniMap.put(concept.getConceptId(), new ConceptMini(concept, languageCodes));
+		}
+		Map<String, Description> descriptionIdMap = getMinisFuture(descriptionsFuture);
+		for (ReferenceSetMember langRefsetMember : getMinisFuture(langRefsetMembersFuture)) {
+			Description description = descriptionIdMap.get(langRefsetMember.getReferencedComponentId());
+			if (description != null) {
+				description.addLanguageRefsetMember(langRefsetMember);
+			}
+		}
+		for (Description description : descriptionIdMap.values()) {
+			ConceptMini conceptMini = conceptMiniMap.get(description.getConceptId());
+			if (conceptMini != null) {
+				conceptMini.addActiveDescription(description);
+			}
+		}
+		timer.finish();
+		return conceptMiniMap;
+	}
+
+	private <T> T getMinisFuture(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeServiceException("Failed to load concept minis.", e);
 		}
 	}
 
@@ -653,7 +773,12 @@ public class ConceptService extends ComponentService {
 		Iterable<Description> descriptionsSaved = doSaveBatchDescriptions(descriptionsToPersist, commit);
 		Iterable<Relationship> relationshipsSaved = doSaveBatchRelationships(relationshipsToPersist, commit);
 
-		Iterable<ReferenceSetMember> referenceSetMembersSaved = memberService.doSaveBatchMembers(refsetMembersToPersist, commit);
+		// Description to concept map lets members of descriptions in this batch be saved without looking up the descriptions
+		Long2LongMap descriptionConceptMap = new Long2LongOpenHashMap();
+		for (Description description : descriptionsToPersist) {
+			descriptionConceptMap.put(Long.parseLong(description.getDescriptionId()), Long.parseLong(description.getConceptId()));
+		}
+		Iterable<ReferenceSetMember> referenceSetMembersSaved = memberService.doSaveBatchMembers(refsetMembersToPersist, descriptionConceptMap, commit);
 		doDeleteMembersWhereReferencedComponentDeleted(commit.getEntityVersionsDeleted(), commit);
 
 		Map<String, Concept> conceptMap = new HashMap<>();
@@ -877,6 +1002,26 @@ public class ConceptService extends ComponentService {
 		return ids;
 	}
 
+	/**
+	 * The ids of the given concepts which are active on the branch. Only concept ids are loaded.
+	 */
+	public Set<Long> findActiveConceptIds(BranchCriteria branchCriteria, Collection<Long> conceptIds) {
+		Set<Long> activeConceptIds = new LongOpenHashSet();
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+							.must(termQuery(SnomedComponent.Fields.ACTIVE, true))
+							.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsSegment)))
+					.withPageable(LARGE_PAGE)
+					.withFields(Concept.Fields.CONCEPT_ID);
+			try (CloseableIterator<Concept> conceptStream = elasticsearchTemplate.stream(queryBuilder.build(), Concept.class)) {
+				conceptStream.forEachRemaining(c -> activeConceptIds.add(c.getConceptIdAsLong()));
+			}
+		}
+		return activeConceptIds;
+	}
+
 	public ElasticsearchOperations getElasticsearchTemplate() {
 		return elasticsearchTemplate;
 	}
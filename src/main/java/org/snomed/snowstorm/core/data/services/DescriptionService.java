@@ -1,21 +1,35 @@
 package org.snomed.snowstorm.core.data.services;
 
 import ch.qos.logback.classic.Level;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
+import org.snomed.snowstorm.core.util.SearchAfterHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -23,13 +37,16 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
-import org.springframework.data.elasticsearch.core.aggregation.impl.AggregatedPageImpl;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -45,6 +62,14 @@ public class DescriptionService extends ComponentService {
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
 
+	@Autowired
+	private FastResultsMapper resultsMapper;
+
+	@Autowired
+	private ExecutorService executorService;
+
+	private volatile Boolean termPrefixIndexed;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Description findDescription(String path, String descriptionId) {
@@ -94,21 +119,54 @@ public class DescriptionService extends ComponentService {
 	}
 
 	public AggregatedPage<Description> findDescriptionsWithAggregations(String path, String term, Boolean conceptActive, Collection<String> languageCodes, PageRequest pageRequest) {
+		return findDescriptionsWithAggregations(path, term, conceptActive, languageCodes, pageRequest, true);
+	}
+
+	public AggregatedPage<Description> findDescriptionsWithAggregations(String path, String term, Boolean conceptActive, Collection<String> languageCodes,
+			PageRequest pageRequest, boolean includeAggregations) {
+		return findDescriptionsWithAggregations(path, term, conceptActive, languageCodes, pageRequest, null, includeAggregations);
+	}
+
+	/**
+	 * Description search with optional semantic tag, refset membership, module and language aggregations.
+	 * When aggregations are requested the aggregation queries and the page query run concurrently once the matching concept ids are known.
+	 * Without aggregations this is a single query, unless the concept active filter is used.
+	 * When a searchAfter token is given the page continues after the description of the token and the offset of the page request is not used.
+	 * The page carries the token of the following page, the total always counts all matching descriptions.
+	 */
+	public SearchAfterPage<Description> findDescriptionsWithAggregations(String path, String term, Boolean conceptActive, Collection<String> languageCodes,
+			PageRequest pageRequest, String searchAfter, boolean includeAggregations) {
+
+		pageRequest = SearchAfterHelper.getPageRequest(pageRequest, searchAfter);
+
 		TimerUtil timer = new TimerUtil("Search", Level.DEBUG);
 		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 		timer.checkpoint("Build branch criteria");
-		List<Aggregation> allAggregations = new ArrayList<>();
 
 		final BoolQueryBuilder descriptionCriteria = boolQuery();
 		BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
 		descriptionCriteria.must(descriptionBranchCriteria);
 		addTermClauses(term, languageCodes, descriptionCriteria);
 
+		if (!includeAggregations && conceptActive == null) {
+			SearchAfterPage<Description> descriptions = findDescriptionsInTermOrder(descriptionCriteria, null, pageRequest, null);
+			timer.finish();
+			return descriptions;
+		}
+
+		// Not all descriptions are FSNs so aggregate using: description -> concept -> active FSN
+		LongSet conceptIds = findDescriptionConceptIds(descriptionCriteria, conceptActive);
+		timer.checkpoint("Fetch all related concept ids");
+		BoolQueryBuilder conceptIdFilter = boolQuery().must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds));
+
+		if (!includeAggregations) {
+			SearchAfterPage<Description> descriptions = findDescriptionsInTermOrder(descriptionCriteria, conceptIdFilter, pageRequest, null);
+			timer.finish();
+			return descriptions;
+		}
+
 		// Fetch concept semantic tag aggregation
-		// Not all descriptions are FSNs so use: description -> concept -> active FSN
-		Set<Long> conceptIds = findDescriptionConceptIds(descriptionCriteria, conceptActive);
-		timer.checkpoint("Fetch all related concept ids for semantic tag aggregation");
-		AggregatedPage<Description> semanticTagResults = (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+		Future<AggregatedPage<Description>> semanticTagFuture = executorService.submit(() -> (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(descriptionBranchCriteria)
 						.must(termsQuery(Description.Fields.ACTIVE, true))
@@ -117,12 +175,10 @@ public class DescriptionService extends ComponentService {
 				)
 				.withPageable(PAGE_OF_ONE)
 				.addAggregation(AggregationBuilders.terms("semanticTags").field(Description.Fields.TAG))
-				.build(), Description.class);
-		allAggregations.add(semanticTagResults.getAggregation("semanticTags"));
-		timer.checkpoint("Semantic tag aggregation");
+				.build(), Description.class));
 
 		// Fetch concept refset membership aggregation
-		AggregatedPage<ReferenceSetMember> membershipResults = (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+		Future<AggregatedPage<ReferenceSetMember>> membershipFuture = executorService.submit(() -> (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
 						.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
@@ -130,24 +186,82 @@ public class DescriptionService extends ComponentService {
 				)
 				.withPageable(PAGE_OF_ONE)
 				.addAggregation(AggregationBuilders.terms("membership").field(ReferenceSetMember.Fields.REFSET_ID))
-				.build(), ReferenceSetMember.class);
-		allAggregations.add(membershipResults.getAggregation("membership"));
-		timer.checkpoint("Concept refset membership aggregation");
+				.build(), ReferenceSetMember.class));
 
 		// Perform description search with description property aggregations
-		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-				.withQuery(descriptionCriteria)
-				.withFilter(boolQuery().must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds)))
-				.addAggregation(AggregationBuilders.terms("module").field(Description.Fields.MODULE_ID))
-				.addAggregation(AggregationBuilders.terms("language").field(Description.Fields.LANGUAGE_CODE))
-				.withPageable(pageRequest);
-		AggregatedPage<Description> descriptions = (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(addTermSort(queryBuilder.build()), Description.class);
-		allAggregations.addAll(descriptions.getAggregations().asList());
+		SearchAfterPage<Description> descriptions = findDescriptionsInTermOrder(descriptionCriteria, conceptIdFilter, pageRequest, null,
+				AggregationBuilders.terms("module").field(Description.Fields.MODULE_ID),
+				AggregationBuilders.terms("language").field(Description.Fields.LANGUAGE_CODE));
 		timer.checkpoint("Fetch descriptions including module and language aggregations");
+
+		List<Aggregation> allAggregations = new ArrayList<>();
+		allAggregations.add(getSearchFuture(semanticTagFuture).getAggregation("semanticTags"));
+		allAggregations.add(getSearchFuture(membershipFuture).getAggregation("membership"));
+		allAggregations.addAll(descriptions.getAggregations().asList());
+		timer.checkpoint("Semantic tag and concept refset membership aggregations");
 		timer.finish();
 
 		// Merge aggregations
-		return new AggregatedPageImpl<>(descriptions.getContent(), descriptions.getPageable(), descriptions.getTotalElements(), new Aggregations(allAggregations));
+		return new SearchAfterPage<>(descriptions.getContent(), descriptions.getPageable(), descriptions.getTotalElements(), new Aggregations(allAggregations),
+				descriptions.getSearchAfter());
+	}
+
+	/**
+	 * Page of descriptions in term order. A page request from a searchAfter token continues after the sort values of the token,
+	 * otherwise the page starts at the offset of the page request.
+	 * The NativeSearchQuery of this Spring Data Elasticsearch version has no search_after option so the request is made with the client.
+	 * A term order includes _score which can not be expressed as range criteria, search_after is the only way to page it without an offset.
+	 * @param postFilter Optional filter applied to the hits but not to the aggregations.
+	 * @param sourceFields Optional source filter.
+	 */
+	SearchAfterPage<Description> findDescriptionsInTermOrder(QueryBuilder query, QueryBuilder postFilter, PageRequest pageRequest, String[] sourceFields,
+			AbstractAggregationBuilder... aggregations) {
+
+		ElasticsearchPersistentEntity persistentEntity = elasticsearchTemplate.getPersistentEntityFor(Description.class);
+		SearchRequestBuilder request = elasticsearchTemplate.getClient().prepareSearch(persistentEntity.getIndexName())
+				.setTypes(persistentEntity.getIndexType())
+				.setQuery(query)
+				.setSize(pageRequest.getPageSize())
+				.addSort(SortBuilders.fieldSort(Description.Fields.TERM_LEN))
+				.addSort(SortBuilders.scoreSort().order(SortOrder.ASC))
+				.addSort(SortBuilders.fieldSort(Description.Fields.DESCRIPTION_ID));
+
+		String[] searchAfter = SearchAfterHelper.getSearchAfter(pageRequest, 3);
+		if (searchAfter != null) {
+			try {
+				request.searchAfter(new Object[] {Integer.parseInt(searchAfter[0]), Float.parseFloat(searchAfter[1]), searchAfter[2]});
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid searchAfter token.", e);
+			}
+		} else {
+			request.setFrom((int) pageRequest.getOffset());
+		}
+		if (postFilter != null) {
+			request.setPostFilter(postFilter);
+		}
+		if (sourceFields != null) {
+			request.setFetchSource(sourceFields, null);
+		}
+		for (AbstractAggregationBuilder aggregation : aggregations) {
+			request.addAggregation(aggregation);
+		}
+
+		SearchResponse response = request.get();
+		List<Description> descriptions = resultsMapper.mapResults(response, Description.class, pageRequest).getContent();
+		SearchHit[] hits = response.getHits().getHits();
+		long total = response.getHits().getTotalHits();
+		String nextSearchAfter = hits.length == 0 ? null : SearchAfterHelper.getNextToken(pageRequest, hits.length, total,
+				Arrays.stream(hits[hits.length - 1].getSortValues()).map(String::valueOf).toArray(String[]::new));
+		Aggregations responseAggregations = response.getAggregations() != null ? response.getAggregations() : new Aggregations(Collections.emptyList());
+		return new SearchAfterPage<>(descriptions, pageRequest, total, responseAggregations, nextSearchAfter);
+	}
+
+	private <T> T getSearchFuture(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeServiceException("Failed to run description search aggregation.", e);
+		}
 	}
 
 	void joinDescriptions(BranchCriteria branchCriteria, Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap,
@@ -282,20 +396,50 @@ public class DescriptionService extends ComponentService {
 		}
 	}
 
-	public void joinActiveDescriptions(String path, Map<String, ConceptMini> conceptMiniMap) {
-		NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery().must(versionControlHelper.getBranchCriteria(path).getEntityBranchCriteria(Description.class))
-						.must(termQuery(SnomedComponent.Fields.ACTIVE, true))
-						.must(termsQuery(Description.Fields.CONCEPT_ID, conceptMiniMap.keySet())))
-				.withPageable(LARGE_PAGE)
-				.build();
-		try (CloseableIterator<Description> stream = elasticsearchTemplate.stream(searchQuery, Description.class)) {
-			stream.forEachRemaining(description -> conceptMiniMap.get(description.getConceptId()).addActiveDescription(description));
+	/**
+	 * Active FSN and synonym descriptions in the given languages, keyed by description id. Enough to select the FSN and PT of a ConceptMini.
+	 */
+	Map<String, Description> findActiveFsnAndSynonyms(BranchCriteria branchCriteria, Collection<String> conceptIds, Collection<String> languageCodes) {
+		Map<String, Description> descriptionIdMap = new HashMap<>();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Description.class))
+							.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIdsSegment))
+							.must(termQuery(Description.Fields.ACTIVE, true))
+							.must(termsQuery(Description.Fields.TYPE_ID, Concepts.FSN, Concepts.SYNONYM))
+							.must(termsQuery(Description.Fields.LANGUAGE_CODE, languageCodes)))
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<Description> descriptions = elasticsearchTemplate.stream(query, Description.class)) {
+				descriptions.forEachRemaining(description -> descriptionIdMap.put(description.getDescriptionId(), description));
+			}
+		}
+		return descriptionIdMap;
+	}
+
+	/**
+	 * Preferred language reference set members of the descriptions of the given concepts.
+	 */
+	List<ReferenceSetMember> findPreferredLanguageRefsetMembers(BranchCriteria branchCriteria, Collection<String> conceptIds) {
+		List<ReferenceSetMember> members = new ArrayList<>();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+							.must(termQuery(ReferenceSetMember.LanguageFields.ACCEPTABILITY_ID_FIELD_PATH, Concepts.PREFERRED))
+							.must(termsQuery(ReferenceSetMember.Fields.CONCEPT_ID, conceptIdsSegment)))
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<ReferenceSetMember> stream = elasticsearchTemplate.stream(query, ReferenceSetMember.class)) {
+				stream.forEachRemaining(members::add);
+			}
 		}
+		return members;
 	}
 
-	private Set<Long> findDescriptionConceptIds(BoolQueryBuilder descriptionCriteria, Boolean conceptActive) {
-		Set<Long> conceptIds = new HashSet<>();
+	private LongSet findDescriptionConceptIds(BoolQueryBuilder descriptionCriteria, Boolean conceptActive) {
+		LongSet conceptIds = new LongOpenHashSet();
 		try (CloseableIterator<Description> descriptionStream = elasticsearchTemplate.stream(
 				new NativeSearchQueryBuilder()
 						.withQuery(descriptionCriteria)
@@ -307,7 +451,7 @@ public class DescriptionService extends ComponentService {
 
 		if (!conceptIds.isEmpty() && conceptActive != null) {
 			// Apply concept active filter
-			Set<Long> conceptsWithActiveStatus = new HashSet<>();
+			LongSet conceptsWithActiveStatus = new LongOpenHashSet();
 			try (CloseableIterator<Concept> conceptStream = elasticsearchTemplate.stream(
 					new NativeSearchQueryBuilder()
 							.withQuery(boolQuery()
@@ -323,24 +467,46 @@ public class DescriptionService extends ComponentService {
 		return conceptIds;
 	}
 
-	static void addTermClauses(String term, Collection<String> languageCodes, BoolQueryBuilder boolBuilder) {
+	void addTermClauses(String term, Collection<String> languageCodes, BoolQueryBuilder boolBuilder) {
 		if (IdentifierService.isConceptId(term)) {
 			boolBuilder.must(termQuery(Description.Fields.CONCEPT_ID, term));
 		} else {
 			if (!Strings.isNullOrEmpty(term)) {
 
 				// Must match one of the following 'should' clauses:
-				boolBuilder.must(boolQuery()
-
-								// All given words. Match Query: https://www.elastic.co/guide/en/elasticsearch/reference/current/query-dsl-match-query.html
-								.should(matchQuery(Description.Fields.TERM, term)
-										.operator(Operator.AND))
+				BoolQueryBuilder termMatchQuery = boolQuery()
+
+						// All given words. Match Query: https://www.elastic.co/guide/en/elasticsearch/reference/current/query-dsl-match-query.html
+						// Also the only clause which matches in an index created before the sub-fields were added.
+						.should(matchQuery(Description.Fields.TERM, term)
+								.operator(Operator.AND))
+
+						// All given words, accents folded.
+						.should(matchQuery(Description.Fields.TERM_FOLDED, term)
+								.operator(Operator.AND));
+
+				if (isTermPrefixIndexed()) {
+					// All prefixes given. Matched against the edge n-grams indexed in the prefix sub-field, no wildcard expansion needed.
+					// e.g. 'Clin Fin' matches 'Clinical Finding'
+					termMatchQuery.should(matchQuery(Description.Fields.TERM_PREFIX, term)
+							.operator(Operator.AND));
+				} else {
+					// All prefixes given, expanded as wildcards until the index is rebuilt with the prefix sub-field.
+					// e.g. 'Clin Fin' converts to 'clin* fin*' and matches 'Clinical Finding'
+					termMatchQuery.should(simpleQueryStringQuery((term.trim().replace(" ", "* ") + "*").replace("**", "*"))
+							.field(Description.Fields.TERM).defaultOperator(Operator.AND));
+				}
 
-								// All prefixes given. Simple Query String Query: https://www.elastic.co/guide/en/elasticsearch/reference/current/query-dsl-simple-query-string-query.html
-								.should(simpleQueryStringQuery((term.trim().replace(" ", "* ") + "*") .replace("**", "*"))
-										.field(Description.Fields.TERM).defaultOperator(Operator.AND))
-						// e.g. 'Clin Fin' converts to 'clin* fin*' and matches 'Clinical Finding'
-				);
+				// All given words stemmed, only using the stemmed sub-fields of the requested languages
+				for (String languageCode : languageCodes) {
+					if (Description.STEMMED_LANGUAGE_CODES.contains(languageCode)) {
+						termMatchQuery.should(boolQuery()
+								.must(termQuery(Description.Fields.LANGUAGE_CODE, languageCode))
+								.must(matchQuery(Description.Fields.TERM + "." + languageCode, term)
+										.operator(Operator.AND)));
+					}
+				}
+				boolBuilder.must(termMatchQuery);
 
 				// Must match the requested language
 				boolBuilder.must(termsQuery(Description.Fields.LANGUAGE_CODE, languageCodes));
@@ -348,9 +514,49 @@ public class DescriptionService extends ComponentService {
 		}
 	}
 
+	/**
+	 * Description indices created before the term sub-fields were introduced have no prefix sub-field to match the start of words against.
+	 * Until the index is rebuilt prefixes are matched using wildcards instead.
+	 * The result is kept until {@link #clearTermPrefixIndexed()} is called after the description index is rebuilt.
+	 */
+	public boolean isTermPrefixIndexed() {
+		Boolean indexed = termPrefixIndexed;
+		if (indexed == null) {
+			ElasticsearchPersistentEntity<Description> persistentEntity = elasticsearchTemplate.getPersistentEntityFor(Description.class);
+			String indexType = persistentEntity.getIndexType();
+			// Keyed by the concrete index names, the index name is an alias once the index has been rebuilt
+			ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> indexMappings = elasticsearchTemplate.getClient().admin().indices()
+					.prepareGetMappings(persistentEntity.getIndexName()).setTypes(indexType).get().getMappings();
+			indexed = !indexMappings.isEmpty();
+			for (ObjectCursor<ImmutableOpenMap<String, MappingMetaData>> indexMapping : indexMappings.values()) {
+				MappingMetaData typeMapping = indexMapping.value.get(indexType);
+				indexed &= typeMapping != null && hasTermPrefixField(typeMapping.getSourceAsMap());
+			}
+			if (!indexed) {
+				logger.warn("The description index has no term prefix field. Description search matches the start of words using wildcards, which is slower. " +
+						"Rebuild the description index using POST /admin/actions/rebuild-description-index.");
+			}
+			termPrefixIndexed = indexed;
+		}
+		return indexed;
+	}
+
+	public void clearTermPrefixIndexed() {
+		termPrefixIndexed = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean hasTermPrefixField(Map<String, Object> mapping) {
+		Map<String, Object> properties = (Map<String, Object>) mapping.get("properties");
+		Map<String, Object> termProperty = properties != null ? (Map<String, Object>) properties.get(Description.Fields.TERM) : null;
+		Map<String, Object> termFields = termProperty != null ? (Map<String, Object>) termProperty.get("fields") : null;
+		return termFields != null && termFields.containsKey("prefix");
+	}
+
 	static NativeSearchQuery addTermSort(NativeSearchQuery query) {
 		query.addSort(Sort.by("termLen"));
 		query.addSort(Sort.by("_score"));
+		query.addSort(Sort.by(Description.Fields.DESCRIPTION_ID));
 		return query;
 	}
 }
@@ -1,5 +1,10 @@
 package org.snomed.snowstorm.core.data.services;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.search.SearchHit;
@@ -10,6 +15,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.core.DefaultResultMapper;
 import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.SearchResultMapper;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
 import org.springframework.data.elasticsearch.core.aggregation.impl.AggregatedPageImpl;
 import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
@@ -17,10 +23,12 @@ import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersiste
 import org.springframework.data.mapping.PersistentProperty;
 import org.springframework.data.mapping.context.MappingContext;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -29,20 +37,56 @@ import java.util.function.Function;
  */
 public class FastResultsMapper extends DefaultResultMapper {
 
+	/**
+	 * Source fields read by {@link #QUERY_CONCEPT_PROJECTION}, use as the source filter of the query.
+	 */
+	public static final String[] QUERY_CONCEPT_PROJECTION_FIELDS = {
+			QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.STATED, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ANCESTORS,
+			QueryConcept.Fields.ATTR_ENC, QueryConcept.Fields.ATTR_MAP};
+
+	/**
+	 * Maps QueryConcept hits by reading the filtered source straight into primitive id sets, skipping the entity mapper.
+	 * The attributes are kept in their encoded form until they are changed.
+	 * The version control fields (internal id, path, start and end) are not read.
+	 * Projections must only be saved through ComponentService.doSaveBatchComponents, which saves them as new versions with those fields set from the commit,
+	 * never with the repository directly.
+	 */
+	public static final SearchResultMapper QUERY_CONCEPT_PROJECTION = new SearchResultMapper() {
+		@Override
+		public <T> AggregatedPage<T> mapResults(SearchResponse response, Class<T> clazz, Pageable pageable) {
+			List<T> results = new ArrayList<>();
+			for (SearchHit searchHit : response.getHits()) {
+				results.add(clazz.cast(readQueryConceptProjection(searchHit)));
+			}
+			return new AggregatedPageImpl<>(results, pageable, response.getHits().getTotalHits(), response.getAggregations());
+		}
+	};
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	private Map<Class, Function<SearchHit, Object>> mapFunctions = MapBuilder.newMapBuilder(new HashMap<Class, Function<SearchHit, Object>>())
 			.put(Concept.class, hit -> new Concept(hit.getFields().get(Concept.Fields.CONCEPT_ID).getValue()))
 			.put(Description.class, hit -> new Description().setConceptId(hit.getFields().get(Description.Fields.CONCEPT_ID).getValue()))
 			.put(Relationship.class, hit -> new Relationship().setSourceId(hit.getFields().get(Relationship.Fields.SOURCE_ID).getValue()))
-			.put(ReferenceSetMember.class, hit -> new ReferenceSetMember()
-					.setReferencedComponentId(hit.getFields().get(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID).getValue())
-					.setConceptId(hit.getFields().get(ReferenceSetMember.Fields.CONCEPT_ID).getValue())
-			)
+			.put(ReferenceSetMember.class, hit -> {
+				// Either field may be requested alone
+				ReferenceSetMember member = new ReferenceSetMember();
+				if (hit.getFields().containsKey(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)) {
+					member.setReferencedComponentId(hit.getFields().get(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID).getValue());
+				}
+				if (hit.getFields().containsKey(ReferenceSetMember.Fields.CONCEPT_ID)) {
+					member.setConceptId(hit.getFields().get(ReferenceSetMember.Fields.CONCEPT_ID).getValue());
+				}
+				return member;
+			})
 			.put(QueryConcept.class, hit -> {
 				QueryConcept queryConcept = new QueryConcept();
 				queryConcept.setConceptIdL(hit.getFields().get(QueryConcept.Fields.CONCEPT_ID).getValue());
-				if (hit.getFields().containsKey(QueryConcept.Fields.ATTR_MAP)) {
+				if (hit.getFields().containsKey(QueryConcept.Fields.ATTR_ENC)) {
+					queryConcept.setAttrEnc(hit.getFields().get(QueryConcept.Fields.ATTR_ENC).getValue());
+				} else if (hit.getFields().containsKey(QueryConcept.Fields.ATTR_MAP)) {
 					queryConcept.setAttrMap(hit.getFields().get(QueryConcept.Fields.ATTR_MAP).getValue());
 				}
 				return queryConcept;
@@ -94,4 +138,64 @@ public class FastResultsMapper extends DefaultResultMapper {
 
 	}
 
+	static QueryConcept readQueryConceptProjection(SearchHit hit) {
+		BytesRef source = hit.getSourceRef().toBytesRef();
+		try (JsonParser parser = JSON_FACTORY.createParser(source.bytes, source.offset, source.length)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IllegalStateException("QueryConcept " + hit.getId() + " has no source.");
+			}
+			Long conceptId = null;
+			boolean stated = false;
+			Set<Long> parents = new LongOpenHashSet();
+			Set<Long> ancestors = new LongOpenHashSet();
+			String attrEnc = null;
+			String attrMap = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				switch (field) {
+					case QueryConcept.Fields.CONCEPT_ID:
+						conceptId = parser.getLongValue();
+						break;
+					case QueryConcept.Fields.STATED:
+						stated = parser.getBooleanValue();
+						break;
+					case QueryConcept.Fields.PARENTS:
+						parents = readLongs(parser, token);
+						break;
+					case QueryConcept.Fields.ANCESTORS:
+						ancestors = readLongs(parser, token);
+						break;
+					case QueryConcept.Fields.ATTR_ENC:
+						attrEnc = token == JsonToken.VALUE_NULL ? null : parser.getText();
+						break;
+					case QueryConcept.Fields.ATTR_MAP:
+						attrMap = token == JsonToken.VALUE_NULL ? null : parser.getText();
+						break;
+					default:
+						parser.skipChildren();
+				}
+			}
+			QueryConcept queryConcept = new QueryConcept(conceptId, parents, ancestors, stated);
+			if (attrEnc != null) {
+				queryConcept.setAttrEnc(attrEnc);
+			} else if (attrMap != null) {
+				queryConcept.setAttrMap(attrMap);
+			}
+			return queryConcept;
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read QueryConcept " + hit.getId(), e);
+		}
+	}
+
+	private static Set<Long> readLongs(JsonParser parser, JsonToken token) throws IOException {
+		LongOpenHashSet values = new LongOpenHashSet();
+		if (token == JsonToken.START_ARRAY) {
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				values.add(parser.getLongValue());
+			}
+		}
+		return values;
+	}
+
 }
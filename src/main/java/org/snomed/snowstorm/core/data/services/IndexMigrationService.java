@@ -0,0 +1,108 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.config.elasticsearch.SnowstormElasticsearchTemplate;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+
+/**
+ * Brings indices created by an older version up to date with the current settings and mapping of their domain class.
+ * The documents are copied to a new index which then replaces the old one behind the index name, so the old index stays searchable until the switch.
+ */
+@Service
+public class IndexMigrationService {
+
+	@Autowired
+	private SnowstormElasticsearchTemplate elasticsearchTemplate;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Creates a new index with the settings and mapping of the class, copies every document into it then atomically points the index name of the class at the new index
+	 * using an alias and deletes the old index.
+	 * Changes saved while the documents are being copied are not in the new index so this should only be run while no content is being imported or edited.
+	 * Document content is not changed so this does not create a commit on any branch.
+	 * @return The number of documents copied.
+	 */
+	public <T> long updateMappingAndReindex(Class<T> entityClass) {
+		ElasticsearchPersistentEntity<T> persistentEntity = elasticsearchTemplate.getPersistentEntityFor(entityClass);
+		String aliasName = persistentEntity.getIndexName();
+		String indexType = persistentEntity.getIndexType();
+		String newIndexName = aliasName + "_" + System.currentTimeMillis();
+		TimerUtil timer = new TimerUtil("Index migration " + aliasName);
+
+		// The alias name is a concrete index until the first migration
+		IndicesAdminClient indicesClient = elasticsearchTemplate.getClient().admin().indices();
+		List<String> previousIndexNames = Arrays.asList(indicesClient.prepareGetIndex().setIndices(aliasName).get().getIndices());
+
+		logger.info("Creating index {} to replace {}.", newIndexName, previousIndexNames);
+		elasticsearchTemplate.createIndex(newIndexName, elasticsearchTemplate.getIndexSettings(entityClass));
+		long indexed = 0;
+		try {
+			elasticsearchTemplate.putMapping(newIndexName, entityClass);
+			timer.checkpoint("Create index");
+
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(matchAllQuery())
+					.withSort(new FieldSortBuilder("_doc"))
+					.withPageable(LARGE_PAGE)
+					.build();
+			List<IndexQuery> batch = new ArrayList<>();
+			try (CloseableIterator<T> stream = elasticsearchTemplate.stream(query, entityClass)) {
+				while (stream.hasNext()) {
+					batch.add(new IndexQueryBuilder().withIndexName(newIndexName).withType(indexType).withObject(stream.next()).build());
+					if (batch.size() == LARGE_PAGE.getPageSize()) {
+						indexed += indexBatch(batch);
+						timer.checkpoint("Copied " + indexed + " documents");
+					}
+				}
+			}
+			indexed += indexBatch(batch);
+			elasticsearchTemplate.refresh(newIndexName);
+		} catch (RuntimeException e) {
+			logger.error("Index migration of {} failed, deleting new index {}.", aliasName, newIndexName);
+			elasticsearchTemplate.deleteIndex(newIndexName);
+			throw e;
+		}
+
+		// One request so that searches never find the index name missing
+		IndicesAliasesRequestBuilder aliasesRequest = indicesClient.prepareAliases();
+		for (String previousIndexName : previousIndexNames) {
+			aliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(previousIndexName));
+		}
+		aliasesRequest.addAlias(newIndexName, aliasName).get();
+		timer.finish();
+		logger.info("{} documents copied to {} which is now behind {}.", indexed, newIndexName, aliasName);
+		return indexed;
+	}
+
+	private int indexBatch(List<IndexQuery> batch) {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		elasticsearchTemplate.bulkIndex(batch);
+		int size = batch.size();
+		batch.clear();
+		return size;
+	}
+
+}
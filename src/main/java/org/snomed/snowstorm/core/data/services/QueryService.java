@@ -1,33 +1,44 @@
 package org.snomed.snowstorm.core.data.services;
 
+import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
-import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.*;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.pojo.ResultMapPage;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
+import org.snomed.snowstorm.core.util.LongIntersectionUtil;
 import org.snomed.snowstorm.core.util.PageCollectionUtil;
+import org.snomed.snowstorm.core.util.SearchAfterHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
 import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -37,6 +48,9 @@ import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_CODES;
 public class QueryService {
 
 	static final PageRequest PAGE_OF_ONE = PageRequest.of(0, 1);
+	public static final int MIN_TERM_LENGTH = 3;
+	private static final SourceFilter PARENTS_SOURCE_FILTER = new FetchSourceFilter(new String[] {QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS}, null);
+	private static final String[] LEXICAL_SOURCE_FIELDS = {Description.Fields.CONCEPT_ID};
 
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
@@ -47,6 +61,9 @@ public class QueryService {
 	@Autowired
 	private ConceptService conceptService;
 
+	@Autowired
+	private DescriptionService descriptionService;
+
 	@Autowired
 	private ECLQueryService eclQueryService;
 
@@ -56,36 +73,113 @@ public class QueryService {
 	@Autowired
 	private RelationshipService relationshipService;
 
+	@Autowired
+	private ExecutorService executorService;
+
+	private volatile Boolean attributeCountIndexed;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Page<ConceptMini> search(ConceptQueryBuilder conceptQuery, String branchPath, PageRequest pageRequest) {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		Optional<Page<Long>> conceptIdPageOptional = doSearchForIds(conceptQuery, branchPath, branchCriteria, pageRequest);
+		return search(conceptQuery, branchPath, pageRequest, null);
+	}
 
-		if (conceptIdPageOptional.isPresent()) {
-			Page<Long> conceptIdPage = conceptIdPageOptional.get();
-			ResultMapPage<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchCriteria, conceptIdPage.getContent(), conceptQuery.getLanguageCodes());
-			return new PageImpl<>(sortConceptMinisByTermOrder(conceptIdPage.getContent(), conceptMinis.getResultsMap()), pageRequest, conceptIdPage.getTotalElements());
+	/**
+	 * Concept search with a token to fetch the next page.
+	 * When a searchAfter token is given the page continues after the concept of the token and the offset of the page request is not used.
+	 * Term searches continue after the sort values of the last description and ECL and other logical searches after the last concept id,
+	 * so deep pages cost the same as the first. Searches which have to collect all ids in memory first, like a term search combined with ECL,
+	 * use the offset held in the token. The total always counts all matching concepts.
+	 */
+	public SearchAfterPage<ConceptMini> search(ConceptQueryBuilder conceptQuery, String branchPath, PageRequest pageRequest, String searchAfter) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		PageRequest page = SearchAfterHelper.getPageRequest(pageRequest, searchAfter);
+		Page<Long> conceptIdPage = doSearchForIds(conceptQuery, branchPath, branchCriteria, page)
+				// No ids - page of all concepts
+				.orElseGet(() -> getAllConceptIdsPage(branchCriteria, page));
+
+		List<Long> conceptIds = conceptIdPage.getContent();
+		ResultMapPage<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchCriteria, conceptIds, conceptQuery.getLanguageCodes());
+		String nextSearchAfter;
+		if (conceptIdPage instanceof SearchAfterPage) {
+			nextSearchAfter = ((SearchAfterPage<Long>) conceptIdPage).getSearchAfter();
 		} else {
-			// No ids - return page of all concepts
-			ResultMapPage<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchCriteria, conceptQuery.getLanguageCodes(), pageRequest);
-			return new PageImpl<>(new ArrayList<>(conceptMinis.getResultsMap().values()), pageRequest, conceptMinis.getTotalElements());
+			nextSearchAfter = conceptIds.isEmpty() ? null :
+					SearchAfterHelper.getNextToken(page, conceptIds.size(), conceptIdPage.getTotalElements(), conceptIds.get(conceptIds.size() - 1).toString());
 		}
+		return new SearchAfterPage<>(sortConceptMinisByTermOrder(conceptIds, conceptMinis.getResultsMap()), page, conceptIdPage.getTotalElements(), nextSearchAfter);
 	}
 
 	public Page<Long> searchForIds(ConceptQueryBuilder conceptQuery, String branchPath, PageRequest pageRequest) {
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
 		Optional<Page<Long>> conceptIdPageOptional = doSearchForIds(conceptQuery, branchPath, branchCriteria, pageRequest);
 
-		return conceptIdPageOptional.orElseGet(() -> {
-			// No ids - return page of all concept ids
-			NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-					.withQuery(boolQuery().must(branchCriteria.getEntityBranchCriteria(Concept.class)))
-					.withSort(SortBuilders.fieldSort(Concept.Fields.CONCEPT_ID))
-					.withPageable(pageRequest);
-			Page<Concept> concepts = elasticsearchTemplate.queryForPage(queryBuilder.build(), Concept.class);
-			return new PageImpl<>(concepts.getContent().stream().map(Concept::getConceptIdAsLong).collect(Collectors.toList()), pageRequest, concepts.getTotalElements());
-		});
+		// No ids - return page of all concept ids
+		return conceptIdPageOptional.orElseGet(() -> getAllConceptIdsPage(branchCriteria, pageRequest));
+	}
+
+	private Page<Long> getAllConceptIdsPage(BranchCriteria branchCriteria, PageRequest pageRequest) {
+		BoolQueryBuilder query = boolQuery().must(branchCriteria.getEntityBranchCriteria(Concept.class));
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withSort(SortBuilders.fieldSort(Concept.Fields.CONCEPT_ID))
+				.withFields(Concept.Fields.CONCEPT_ID);
+		String[] searchAfter = SearchAfterHelper.getSearchAfter(pageRequest, 1);
+		if (searchAfter != null) {
+			// Continue after the last concept id of the previous page, concept ids are keywords here so the order is lexical
+			query.filter(SearchAfterHelper.getAfterCriteria(new String[] {Concept.Fields.CONCEPT_ID}, searchAfter));
+			queryBuilder.withPageable(SearchAfterHelper.getFirstPage(pageRequest));
+		} else {
+			queryBuilder.withPageable(pageRequest);
+		}
+		Page<Concept> concepts = elasticsearchTemplate.queryForPage(queryBuilder.build(), Concept.class);
+		long total = searchAfter != null ? SearchAfterHelper.getTotal(pageRequest, concepts.getTotalElements()) : concepts.getTotalElements();
+		return new PageImpl<>(concepts.getContent().stream().map(Concept::getConceptIdAsLong).collect(Collectors.toList()), pageRequest, total);
+	}
+
+	/**
+	 * All concept ids matching the ECL of the query, without paging. Only ECL and definition status criteria are supported.
+	 */
+	public List<Long> searchForAllEclIds(ConceptQueryBuilder conceptQuery, String branchPath) {
+		if (conceptQuery.getEcl() == null) {
+			throw new IllegalArgumentException("An ECL expression is required to select all concept ids.");
+		}
+		if (conceptQuery.getTermPrefix() != null) {
+			throw new IllegalArgumentException("Term filter can not be used when selecting all concept ids.");
+		}
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		List<Long> conceptIds = doEclSearch(conceptQuery, branchPath, branchCriteria, null);
+		String definitionStatusFilter = conceptQuery.getDefinitionStatusFilter();
+		if (definitionStatusFilter == null || definitionStatusFilter.isEmpty()) {
+			return conceptIds;
+		}
+		List<Long> filteredConceptIds = new LongArrayList();
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			filteredConceptIds.addAll(filterByDefinitionStatus(conceptIdsSegment, definitionStatusFilter, branchCriteria));
+		}
+		return filteredConceptIds;
+	}
+
+	/**
+	 * All concept ids matching both the term prefix and the ECL of the query, in term relevance order, without paging.
+	 * Lexical matches are streamed rather than fetched as one large page.
+	 */
+	public List<Long> searchForAllEclIdsWithTerm(ConceptQueryBuilder conceptQuery, String branchPath) {
+		String term = conceptQuery.getTermPrefix();
+		if (conceptQuery.getEcl() == null) {
+			throw new IllegalArgumentException("An ECL expression is required to select all concept ids.");
+		}
+		if (term == null || term.length() < MIN_TERM_LENGTH) {
+			throw new IllegalArgumentException("Term filter must be at least " + MIN_TERM_LENGTH + " characters.");
+		}
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		List<Long> allLexicalMatchesWithOrdering = findLexicalMatchDescriptionConceptIds(branchCriteria, term, conceptQuery.getLanguageCodes());
+		if (allLexicalMatchesWithOrdering.isEmpty()) {
+			return allLexicalMatchesWithOrdering;
+		}
+		List<Long> allLogicalMatches = doEclSearch(conceptQuery, branchPath, branchCriteria, allLexicalMatchesWithOrdering);
+		List<Long> allFilteredLogicalMatches = filterByDefinitionStatus(allLogicalMatches, conceptQuery.getDefinitionStatusFilter(), branchCriteria);
+		return LongIntersectionUtil.orderedIntersection(allLexicalMatchesWithOrdering, allFilteredLogicalMatches, Pageable.unpaged()).getContent();
 	}
 
 	private Optional<Page<Long>> doSearchForIds(ConceptQueryBuilder conceptQuery, String branchPath, BranchCriteria branchCriteria, PageRequest pageRequest) {
@@ -95,7 +189,7 @@ public class QueryService {
 		Collection<String> languageCodes = conceptQuery.getLanguageCodes();
 		boolean hasLexicalCriteria;
 		if (term != null) {
-			if (term.length() < 3) {
+			if (term.length() < MIN_TERM_LENGTH) {
 				return Optional.of(new PageImpl<>(Collections.emptyList()));
 			}
 			hasLexicalCriteria = true;
@@ -108,13 +202,13 @@ public class QueryService {
 		if (hasLexicalCriteria && !hasLogicalConditions) {
 			// Lexical Only
 			logger.info("Lexical search {}", term);
-			NativeSearchQuery descriptionQuery = getLexicalQuery(term, languageCodes, branchCriteria, pageRequest);
-			descriptionQuery.addFields(Description.Fields.CONCEPT_ID);
 			final List<Long> pageOfIds = new LongArrayList();
-			Page<Description> descriptionPage = elasticsearchTemplate.queryForPage(descriptionQuery, Description.class);
+			SearchAfterPage<Description> descriptionPage = descriptionService.findDescriptionsInTermOrder(getLexicalQueryBuilder(term, languageCodes, branchCriteria), null,
+					pageRequest, LEXICAL_SOURCE_FIELDS);
 			descriptionPage.getContent().forEach(d -> pageOfIds.add(parseLong(d.getConceptId())));
 
-			conceptIdPage = new PageImpl<>(pageOfIds, pageRequest, descriptionPage.getTotalElements());
+			// Keep the token of the description page, the next page continues after the last description
+			conceptIdPage = new SearchAfterPage<>(pageOfIds, pageRequest, descriptionPage.getTotalElements(), descriptionPage.getSearchAfter());
 
 		} else if (hasLogicalConditions && !hasLexicalCriteria) {
 			// Logical Only
@@ -123,8 +217,7 @@ public class QueryService {
 			if (conceptIds != null && !conceptIds.isEmpty()) {
 				// Concept ID pass-through
 				List<Long> conceptIdList = conceptIds.stream().map(Long::parseLong).collect(Collectors.toList());
-				List<Long> pageOfIds = PageCollectionUtil.subList(conceptIdList, pageRequest.getPageNumber(), pageRequest.getPageSize());
-				conceptIdPage = new PageImpl<>(pageOfIds, pageRequest, conceptIdList.size());
+				conceptIdPage = PageCollectionUtil.listToPage(conceptIdList, pageRequest);
 			} else if (conceptQuery.getEcl() != null) {
 				// ECL search
 				conceptIdPage = doEclSearchAndDefinitionFilter(conceptQuery, branchPath, pageRequest, branchCriteria);
@@ -192,7 +285,7 @@ public class QueryService {
 			logger.info("{} lexical results, {} logical results", allLexicalMatchesWithOrdering.size(), allFilteredLogicalMatchesFinal.size());
 
 			// Create page of ids which is an intersection of the lexical and logical lists using the lexical ordering
-			conceptIdPage = PageCollectionUtil.listIntersection(allLexicalMatchesWithOrdering, allFilteredLogicalMatchesFinal, pageRequest);
+			conceptIdPage = LongIntersectionUtil.orderedIntersection(allLexicalMatchesWithOrdering, allFilteredLogicalMatchesFinal, pageRequest);
 		}
 
 		if (conceptIdPage != null) {
@@ -226,22 +319,29 @@ public class QueryService {
 	}
 
 	private Page<Long> getSimpleLogicalSearchPage(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria, PageRequest pageRequest) {
-		Page<Long> conceptIdPage;
+		BoolQueryBuilder query = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.must(conceptQuery.getRootBuilder());
 		NativeSearchQueryBuilder logicalSearchQuery = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-						.must(conceptQuery.getRootBuilder())
-				)
+				.withQuery(query)
 				.withFields(QueryConcept.Fields.CONCEPT_ID)
-				.withPageable(pageRequest);
+				.withSort(ConceptSelectorHelper.getOrder());
+		String[] searchAfter = SearchAfterHelper.getSearchAfter(pageRequest, 1);
+		if (searchAfter != null) {
+			// Continue after the last concept id of the previous page
+			query.filter(SearchAfterHelper.getAfterCriteria(QueryConcept.Fields.CONCEPT_ID, searchAfter[0], SortOrder.DESC));
+			logicalSearchQuery.withPageable(SearchAfterHelper.getFirstPage(pageRequest));
+		} else {
+			logicalSearchQuery.withPageable(pageRequest);
+		}
 		Page<QueryConcept> pageOfConcepts = elasticsearchTemplate.queryForPage(logicalSearchQuery.build(), QueryConcept.class);
 
 		List<Long> pageOfIds = pageOfConcepts.getContent().stream().map(QueryConcept::getConceptIdL).collect(Collectors.toList());
-		conceptIdPage = new PageImpl<>(pageOfIds, pageRequest, pageOfConcepts.getTotalElements());
-		return conceptIdPage;
+		long total = searchAfter != null ? SearchAfterHelper.getTotal(pageRequest, pageOfConcepts.getTotalElements()) : pageOfConcepts.getTotalElements();
+		return new PageImpl<>(pageOfIds, pageRequest, total);
 	}
 
-	private List<Long> findLexicalMatchDescriptionConceptIds(BranchCriteria branchCriteria, String term, Collection<String> languageCodes) {
+	public List<Long> findLexicalMatchDescriptionConceptIds(BranchCriteria branchCriteria, String term, Collection<String> languageCodes) {
 		final List<Long> allLexicalMatchesWithOrdering = new LongArrayList();
 
 		NativeSearchQuery query = getLexicalQuery(term, languageCodes, branchCriteria, LARGE_PAGE);
@@ -274,18 +374,22 @@ public class QueryService {
 	}
 
 	private NativeSearchQuery getLexicalQuery(String term, Collection<String> languageCodes, BranchCriteria branchCriteria, PageRequest pageable) {
-		BoolQueryBuilder lexicalQuery = boolQuery()
-				.must(branchCriteria.getEntityBranchCriteria(Description.class))
-				.must(termQuery("active", true));
-		DescriptionService.addTermClauses(term, languageCodes, lexicalQuery);
 		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-				.withQuery(lexicalQuery)
+				.withQuery(getLexicalQueryBuilder(term, languageCodes, branchCriteria))
 				.withPageable(pageable);
 		NativeSearchQuery query = queryBuilder.build();
 		DescriptionService.addTermSort(query);
 		return query;
 	}
 
+	private BoolQueryBuilder getLexicalQueryBuilder(String term, Collection<String> languageCodes, BranchCriteria branchCriteria) {
+		BoolQueryBuilder lexicalQuery = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(Description.class))
+				.must(termQuery("active", true));
+		descriptionService.addTermClauses(term, languageCodes, lexicalQuery);
+		return lexicalQuery;
+	}
+
 	private List<ConceptMini> sortConceptMinisByTermOrder(List<Long> termConceptIds, Map<String, ConceptMini> conceptMiniMap) {
 		return termConceptIds.stream().filter(id -> conceptMiniMap.keySet().contains(id.toString())).map(id -> conceptMiniMap.get(id.toString())).collect(Collectors.toList());
 	}
@@ -315,6 +419,73 @@ public class QueryService {
 		return concepts.isEmpty() ? Collections.emptySet() : concepts.get(0).getParents();
 	}
 
+	public Map<Long, Set<Long>> findParentIdsMap(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Map<Long, Set<Long>> parentIdsMap = new Long2ObjectOpenHashMap<>();
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIdsSegment))
+							.must(termQuery(QueryConcept.Fields.STATED, stated))
+					)
+					.withSourceFilter(PARENTS_SOURCE_FILTER)
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(searchQuery, QueryConcept.class)) {
+				stream.forEachRemaining(queryConcept -> parentIdsMap.put(queryConcept.getConceptIdL(), queryConcept.getParents()));
+			}
+		}
+		return parentIdsMap;
+	}
+
+	/**
+	 * Ancestors of each concept from the semantic index, selected by concept id form.
+	 * Inactive or missing concepts are not in the index so are not included in the map.
+	 */
+	public Map<Long, Set<Long>> findAncestorIdsMap(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Map<Long, Set<Long>> ancestorIdsMap = new Long2ObjectOpenHashMap<>();
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termsQuery(QueryConcept.Fields.CONCEPT_ID_FORM, conceptIdsSegment.stream()
+									.map(conceptId -> QueryConcept.toConceptIdForm(conceptId, stated)).collect(Collectors.toList())))
+					)
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(searchQuery, QueryConcept.class)) {
+				stream.forEachRemaining(queryConcept -> ancestorIdsMap.put(queryConcept.getConceptIdL(), queryConcept.getAncestors()));
+			}
+		}
+		return ancestorIdsMap;
+	}
+
+	public Map<Long, Set<Long>> findChildIdsMap(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Map<Long, Set<Long>> childIdsMap = new Long2ObjectOpenHashMap<>();
+		LongSet conceptIdSet = new LongOpenHashSet(conceptIds);
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termsQuery(QueryConcept.Fields.PARENTS, conceptIdsSegment))
+							.must(termQuery(QueryConcept.Fields.STATED, stated))
+					)
+					.withSourceFilter(PARENTS_SOURCE_FILTER)
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(searchQuery, QueryConcept.class)) {
+				stream.forEachRemaining(queryConcept -> {
+					for (Long parentId : queryConcept.getParents()) {
+						if (conceptIdSet.contains(parentId)) {
+							childIdsMap.computeIfAbsent(parentId, id -> new LongOpenHashSet()).add(queryConcept.getConceptIdL());
+						}
+					}
+				});
+			}
+		}
+		return childIdsMap;
+	}
+
 	public Set<Long> findAncestorIds(BranchCriteria branchCriteria, String path, boolean stated, String conceptId) {
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
@@ -368,10 +539,61 @@ public class QueryService {
 		return new PageImpl<>(conceptIdsFound, LARGE_PAGE, conceptsPage.getTotalElements()).getContent();
 	}
 
+	/**
+	 * All descendants of the given concepts, streamed so that large hierarchies are not truncated at one page.
+	 */
+	public LongSet findDescendantIdSet(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		LongSet descendantIds = new LongOpenHashSet();
+		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery(QueryConcept.Fields.ANCESTORS, conceptIds))
+						.must(termQuery(QueryConcept.Fields.STATED, stated))
+				)
+				.withFields(QueryConcept.Fields.CONCEPT_ID)// This triggers the fast results mapper
+				.withPageable(LARGE_PAGE)
+				.build();
+		try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(searchQuery, QueryConcept.class)) {
+			stream.forEachRemaining(queryConcept -> descendantIds.add(queryConcept.getConceptIdL()));
+		}
+		return descendantIds;
+	}
+
 	public Set<Long> findConceptIdsInReferenceSet(BranchCriteria branchCriteria, String referenceSetId) {
 		return memberService.findConceptsInReferenceSet(branchCriteria, referenceSetId);
 	}
 
+	/**
+	 * Uses the branch head cache when the branch criteria are the head criteria of the path.
+	 */
+	public Set<Long> findConceptIdsInReferenceSet(String path, BranchCriteria branchCriteria, String referenceSetId) {
+		return memberService.findConceptsInReferenceSet(path, branchCriteria, referenceSetId);
+	}
+
+	/**
+	 * Looks up the destinations of many source concepts, in chunks which run concurrently on the shared executor.
+	 * @return Destination ids without duplicates, sorted descending.
+	 */
+	public List<Long> findRelationshipDestinationIdsInChunks(List<Long> sourceConceptIds, List<Long> attributeTypeIds, BranchCriteria branchCriteria, boolean stated) {
+		List<Future<List<Long>>> chunks = new ArrayList<>();
+		for (List<Long> sourceConceptIdsChunk : Iterables.partition(sourceConceptIds, CLAUSE_LIMIT)) {
+			chunks.add(executorService.submit(() -> findRelationshipDestinationIds(sourceConceptIdsChunk, attributeTypeIds, branchCriteria, stated)));
+		}
+		LongSet destinationIds = new LongOpenHashSet();
+		for (Future<List<Long>> chunk : chunks) {
+			try {
+				destinationIds.addAll(chunk.get());
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeServiceException("Failed to fetch relationship destinations.", e);
+			}
+		}
+
+		// Sorting meaningless but supports deterministic pagination
+		LongArrayList sortedIds = new LongArrayList(destinationIds);
+		sortedIds.sort(LongComparators.OPPOSITE_COMPARATOR);
+		return sortedIds;
+	}
+
 	public List<Long> findRelationshipDestinationIds(Collection<Long> sourceConceptIds, List<Long> attributeTypeIds, BranchCriteria branchCriteria, boolean stated) {
 		if (!stated) {
 			// Use relationships - it's faster
@@ -431,6 +653,33 @@ public class QueryService {
 		return sortedIds;
 	}
 
+	/**
+	 * Semantic index entries written before attrCount was introduced have attributes but no attribute counts.
+	 * While any of those remain attribute cardinality is checked against the fetched index records rather than within the query.
+	 * The result is kept until {@link #clearAttributeCountIndexed()} is called after the semantic index is rebuilt.
+	 */
+	public boolean isAttributeCountIndexed() {
+		Boolean indexed = attributeCountIndexed;
+		if (indexed == null) {
+			long entriesWithoutCount = elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(existsQuery(QueryConcept.Fields.ATTR))
+							.mustNot(existsQuery(QueryConcept.Fields.ATTR_COUNT)))
+					.build(), QueryConcept.class);
+			indexed = entriesWithoutCount == 0;
+			if (!indexed) {
+				logger.warn("{} semantic index entries have no attribute counts. ECL attribute cardinality is checked outside of the query, which is slower. " +
+						"Rebuild the semantic index using POST /admin/actions/rebuild-semantic-index.", entriesWithoutCount);
+			}
+			attributeCountIndexed = indexed;
+		}
+		return indexed;
+	}
+
+	public void clearAttributeCountIndexed() {
+		attributeCountIndexed = null;
+	}
+
 	public Page<ConceptMini> findDescendantsAsConceptMinis(String conceptId, String path, Relationship.CharacteristicType form, PageRequest pageRequest) {
 		ConceptQueryBuilder queryBuilder = createQueryBuilder(form == Relationship.CharacteristicType.stated);
 		queryBuilder.ecl("<" + conceptId);
@@ -1,25 +1,28 @@
 package org.snomed.snowstorm.core.data.services;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
-import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.*;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.ReferenceSetMemberRepository;
 import org.snomed.snowstorm.core.data.repositories.ReferenceSetTypeRepository;
-import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
+import org.snomed.snowstorm.core.util.SearchAfterHelper;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -30,6 +33,8 @@ import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.Long.parseLong;
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -39,6 +44,8 @@ public class ReferenceSetMemberService extends ComponentService {
 
 	private static final Set<String> LANG_REFSET_MEMBER_FIELD_SET = Collections.singleton(ReferenceSetMember.LanguageFields.ACCEPTABILITY_ID);
 	private static final Set<String> OWL_REFSET_MEMBER_FIELD_SET = Collections.singleton(ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION);
+	private static final int CONCEPTS_IN_REFERENCE_SET_CACHE_MAX_IDS = 5_000_000;
+	private static final String[] MEMBER_SORT_FIELDS = {ReferenceSetMember.Fields.MEMBER_ID};
 
 	@Autowired
 	private VersionControlHelper versionControlHelper;
@@ -58,6 +65,14 @@ public class ReferenceSetMemberService extends ComponentService {
 	@Autowired
 	private ReferenceSetTypesConfigurationService referenceSetTypesConfigurationService;
 
+	// Concept ids of reference set members keyed by branch path, head timestamp and reference set id.
+	// Weighed by number of ids so that a few very large reference sets can not exhaust the heap.
+	private final Cache<String, LongSet> conceptsInReferenceSetCache = CacheBuilder.newBuilder()
+			.maximumWeight(CONCEPTS_IN_REFERENCE_SET_CACHE_MAX_IDS)
+			.weigher((String key, LongSet conceptIds) -> conceptIds.size())
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Page<ReferenceSetMember> findMembers(String branch,
@@ -75,6 +90,50 @@ public class ReferenceSetMemberService extends ComponentService {
 			String mapTarget,
 			PageRequest pageRequest) {
 
+		BoolQueryBuilder query = getMembersQuery(branch, active, referenceSetId, referencedComponentId, targetComponentId, mapTarget);
+		return elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+				.withQuery(query).withPageable(pageRequest).build(), ReferenceSetMember.class);
+	}
+
+	/**
+	 * Members sorted by member id with a token to fetch the next page.
+	 * When a searchAfter token is given the page continues after the member of the token and the offset of the page request is not used.
+	 * The total always counts all matching members.
+	 */
+	public SearchAfterPage<ReferenceSetMember> findMembers(String branch,
+			Boolean active,
+			String referenceSetId,
+			String referencedComponentId,
+			String targetComponentId,
+			String mapTarget,
+			PageRequest pageRequest,
+			String searchAfter) {
+
+		BoolQueryBuilder query = getMembersQuery(branch, active, referenceSetId, referencedComponentId, targetComponentId, mapTarget);
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withSort(SortBuilders.fieldSort(ReferenceSetMember.Fields.MEMBER_ID));
+		pageRequest = SearchAfterHelper.getPageRequest(pageRequest, searchAfter);
+		String[] searchAfterValues = SearchAfterHelper.getSearchAfter(pageRequest, MEMBER_SORT_FIELDS.length);
+		long total;
+		List<ReferenceSetMember> content;
+		if (searchAfterValues != null) {
+			// Select the members after the token in the main query so that they are skipped rather than filtered from the hits
+			query.filter(SearchAfterHelper.getAfterCriteria(MEMBER_SORT_FIELDS, searchAfterValues));
+			Page<ReferenceSetMember> remaining = elasticsearchTemplate.queryForPage(queryBuilder.withPageable(SearchAfterHelper.getFirstPage(pageRequest)).build(), ReferenceSetMember.class);
+			total = SearchAfterHelper.getTotal(pageRequest, remaining.getTotalElements());
+			content = remaining.getContent();
+		} else {
+			Page<ReferenceSetMember> members = elasticsearchTemplate.queryForPage(queryBuilder.withPageable(pageRequest).build(), ReferenceSetMember.class);
+			total = members.getTotalElements();
+			content = members.getContent();
+		}
+		String nextSearchAfter = content.isEmpty() ? null :
+				SearchAfterHelper.getNextToken(pageRequest, content.size(), total, content.get(content.size() - 1).getMemberId());
+		return new SearchAfterPage<>(content, pageRequest, total, nextSearchAfter);
+	}
+
+	private BoolQueryBuilder getMembersQuery(String branch, Boolean active, String referenceSetId, String referencedComponentId, String targetComponentId, String mapTarget) {
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
 
 		BoolQueryBuilder query = boolQuery().must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class));
@@ -94,9 +153,7 @@ public class ReferenceSetMemberService extends ComponentService {
 		if (!Strings.isNullOrEmpty(mapTarget)) {
 			query.must(termQuery(ReferenceSetMember.Fields.getAdditionalFieldKeywordTypeMapping("mapTarget"), mapTarget));
 		}
-
-		return elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
-				.withQuery(query).withPageable(pageRequest).build(), ReferenceSetMember.class);
+		return query;
 	}
 
 	public ReferenceSetMember findMember(String branch, String uuid) {
@@ -153,26 +210,57 @@ public class ReferenceSetMemberService extends ComponentService {
 	 * @return List of persisted components with updated metadata and filtered by deleted status.
 	 */
 	public Iterable<ReferenceSetMember> doSaveBatchMembers(Collection<ReferenceSetMember> members, Commit commit) {
+		return doSaveBatchMembers(members, null, commit);
+	}
+
+	/**
+	 * Persists members updates within commit.
+	 * Inactive members which have not been released will be deleted
+	 * @param descriptionConceptMap Optional map of description id to concept id, used to set the conceptId of members referencing a description
+	 *                              without querying for the description. Descriptions not found in the map will be fetched from the store.
+	 * @return List of persisted components with updated metadata and filtered by deleted status.
+	 */
+	public Iterable<ReferenceSetMember> doSaveBatchMembers(Collection<ReferenceSetMember> members, Long2LongMap descriptionConceptMap, Commit commit) {
 		// Delete inactive unreleased members
 		members.stream()
 				.filter(member -> !member.isActive() && !member.isReleased())
 				.forEach(ReferenceSetMember::markDeleted);
 
-		// Set conceptId on those members which are considered part of the concept or its components
+		setDenormalisedFields(members, descriptionConceptMap, versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+
+		return doSaveBatchComponents(members, commit, ReferenceSetMember.Fields.MEMBER_ID, memberRepository);
+	}
+
+	/**
+	 * Sets the referencedComponentType and conceptId of members which are considered part of a concept or its components.
+	 * Members which refer to a description which can not be found will be removed from the collection.
+	 */
+	private void setDenormalisedFields(Collection<ReferenceSetMember> members, Long2LongMap descriptionConceptMap, BranchCriteria branchCriteria) {
 		List<ReferenceSetMember> descriptionMembers = new ArrayList<>();
-		LongSet descriptionIds = new LongArraySet();
+		LongSet descriptionIds = new LongOpenHashSet();
 		members.stream()
 				.filter(member -> !member.isDeleted())
-				.filter(member -> member.getConceptId() == null)
 				.forEach(member -> {
-					if (IdentifierService.isDescriptionId(member.getReferencedComponentId())
-							&& (member.getAdditionalFields().keySet().equals(LANG_REFSET_MEMBER_FIELD_SET))
-							|| Concepts.DESCRIPTION_INACTIVATION_INDICATOR_REFERENCE_SET.equals(member.getRefsetId())) {
-						// Lang refset or description inactivation indicator
-						descriptionMembers.add(member);
-						descriptionIds.add(parseLong(member.getReferencedComponentId()));
-
-					} else if (IdentifierService.isConceptId(member.getReferencedComponentId())
+					if (member.getReferencedComponentType() == null) {
+						member.setReferencedComponentId(member.getReferencedComponentId());
+					}
+					if (member.getConceptId() != null) {
+						return;
+					}
+					String referencedComponentType = member.getReferencedComponentType();
+					if (ComponentType.Description.name().equals(referencedComponentType)
+							&& (member.getAdditionalFields().keySet().equals(LANG_REFSET_MEMBER_FIELD_SET)
+							|| Concepts.inactivationAndAssociationRefsets.contains(member.getRefsetId()))) {
+						// Lang refset, description inactivation indicator or historical association
+						long descriptionId = parseLong(member.getReferencedComponentId());
+						if (descriptionConceptMap != null && descriptionConceptMap.containsKey(descriptionId)) {
+							member.setConceptId(Long.toString(descriptionConceptMap.get(descriptionId)));
+						} else {
+							descriptionMembers.add(member);
+							descriptionIds.add(descriptionId);
+						}
+
+					} else if (ComponentType.Concept.name().equals(referencedComponentType)
 							&& (member.getAdditionalFields().keySet().equals(OWL_REFSET_MEMBER_FIELD_SET)
 							|| Concepts.inactivationAndAssociationRefsets.contains(member.getRefsetId()))) {
 						// Axiom, inactivation or historical association
@@ -180,41 +268,133 @@ public class ReferenceSetMemberService extends ComponentService {
 					}
 				});
 
-		if (descriptionIds.size() != 0) {
-			final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-
-			Long2ObjectMap<Description> descriptionMap = new Long2ObjectOpenHashMap<>();
+		if (!descriptionIds.isEmpty()) {
+			// Fallback for descriptions which were not part of this batch
+			Long2LongMap storedDescriptionConceptMap = new Long2LongOpenHashMap();
 			for (List<Long> descriptionIdsSegment : Iterables.partition(descriptionIds, CLAUSE_LIMIT)) {
-				queryBuilder
+				NativeSearchQuery query = new NativeSearchQueryBuilder()
 						.withQuery(boolQuery()
-								.must(termsQuery("descriptionId", descriptionIdsSegment))
-								.must(versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit).getEntityBranchCriteria(Description.class)))
-						.withPageable(LARGE_PAGE);
-				try (final CloseableIterator<Description> descriptions = elasticsearchTemplate.stream(queryBuilder.build(), Description.class)) {
+								.must(termsQuery(Description.Fields.DESCRIPTION_ID, descriptionIdsSegment))
+								.must(branchCriteria.getEntityBranchCriteria(Description.class)))
+						.withPageable(LARGE_PAGE)
+						.build();
+				try (final CloseableIterator<Description> descriptions = elasticsearchTemplate.stream(query, Description.class)) {
 					descriptions.forEachRemaining(description ->
-							descriptionMap.put(parseLong(description.getDescriptionId()), description));
+							storedDescriptionConceptMap.put(parseLong(description.getDescriptionId()), parseLong(description.getConceptId())));
 				}
 			}
 
-			descriptionMembers.parallelStream().forEach(member -> {
-				Description description = (Description) descriptionMap.get(parseLong(member.getReferencedComponentId()));
-				if (description == null) {
+			for (ReferenceSetMember member : descriptionMembers) {
+				long descriptionId = parseLong(member.getReferencedComponentId());
+				if (!storedDescriptionConceptMap.containsKey(descriptionId)) {
 					logger.warn("Refset member refers to description which does not exist, this will not be persisted {} -> {}", member.getId(), member.getReferencedComponentId());
 					members.remove(member);
-					return;
+					continue;
 				}
-				member.setConceptId(description.getConceptId());
-			});
+				member.setConceptId(Long.toString(storedDescriptionConceptMap.get(descriptionId)));
+			}
 		}
+	}
 
-		return doSaveBatchComponents(members, commit, ReferenceSetMember.Fields.MEMBER_ID, memberRepository);
+	/**
+	 * Sets the referencedComponentType and conceptId fields on existing members which were indexed on this branch before these fields were introduced.
+	 * Only the branch's own content is updated, members inherited from the parent branch are left alone so that content is not duplicated
+	 * down the branch tree. Run on each branch that has content of its own, starting with MAIN.
+	 * Members are streamed and saved in batches within a single commit.
+	 * @return The number of members updated.
+	 */
+	public long backfillDenormalisedFields(String path) {
+		TimerUtil timer = new TimerUtil("Member backfill");
+		long updated = 0;
+		try (Commit commit = branchService.openCommit(path)) {
+			BranchCriteria branchCriteria = versionControlHelper.getChangesOnBranchCriteria(path);
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+							.mustNot(existsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_TYPE)))
+					.withSort(new FieldSortBuilder("_doc"))
+					.withPageable(LARGE_PAGE)
+					.build();
+			List<ReferenceSetMember> batch = new ArrayList<>();
+			try (CloseableIterator<ReferenceSetMember> stream = elasticsearchTemplate.stream(query, ReferenceSetMember.class)) {
+				while (stream.hasNext()) {
+					ReferenceSetMember member = stream.next();
+					member.markChanged();
+					batch.add(member);
+					if (batch.size() == LARGE_PAGE.getPageSize()) {
+						updated += saveBackfillBatch(batch, commit);
+						timer.checkpoint("Updated " + updated + " members");
+					}
+				}
+			}
+			updated += saveBackfillBatch(batch, commit);
+			commit.markSuccessful();
+		}
+		timer.finish();
+		logger.info("Denormalised fields set on {} reference set members on {}.", updated, path);
+		return updated;
+	}
+
+	private int saveBackfillBatch(List<ReferenceSetMember> batch, Commit commit) {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		setDenormalisedFields(batch, null, versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit));
+		int size = batch.size();
+		doSaveBatchComponents(batch, commit, ReferenceSetMember.Fields.MEMBER_ID, memberRepository);
+		batch.clear();
+		return size;
+	}
+
+	/**
+	 * Finds the concepts which are active members of a reference set.
+	 * Results are cached against the branch head so that repeated queries for the same reference set are only loaded once per branch version.
+	 * @param referenceSetId The reference set or null to search across all reference sets.
+	 * @return Unmodifiable set of concept ids.
+	 */
+	public LongSet findConceptsInReferenceSet(String path, String referenceSetId) {
+		Branch branch = branchService.findBranchOrThrow(path);
+		return findConceptsInReferenceSet(branch, referenceSetId);
+	}
+
+	/**
+	 * Finds the concepts which are active members of a reference set within the given branch criteria.
+	 * The branch head cache is only used when the criteria are the head criteria of the path. Any other criteria,
+	 * for example a point in time or including an open commit, are queried directly.
+	 * @param referenceSetId The reference set or null to search across all reference sets.
+	 */
+	public Set<Long> findConceptsInReferenceSet(String path, BranchCriteria branchCriteria, String referenceSetId) {
+		if (path != null) {
+			Branch branch = branchService.findBranchOrThrow(path);
+			QueryBuilder headCriteria = versionControlHelper.getBranchCriteria(branch).getEntityBranchCriteria(ReferenceSetMember.class);
+			if (headCriteria.equals(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))) {
+				return findConceptsInReferenceSet(branch, referenceSetId);
+			}
+		}
+		return findConceptsInReferenceSet(branchCriteria, referenceSetId);
+	}
+
+	private LongSet findConceptsInReferenceSet(Branch branch, String referenceSetId) {
+		String path = branch.getPath();
+		String cacheKey = path + "|" + branch.getHeadTimestamp() + "|" + (referenceSetId != null ? referenceSetId : "*");
+		try {
+			return conceptsInReferenceSetCache.get(cacheKey,
+					() -> LongSets.unmodifiable(findConceptsInReferenceSet(versionControlHelper.getBranchCriteria(branch), referenceSetId)));
+		} catch (ExecutionException e) {
+			throw new RuntimeServiceException("Failed to load concepts in reference set " + referenceSetId + " on branch " + path, e.getCause());
+		}
 	}
 
-	Set<Long> findConceptsInReferenceSet(BranchCriteria branchCriteria, String referenceSetId) {
+	LongSet findConceptsInReferenceSet(BranchCriteria branchCriteria, String referenceSetId) {
 		// Build query
 		BoolQueryBuilder boolQuery = boolQuery().must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
 				.must(termQuery(SnomedComponent.Fields.ACTIVE, true))
-				.must(regexpQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ".*0."));// Matches the concept partition identifier
+				.must(boolQuery()
+						.should(termQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_TYPE, ComponentType.Concept.name()))
+						// Members not yet backfilled, matches the concept partition identifier
+						.should(boolQuery()
+								.mustNot(existsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_TYPE))
+								.must(regexpQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ".*0."))));
 		// Allow searching across all refsets
 		if (referenceSetId != null) {
 			boolQuery.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, referenceSetId));
@@ -229,7 +409,7 @@ public class ReferenceSetMemberService extends ComponentService {
 				.build();
 
 		// Stream results
-		Set<Long> conceptIds = new LongArraySet();
+		LongSet conceptIds = new LongOpenHashSet();
 		try (CloseableIterator<ReferenceSetMember> stream = elasticsearchTemplate.stream(query, ReferenceSetMember.class)) {
 			stream.forEachRemaining(member -> conceptIds.add(parseLong(member.getReferencedComponentId())));
 		}
@@ -7,8 +7,11 @@ import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongArraySet;
 import it.unimi.dsi.fastutil.longs.LongComparators;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
+import org.snomed.snowstorm.core.util.SearchAfterHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -29,6 +32,8 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 @Service
 public class RelationshipService extends ComponentService {
 
+	private static final String[] RELATIONSHIP_SORT_FIELDS = {Relationship.Fields.RELATIONSHIP_ID};
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchOperations;
 
@@ -57,6 +62,60 @@ public class RelationshipService extends ComponentService {
 			Integer group,
 			PageRequest page) {
 
+		BoolQueryBuilder query = getRelationshipsQuery(branchPath, relationshipId, active, moduleId, effectiveTime, sourceId, typeId, destinationId, characteristicType, group);
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withPageable(page);
+
+		return elasticsearchOperations.queryForPage(queryBuilder.build(), Relationship.class);
+	}
+
+	/**
+	 * Relationships sorted by relationship id with a token to fetch the next page.
+	 * When a searchAfter token is given the page continues after the relationship of the token and the offset of the page request is not used.
+	 * The total always counts all matching relationships.
+	 */
+	public SearchAfterPage<Relationship> findRelationships(
+			String branchPath,
+			String relationshipId,
+			Boolean active,
+			String moduleId,
+			String effectiveTime,
+			String sourceId,
+			String typeId,
+			String destinationId,
+			Relationship.CharacteristicType characteristicType,
+			Integer group,
+			PageRequest page,
+			String searchAfter) {
+
+		BoolQueryBuilder query = getRelationshipsQuery(branchPath, relationshipId, active, moduleId, effectiveTime, sourceId, typeId, destinationId, characteristicType, group);
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withSort(SortBuilders.fieldSort(Relationship.Fields.RELATIONSHIP_ID));
+		PageRequest pageRequest = SearchAfterHelper.getPageRequest(page, searchAfter);
+		String[] searchAfterValues = SearchAfterHelper.getSearchAfter(pageRequest, RELATIONSHIP_SORT_FIELDS.length);
+		long total;
+		List<Relationship> content;
+		if (searchAfterValues != null) {
+			// Select the relationships after the token in the main query so that they are skipped rather than filtered from the hits
+			query.filter(SearchAfterHelper.getAfterCriteria(RELATIONSHIP_SORT_FIELDS, searchAfterValues));
+			Page<Relationship> remaining = elasticsearchOperations.queryForPage(queryBuilder.withPageable(SearchAfterHelper.getFirstPage(pageRequest)).build(), Relationship.class);
+			total = SearchAfterHelper.getTotal(pageRequest, remaining.getTotalElements());
+			content = remaining.getContent();
+		} else {
+			Page<Relationship> relationships = elasticsearchOperations.queryForPage(queryBuilder.withPageable(pageRequest).build(), Relationship.class);
+			total = relationships.getTotalElements();
+			content = relationships.getContent();
+		}
+		String nextSearchAfter = content.isEmpty() ? null :
+				SearchAfterHelper.getNextToken(pageRequest, content.size(), total, content.get(content.size() - 1).getRelationshipId());
+		return new SearchAfterPage<>(content, pageRequest, total, nextSearchAfter);
+	}
+
+	private BoolQueryBuilder getRelationshipsQuery(String branchPath, String relationshipId, Boolean active, String moduleId, String effectiveTime,
+			String sourceId, String typeId, String destinationId, Relationship.CharacteristicType characteristicType, Integer group) {
+
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
 
 		BoolQueryBuilder query = boolQuery()
@@ -89,12 +148,7 @@ public class RelationshipService extends ComponentService {
 		if (characteristicType != null) {
 			query.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, characteristicType.getConceptId()));
 		}
-
-		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-				.withQuery(query)
-				.withPageable(page);
-
-		return elasticsearchOperations.queryForPage(queryBuilder.build(), Relationship.class);
+		return query;
 	}
 
 	List<Long> findRelationshipDestinationIds(Collection<Long> sourceConceptIds, Collection<Long> attributeTypeIds, BranchCriteria branchCriteria, boolean stated) {
@@ -4,7 +4,10 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Commit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.SnomedComponent;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
@@ -14,7 +17,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
@@ -38,16 +40,24 @@ public class ReleaseService {
 	@Autowired
 	private ConceptService componentService;
 
+	private static final int BATCH_SAVE_SIZE = 10_000;
+
+	private int batchSaveSize = BATCH_SAVE_SIZE;
+
+	private static final Logger logger = LoggerFactory.getLogger(ReleaseService.class);
+
 	public void createVersion(Integer effectiveTime, String path) {
+		TimerUtil timer = new TimerUtil("Versioning " + path);
 		try (Commit commit = branchService.openCommit(path)) {
 			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 
-			Set<Class<? extends SnomedComponent>> componentTypes = domainEntityConfiguration.getComponentTypeRepositoryMap().keySet();
-			for (Class<? extends SnomedComponent> componentType : componentTypes) {
+			// One type after another, saving a batch records the replaced versions in the commit which is not safe to share between threads
+			for (Class<? extends SnomedComponent> componentType : domainEntityConfiguration.getComponentTypeRepositoryMap().keySet()) {
 				releaseComponentsOfType(componentType, effectiveTime, commit, branchCriteria);
 			}
 			commit.markSuccessful();
 		}
+		timer.finish();
 	}
 
 	private <T extends SnomedComponent> void releaseComponentsOfType(Class<T> componentType, Integer effectiveTime, Commit commit, BranchCriteria branchCriteria) {
@@ -59,16 +69,37 @@ public class ReleaseService {
 				.withPageable(LARGE_PAGE)
 				.build();
 
+		// Release and save in batches as the stream is consumed to keep memory use bounded
+		long start = System.currentTimeMillis();
+		long released = 0;
 		List<T> componentsToSave = new ArrayList<>();
 		try (CloseableIterator<T> stream = elasticsearchOperations.stream(searchQuery, componentType)) {
-			stream.forEachRemaining(c -> {
-				c.release(effectiveTime);
-				c.markChanged();
-				componentsToSave.add(c);
-			});
+			while (stream.hasNext()) {
+				T component = stream.next();
+				component.release(effectiveTime);
+				component.markChanged();
+				componentsToSave.add(component);
+				if (componentsToSave.size() == batchSaveSize) {
+					componentService.doSaveBatchComponents(componentsToSave, componentType, commit);
+					released += componentsToSave.size();
+					componentsToSave.clear();
+					logger.info("Released {} {}s so far on {}", released, componentType.getSimpleName(), commit.getBranch().getPath());
+				}
+			}
 		}
+		if (!componentsToSave.isEmpty()) {
+			componentService.doSaveBatchComponents(componentsToSave, componentType, commit);
+			released += componentsToSave.size();
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		logger.info("Released {} {}s in {} seconds ({} per second).", released, componentType.getSimpleName(),
+				millis / 1000f, millis > 0 ? released * 1000 / millis : released);
+	}
 
-		componentService.doSaveBatchComponents(componentsToSave, componentType, commit);
+	// For testing
+	void setBatchSaveSize(int batchSaveSize) {
+		this.batchSaveSize = batchSaveSize;
 	}
 
 }
@@ -24,6 +24,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.util.CloseableIterator;
@@ -31,6 +32,9 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
@@ -64,6 +68,9 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Autowired
 	private AxiomConversionService axiomConversionService;
 
+	@Autowired
+	private ExecutorService executorService;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
@@ -139,6 +146,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		String branchPath = commit.getBranch().getPath();
 		BranchCriteria branchCriteriaForAlreadyCommittedContent = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
 		timer.checkpoint("get branch criteria");
+		boolean attributeChangesOnly = false;
 		if (rebuild) {
 			logger.info("Performing {} of {} semantic index", "rebuild", formName);
 		} else {
@@ -198,6 +206,16 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 				}
 			}
 
+			// Changed axioms are replaced as a whole so their is-a fragments are collected even when only other attributes changed.
+			// If the parents of every concept are the same as before the commit the graph does not change.
+			attributeChangesOnly = updateSource.isEmpty() ||
+					(!commit.isRebase() && isParentsUnchanged(updateSource, stated, characteristicTypeIds, branchCriteriaForAlreadyCommittedContent, commit));
+			timer.checkpoint("Check for parent changes.");
+		}
+
+		if (attributeChangesOnly) {
+			logger.info("Performing {} of {} semantic index", "attribute update", formName);
+		} else if (!rebuild) {
 			logger.info("Performing {} of {} semantic index", "incremental update", formName);
 
 			// Identify parts of the graph that nodes are moving from or to
@@ -220,16 +238,13 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 			// Step: Identify existing descendants
 			// Strategy: Find existing nodes where TC matches updated relationship source ids
-			try (final CloseableIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
-					.withQuery(boolQuery()
-							.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
-							.must(termsQuery("stated", stated))
-					)
-					.withFields(QueryConcept.Fields.CONCEPT_ID)
-					.withFilter(boolQuery()
-							.must(termsQuery("ancestors", updateSource)))
-					.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
-				existingQueryConcepts.forEachRemaining(queryConcept -> existingDescendants.add(queryConcept.getConceptIdL()));
+			// Chunks are loaded concurrently
+			List<Future<Set<Long>>> existingDescendantChunks = new ArrayList<>();
+			for (List<Long> updateSourceChunk : Iterables.partition(updateSource, CLAUSE_LIMIT)) {
+				existingDescendantChunks.add(executorService.submit(() -> findExistingDescendants(updateSourceChunk, stated, branchCriteriaForAlreadyCommittedContent)));
+			}
+			for (Future<Set<Long>> existingDescendantChunk : existingDescendantChunks) {
+				existingDescendants.addAll(getChunk(existingDescendantChunk));
 			}
 			timer.checkpoint("Collect existingDescendants from QueryConcept.");
 
@@ -239,48 +254,50 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		// Step: Build existing graph
 		// Strategy: Find relationships of existing TC and descendant nodes and build existing graph(s)
 		final GraphBuilder graphBuilder = new GraphBuilder();
-		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(Relationship.class))
-						.must(termQuery("active", true))
-						.must(termQuery("typeId", Concepts.ISA))
-						.must(termsQuery("characteristicTypeId", characteristicTypeIds))
-				)
-				.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.DESTINATION_ID)
-				.withPageable(ConceptService.LARGE_PAGE);
-		Set<Long> nodesToLoad = new HashSet<>();
-		if (!rebuild) {
-			nodesToLoad.addAll(existingAncestors);
-			nodesToLoad.addAll(existingDescendants);
-			nodesToLoad.addAll(updateSource);
-			nodesToLoad.addAll(updateDestination);
-			queryBuilder.withFilter(boolQuery().must(termsQuery("sourceId", nodesToLoad)));
-		}
-		try (final CloseableIterator<Relationship> existingIsARelationships = elasticsearchTemplate.stream(queryBuilder.build(), Relationship.class)) {
-			existingIsARelationships.forEachRemaining(relationship ->
-					graphBuilder.addParent(parseLong(relationship.getSourceId()), parseLong(relationship.getDestinationId())));
-		}
-		timer.checkpoint("Build existing nodes from Relationships.");
-		if (stated) {
-			NativeSearchQueryBuilder axiomQueryBuilder = new NativeSearchQueryBuilder()
+		if (!attributeChangesOnly) {
+			NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
 					.withQuery(boolQuery()
-							.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(ReferenceSetMember.class))
-							.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-							.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+							.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(Relationship.class))
+							.must(termQuery("active", true))
+							.must(termQuery("typeId", Concepts.ISA))
+							.must(termsQuery("characteristicTypeId", characteristicTypeIds))
 					)
-					.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
+					.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.DESTINATION_ID)
 					.withPageable(ConceptService.LARGE_PAGE);
+			Set<Long> nodesToLoad = new HashSet<>();
 			if (!rebuild) {
-				axiomQueryBuilder.withFilter(boolQuery().must(termsQuery(ReferenceSetMember.Fields.CONCEPT_ID, nodesToLoad)));
+				nodesToLoad.addAll(existingAncestors);
+				nodesToLoad.addAll(existingDescendants);
+				nodesToLoad.addAll(updateSource);
+				nodesToLoad.addAll(updateDestination);
+				queryBuilder.withFilter(boolQuery().must(termsQuery("sourceId", nodesToLoad)));
 			}
-			try (final CloseableIterator<ReferenceSetMember> axiomStream = elasticsearchTemplate.stream(axiomQueryBuilder.build(), ReferenceSetMember.class)) {
-				axiomStreamToRelationshipStream(
-						axiomStream,
-						relationship -> relationship.getTypeId().equals(Concepts.ISA),
-						(component, relationship) -> graphBuilder.addParent(parseLong(relationship.getSourceId()), parseLong(relationship.getDestinationId()))
-				);
+			try (final CloseableIterator<Relationship> existingIsARelationships = elasticsearchTemplate.stream(queryBuilder.build(), Relationship.class)) {
+				existingIsARelationships.forEachRemaining(relationship ->
+						graphBuilder.addParent(parseLong(relationship.getSourceId()), parseLong(relationship.getDestinationId())));
+			}
+			timer.checkpoint("Build existing nodes from Relationships.");
+			if (stated) {
+				NativeSearchQueryBuilder axiomQueryBuilder = new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(ReferenceSetMember.class))
+								.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+								.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						)
+						.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
+						.withPageable(ConceptService.LARGE_PAGE);
+				if (!rebuild) {
+					axiomQueryBuilder.withFilter(boolQuery().must(termsQuery(ReferenceSetMember.Fields.CONCEPT_ID, nodesToLoad)));
+				}
+				try (final CloseableIterator<ReferenceSetMember> axiomStream = elasticsearchTemplate.stream(axiomQueryBuilder.build(), ReferenceSetMember.class)) {
+					axiomStreamToRelationshipStream(
+							axiomStream,
+							relationship -> relationship.getTypeId().equals(Concepts.ISA),
+							(component, relationship) -> graphBuilder.addParent(parseLong(relationship.getSourceId()), parseLong(relationship.getDestinationId()))
+					);
+				}
+				timer.checkpoint("Build existing nodes from Axioms.");
 			}
-			timer.checkpoint("Build existing nodes from Axioms.");
 		}
 		logger.info("{} existing nodes loaded.", graphBuilder.getNodeCount());
 
@@ -293,6 +310,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		boolean newGraph = graphBuilder.getNodeCount() == 0;
 		Set<Long> requiredActiveConcepts = new LongOpenHashSet();
 		Map<Long, AttributeChanges> conceptAttributeChanges = new Long2ObjectOpenHashMap<>();
+		boolean parentsUnchanged = attributeChangesOnly;
 
 		BiConsumer<SnomedComponent, Relationship> relationshipConsumer = (component, relationship) -> {
 			boolean ignore = false;
@@ -312,15 +330,32 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 				long conceptId = parseLong(relationship.getSourceId());
 				int groupId = relationship.getGroupId();
 				long type = parseLong(relationship.getTypeId());
-				long value = parseLong(relationship.getDestinationId());
+				String destinationId = relationship.getDestinationId();
 				Integer effectiveTime = component.getEffectiveTimeI();
+				if (QueryConcept.isConcreteValue(destinationId)) {
+					// Concrete value, e.g. "#500", indexed as a number rather than a concept
+					AttributeChanges attributeChanges = conceptAttributeChanges.computeIfAbsent(conceptId, (c) -> new AttributeChanges());
+					if (!justDeleted && component.isActive()) {
+						attributeChanges.addAttribute(effectiveTime, groupId, type, destinationId);
+						requiredActiveConcepts.add(conceptId);
+						requiredActiveConcepts.add(type);
+					} else {
+						attributeChanges.removeAttribute(effectiveTime, groupId, type, destinationId);
+					}
+					return;
+				}
+				long value = parseLong(destinationId);
+				if (type == IS_A_TYPE && parentsUnchanged) {
+					// Is-a fragment of a changed axiom, the parents are already in the index
+					return;
+				}
 				if (!justDeleted && component.isActive()) {
 					if (type == IS_A_TYPE) {
 						graphBuilder.addParent(conceptId, value)
 								.markUpdated();
 						relationshipsAdded.incrementAndGet();
 					} else {
-						conceptAttributeChanges.computeIfAbsent(conceptId, (c) -> new AttributeChanges()).addAttribute(effectiveTime, groupId, type, value);
+						conceptAttributeChanges.computeIfAbsent(conceptId, (c) -> new AttributeChanges()).addAttribute(effectiveTime, groupId, type, Long.toString(value));
 					}
 					requiredActiveConcepts.add(conceptId);
 					requiredActiveConcepts.add(type);
@@ -333,7 +368,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 						}
 						relationshipsRemoved.incrementAndGet();
 					} else {
-						conceptAttributeChanges.computeIfAbsent(conceptId, (c) -> new AttributeChanges()).removeAttribute(effectiveTime, groupId, type, value);
+						conceptAttributeChanges.computeIfAbsent(conceptId, (c) -> new AttributeChanges()).removeAttribute(effectiveTime, groupId, type, Long.toString(value));
 					}
 				}
 			}
@@ -387,15 +422,14 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		conceptIdsToUpdate.addAll(conceptAttributeChanges.keySet());
 		List<String> conceptIdFormsToMatch = conceptIdsToUpdate.stream().map(id -> QueryConcept.toConceptIdForm(id, stated)).collect(Collectors.toList());
 
-		try (final CloseableIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
-						.must(termsQuery(QueryConcept.Fields.STATED, stated))
-				)
-				.withFilter(boolQuery()
-						.must(termsQuery(QueryConcept.Fields.CONCEPT_ID_FORM, conceptIdFormsToMatch)))
-				.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
-			existingQueryConcepts.forEachRemaining(queryConcept -> {
+		// Load existing QueryConcepts concurrently in chunks, reading only the fields needed to update them.
+		// The version control fields are not needed because doSaveBatch saves them as new versions.
+		List<Future<List<QueryConcept>>> existingQueryConceptChunks = new ArrayList<>();
+		for (List<String> conceptIdForms : Iterables.partition(conceptIdFormsToMatch, CLAUSE_LIMIT)) {
+			existingQueryConceptChunks.add(executorService.submit(() -> loadQueryConceptProjections(conceptIdForms, stated, branchCriteriaForAlreadyCommittedContent)));
+		}
+		for (Future<List<QueryConcept>> existingQueryConceptChunk : existingQueryConceptChunks) {
+			getChunk(existingQueryConceptChunk).forEach(queryConcept -> {
 				Long conceptId = queryConcept.getConceptIdL();
 				Node node = nodesToSave.get(conceptId);
 				if (node != null) {
@@ -435,6 +469,105 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		timer.finish();
 	}
 
+	private Set<Long> findExistingDescendants(List<Long> conceptIds, boolean stated, BranchCriteria branchCriteria) {
+		Set<Long> descendants = new LongOpenHashSet();
+		try (final CloseableIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery("stated", stated))
+				)
+				.withFields(QueryConcept.Fields.CONCEPT_ID)
+				.withFilter(boolQuery()
+						.must(termsQuery("ancestors", conceptIds)))
+				.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
+			existingQueryConcepts.forEachRemaining(queryConcept -> descendants.add(queryConcept.getConceptIdL()));
+		}
+		return descendants;
+	}
+
+	private List<QueryConcept> loadQueryConceptProjections(List<String> conceptIdForms, boolean stated, BranchCriteria branchCriteria) {
+		List<QueryConcept> queryConcepts = new ArrayList<>();
+		try (final CloseableIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery(QueryConcept.Fields.STATED, stated))
+				)
+				.withFilter(boolQuery()
+						.must(termsQuery(QueryConcept.Fields.CONCEPT_ID_FORM, conceptIdForms)))
+				.withSourceFilter(new FetchSourceFilter(FastResultsMapper.QUERY_CONCEPT_PROJECTION_FIELDS, null))
+				.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class, FastResultsMapper.QUERY_CONCEPT_PROJECTION)) {
+			existingQueryConcepts.forEachRemaining(queryConcepts::add);
+		}
+		return queryConcepts;
+	}
+
+	private <T> T getChunk(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeServiceException("Failed to load existing semantic index entries.", e);
+		}
+	}
+
+	/**
+	 * Compares the parents recorded in the semantic index before the commit with the active is-a relationships and axioms including the commit.
+	 */
+	private boolean isParentsUnchanged(Set<Long> conceptIds, boolean stated, Set<String> characteristicTypeIds,
+			BranchCriteria branchCriteriaForAlreadyCommittedContent, Commit commit) throws ConversionException {
+
+		Map<Long, Set<Long>> existingParents = new HashMap<>();
+		try (final CloseableIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery(QueryConcept.Fields.STATED, stated))
+				)
+				.withFilter(boolQuery()
+						.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIds)))
+				.withSourceFilter(new FetchSourceFilter(new String[]{QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS}, null))
+				.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
+			existingQueryConcepts.forEachRemaining(queryConcept -> existingParents.put(queryConcept.getConceptIdL(), new HashSet<>(queryConcept.getParents())));
+		}
+		if (existingParents.size() != conceptIds.size()) {
+			// New concepts
+			return false;
+		}
+
+		Map<Long, Set<Long>> currentParents = new HashMap<>();
+		conceptIds.forEach(conceptId -> currentParents.put(conceptId, new HashSet<>()));
+		BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		try (final CloseableIterator<Relationship> isARelationships = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteriaIncludingOpenCommit.getEntityBranchCriteria(Relationship.class))
+						.must(termQuery("active", true))
+						.must(termQuery("typeId", Concepts.ISA))
+						.must(termsQuery("characteristicTypeId", characteristicTypeIds))
+				)
+				.withFilter(boolQuery().must(termsQuery("sourceId", conceptIds)))
+				.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.DESTINATION_ID)
+				.withPageable(ConceptService.LARGE_PAGE).build(), Relationship.class)) {
+			isARelationships.forEachRemaining(relationship ->
+					currentParents.get(parseLong(relationship.getSourceId())).add(parseLong(relationship.getDestinationId())));
+		}
+		if (stated) {
+			try (final CloseableIterator<ReferenceSetMember> axioms = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteriaIncludingOpenCommit.getEntityBranchCriteria(ReferenceSetMember.class))
+							.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+							.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+					)
+					.withFilter(boolQuery().must(termsQuery(ReferenceSetMember.Fields.CONCEPT_ID, conceptIds)))
+					.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
+					.withPageable(ConceptService.LARGE_PAGE).build(), ReferenceSetMember.class)) {
+				axiomStreamToRelationshipStream(
+						axioms,
+						relationship -> relationship.getTypeId().equals(Concepts.ISA),
+						(component, relationship) -> currentParents.computeIfAbsent(parseLong(relationship.getSourceId()), id -> new HashSet<>())
+								.add(parseLong(relationship.getDestinationId())));
+			}
+		}
+		return existingParents.equals(currentParents);
+	}
+
 	private void axiomStreamToRelationshipStream(CloseableIterator<ReferenceSetMember> changedAxioms, Predicate<Relationship> relationshipPredicate,
 			BiConsumer<SnomedComponent, Relationship> relationshipConsumer) throws ConversionException {
 
@@ -575,11 +708,11 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			changes = new ArrayList<>();
 		}
 
-		private void addAttribute(Integer effectiveTime, int groupId, Long type, Long value) {
+		private void addAttribute(Integer effectiveTime, int groupId, long type, String value) {
 			changes.add(new AttributeChange(effectiveTime, groupId, type, value, true));
 		}
 
-		private void removeAttribute(Integer effectiveTime, int groupId, long type, long value) {
+		private void removeAttribute(Integer effectiveTime, int groupId, long type, String value) {
 			changes.add(new AttributeChange(effectiveTime, groupId, type, value, false));
 		}
 
@@ -596,9 +729,9 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		private final int effectiveTime;
 		private final int group;
 		private final long type;
-		private final long value;
+		private final String value;
 
-		private AttributeChange(Integer effectiveTime, int group, long type, long value, boolean add) {
+		private AttributeChange(Integer effectiveTime, int group, long type, String value, boolean add) {
 			this.add = add;
 			if (effectiveTime == null) {
 				effectiveTime = 90000000;
@@ -625,7 +758,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			return type;
 		}
 
-		private long getValue() {
+		private String getValue() {
 			return value;
 		}
 	}
@@ -50,6 +50,7 @@ import javax.annotation.PreDestroy;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -85,9 +86,6 @@ public class ClassificationService {
 	@Autowired
 	private ExportService exportService;
 
-	@Autowired
-	private DescriptionService descriptionService;
-
 	@Autowired
 	private ConceptService conceptService;
 
@@ -99,6 +97,7 @@ public class ClassificationService {
 	private static final int SECOND = 1000;
 
 	private static final PageRequest PAGE_FIRST_1K = PageRequest.of(0, 1000);
+	private static final int RELATIONSHIP_CHANGE_STREAM_CHUNK = 1_000;
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 	private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("ddMMyyyy");
@@ -371,21 +370,45 @@ public class ClassificationService {
 						relationshipChangeRepository.findByClassificationIdAndSourceId(classificationId, sourceIdFilter, pageRequest)
 						: relationshipChangeRepository.findByClassificationId(classificationId, pageRequest);
 
-		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
-		for (RelationshipChange relationshipChange : relationshipChanges) {
-			if (fetchDescriptions) {
-				relationshipChange.setSource(conceptMiniMap.computeIfAbsent(relationshipChange.getSourceId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
-				relationshipChange.setDestination(conceptMiniMap.computeIfAbsent(relationshipChange.getDestinationId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
-				relationshipChange.setType(conceptMiniMap.computeIfAbsent(relationshipChange.getTypeId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
-			}
-		}
 		if (fetchDescriptions) {
-			descriptionService.joinActiveDescriptions(path, conceptMiniMap);
+			joinConceptMinis(path, relationshipChanges.getContent(), languageCodes);
 		}
 
 		return relationshipChanges;
 	}
 
+	/**
+	 * Streams all relationship changes of a classification in chunks with the source, type and destination labels joined.
+	 * Labels are resolved one chunk at a time so memory use does not grow with the number of changes.
+	 */
+	public void streamRelationshipChanges(String path, String classificationId, List<String> languageCodes, Consumer<List<RelationshipChange>> chunkConsumer) {
+		checkClassificationHasResults(path, classificationId);
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(termQuery("classificationId", classificationId))
+				.withSort(new FieldSortBuilder("sourceId"))
+				.withPageable(LARGE_PAGE);
+		try (CloseableIterator<RelationshipChange> relationshipChangeStream = elasticsearchOperations.stream(queryBuilder.build(), RelationshipChange.class)) {
+			while (relationshipChangeStream.hasNext()) {
+				List<RelationshipChange> changesChunk = new ArrayList<>();
+				while (changesChunk.size() < RELATIONSHIP_CHANGE_STREAM_CHUNK && relationshipChangeStream.hasNext()) {
+					changesChunk.add(relationshipChangeStream.next());
+				}
+				joinConceptMinis(path, changesChunk, languageCodes);
+				chunkConsumer.accept(changesChunk);
+			}
+		}
+	}
+
+	private void joinConceptMinis(String path, Collection<RelationshipChange> relationshipChanges, List<String> languageCodes) {
+		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
+		for (RelationshipChange relationshipChange : relationshipChanges) {
+			relationshipChange.setSource(conceptMiniMap.computeIfAbsent(relationshipChange.getSourceId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
+			relationshipChange.setDestination(conceptMiniMap.computeIfAbsent(relationshipChange.getDestinationId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
+			relationshipChange.setType(conceptMiniMap.computeIfAbsent(relationshipChange.getTypeId(), conceptId -> new ConceptMini(conceptId, languageCodes)));
+		}
+		conceptService.populateConceptMinis(path, conceptMiniMap, languageCodes);
+	}
+
 	public Page<EquivalentConceptsResponse> getEquivalentConcepts(String path, String classificationId, List<String> languageCodes, PageRequest pageRequest) {
 		checkClassificationHasResults(path, classificationId);
 		return doGetEquivalentConcepts(path, classificationId, languageCodes, pageRequest);
@@ -413,7 +436,7 @@ public class ClassificationService {
 				conceptMiniMap.put(conceptId, new ConceptMini(conceptId, languageCodes));
 			}
 		}
-		descriptionService.joinActiveDescriptions(path, conceptMiniMap);
+		conceptService.populateConceptMinis(path, conceptMiniMap, languageCodes);
 
 		List<EquivalentConceptsResponse> responseContent = new ArrayList<>();
 		for (EquivalentConcepts equivalentConcepts : relationshipChanges.getContent()) {
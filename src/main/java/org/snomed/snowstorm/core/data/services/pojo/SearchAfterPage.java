@@ -0,0 +1,30 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.aggregation.impl.AggregatedPageImpl;
+
+import java.util.List;
+
+/**
+ * Page with a token to fetch the following page. The token is null when there are no more items.
+ * The total is the count of all matching items and the offset of the pageable is the position of the page, also when the page was fetched with a token.
+ */
+public class SearchAfterPage<T> extends AggregatedPageImpl<T> {
+
+	private final String searchAfter;
+
+	public SearchAfterPage(List<T> content, Pageable pageable, long total, String searchAfter) {
+		super(content, pageable, total);
+		this.searchAfter = searchAfter;
+	}
+
+	public SearchAfterPage(List<T> content, Pageable pageable, long total, Aggregations aggregations, String searchAfter) {
+		super(content, pageable, total, aggregations);
+		this.searchAfter = searchAfter;
+	}
+
+	public String getSearchAfter() {
+		return searchAfter;
+	}
+}
@@ -0,0 +1,45 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Page request which continues after the sort values of the last item of the previous page.
+ * The offset of the page is also known so that in-memory paging, page totals and the response offset work as they do for any other page request.
+ */
+public class SearchAfterPageRequest extends PageRequest {
+
+	private final long offset;
+	private final String[] searchAfter;
+
+	public SearchAfterPageRequest(long offset, int size, String[] searchAfter) {
+		super((int) (offset / size), size, Sort.unsorted());
+		this.offset = offset;
+		this.searchAfter = searchAfter;
+	}
+
+	@Override
+	public long getOffset() {
+		return offset;
+	}
+
+	public String[] getSearchAfter() {
+		return searchAfter;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		SearchAfterPageRequest that = (SearchAfterPageRequest) o;
+		return offset == that.offset && getPageSize() == that.getPageSize() && Arrays.equals(searchAfter, that.searchAfter);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(offset, getPageSize(), Arrays.hashCode(searchAfter));
+	}
+}
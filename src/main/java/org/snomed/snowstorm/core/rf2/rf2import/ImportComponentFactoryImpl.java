@@ -5,6 +5,9 @@ import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.elasticvc.domain.Entity;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMaps;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import org.ihtsdo.otf.snomedboot.factory.ImpotentComponentFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +47,9 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private List<PersistBuffer> coreComponentPersistBuffers;
 	private MaxEffectiveTimeCollector maxEffectiveTimeCollector;
 
+	// Concept of each description in the import, used to set the conceptId of description members without looking up the descriptions
+	private final Long2LongMap descriptionConceptMap;
+
 	boolean coreComponentsFlushed;
 
 	ImportComponentFactoryImpl(ConceptService conceptService, ReferenceSetMemberService memberService, BranchService branchService, String path, Integer patchReleaseVersion) {
@@ -52,6 +58,7 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		persistBuffers = new ArrayList<>();
 		maxEffectiveTimeCollector = new MaxEffectiveTimeCollector();
 		coreComponentPersistBuffers = new ArrayList<>();
+		descriptionConceptMap = Long2LongMaps.synchronize(new Long2LongOpenHashMap());
 		ElasticsearchOperations elasticsearchTemplate = conceptService.getElasticsearchTemplate();
 		versionControlHelper = conceptService.getVersionControlHelper();
 
@@ -101,7 +108,7 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 				}
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, ReferenceSetMember.class);
 				if (!entities.isEmpty()) {
-					memberService.doSaveBatchMembers(entities, commit);
+					memberService.doSaveBatchMembers(entities, descriptionConceptMap, commit);
 				}
 			}
 		};
@@ -202,6 +209,7 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
 		final Description description = new Description(id, effectiveTimeI, isActive(active), moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		descriptionConceptMap.put(Long.parseLong(id), Long.parseLong(conceptId));
 		if (effectiveTimeI != null) {
 			description.release(effectiveTimeI);
 		}
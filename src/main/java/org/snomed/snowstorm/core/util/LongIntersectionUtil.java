@@ -0,0 +1,83 @@
+package org.snomed.snowstorm.core.util;
+
+import it.unimi.dsi.fastutil.longs.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * Intersection of large sets of concept ids using primitive collections.
+ */
+public class LongIntersectionUtil {
+
+	/**
+	 * Intersection of two lists, keeping the order of orderedListA. Only the requested page of results is collected, the total is counted.
+	 * The smaller of the two lists is hashed and the larger one probed against it.
+	 */
+	public static Page<Long> orderedIntersection(List<Long> orderedListA, Collection<Long> listB, Pageable pageable) {
+		LongList listA = toLongList(orderedListA);
+		LongSet setB;
+		if (listB.size() <= listA.size()) {
+			setB = toLongSet(listB);
+		} else {
+			// List A is smaller, hash it and keep only the members of A found while scanning B
+			LongSet setA = new LongOpenHashSet(listA);
+			setB = new LongOpenHashSet(setA.size());
+			LongIterator iterator = toLongCollection(listB).iterator();
+			while (iterator.hasNext()) {
+				long id = iterator.nextLong();
+				if (setA.contains(id)) {
+					setB.add(id);
+				}
+			}
+		}
+
+		return collectPage(listA, setB::contains, pageable);
+	}
+
+	/**
+	 * Intersection of a list with a sorted array, keeping the order of orderedListA. Only the requested page of results is collected, the total is counted.
+	 * Members of the list are found in the array by binary search so the array does not need to be hashed.
+	 */
+	public static Page<Long> orderedIntersection(List<Long> orderedListA, long[] sortedB, Pageable pageable) {
+		return collectPage(toLongList(orderedListA), id -> LongArrays.binarySearch(sortedB, id) >= 0, pageable);
+	}
+
+	/**
+	 * Collects the requested page of the members of listA accepted by inB, keeping the order of listA, and counts the total.
+	 * The page buffer is never larger than listA, so huge or unpaged requests do not pre-allocate.
+	 */
+	private static Page<Long> collectPage(LongList listA, LongPredicate inB, Pageable pageable) {
+		long offset = pageable.isUnpaged() ? 0 : pageable.getOffset();
+		long limit = pageable.isUnpaged() ? Long.MAX_VALUE : offset + pageable.getPageSize();
+		// The page can not hold more than listA, so a large or unpaged page size does not allocate more than that
+		LongList pageOfResults = new LongArrayList((int) Math.min(limit - offset, listA.size()));
+		int total = 0;
+		for (int i = 0; i < listA.size(); i++) {
+			long id = listA.getLong(i);
+			if (inB.test(id)) {
+				if (total >= offset && total < limit) {
+					pageOfResults.add(id);
+				}
+				total++;
+			}
+		}
+		return new PageImpl<>(pageOfResults, pageable, total);
+	}
+
+	private static LongList toLongList(List<Long> list) {
+		return list instanceof LongList ? (LongList) list : new LongArrayList(list);
+	}
+
+	private static LongSet toLongSet(Collection<Long> collection) {
+		return collection instanceof LongSet ? (LongSet) collection : new LongOpenHashSet(collection);
+	}
+
+	private static LongCollection toLongCollection(Collection<Long> collection) {
+		return collection instanceof LongCollection ? (LongCollection) collection : new LongArrayList(collection);
+	}
+}
@@ -6,20 +6,25 @@ import org.springframework.data.domain.Pageable;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class PageCollectionUtil {
 
-	public static <T> Page<T> listIntersection(List<T> orderedListA, List<T> listB, Pageable pageable) {
-		List<T> fullResultList = orderedListA.stream().filter(listB::contains).collect(Collectors.toList());
-		return listToPage(fullResultList, pageable);
-	}
-
 	public static <T> Page<T> listToPage(List<T> fullResultList, Pageable pageable) {
-		List<T> pageOfResults = subList(fullResultList, pageable.getPageNumber(), pageable.getPageSize());
+		List<T> pageOfResults = subList(fullResultList, pageable);
 		return new PageImpl<T>(pageOfResults, pageable, fullResultList.size());
 	}
 
+	/**
+	 * The items of the list within the pageable. Uses the offset rather than the page number so pages continuing from a searchAfter token are supported.
+	 */
+	public static <T> List<T> subList(List<T> wholeList, Pageable pageable) {
+		long offset = pageable.getOffset();
+		if (offset >= wholeList.size()) {
+			return Collections.emptyList();
+		}
+		return wholeList.subList((int) offset, (int) Math.min(offset + pageable.getPageSize(), wholeList.size()));
+	}
+
 	public static <T> List<T> subList(List<T> wholeList, int pageNumber, int pageSize) {
 		int offset = pageNumber * pageSize;
 		int limit = (pageNumber + 1) * pageSize;
@@ -0,0 +1,120 @@
+package org.snomed.snowstorm.core.util;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPageRequest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Cursor paging.
+ * The token is an opaque encoding of the offset of the next page and the sort values of the last item of the current page.
+ * The next page is selected after those sort values so each page costs the same regardless of how deep it is and is not limited by the max result window.
+ * The offset is carried along so that the total and offset of a page mean the same with or without a token.
+ */
+public class SearchAfterHelper {
+
+	private static final String SEPARATOR = "\n";
+	private static final String INVALID_TOKEN = "Invalid searchAfter token.";
+
+	/**
+	 * @return A SearchAfterPageRequest for the given token or the given page request if there is no token.
+	 */
+	public static PageRequest getPageRequest(PageRequest pageRequest, String searchAfter) {
+		if (searchAfter == null || searchAfter.isEmpty()) {
+			return pageRequest;
+		}
+		String[] values;
+		long offset;
+		try {
+			values = new String(Base64.getUrlDecoder().decode(searchAfter), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+			offset = Long.parseLong(values[0]);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(INVALID_TOKEN, e);
+		}
+		if (values.length < 2 || offset < 0) {
+			throw new IllegalArgumentException(INVALID_TOKEN);
+		}
+		return new SearchAfterPageRequest(offset, pageRequest.getPageSize(), Arrays.copyOfRange(values, 1, values.length));
+	}
+
+	/**
+	 * @return The sort values to continue after or null if the page request does not continue from a token.
+	 */
+	public static String[] getSearchAfter(Pageable pageRequest, int expectedValues) {
+		if (!(pageRequest instanceof SearchAfterPageRequest)) {
+			return null;
+		}
+		String[] sortValues = ((SearchAfterPageRequest) pageRequest).getSearchAfter();
+		if (sortValues.length != expectedValues) {
+			throw new IllegalArgumentException(INVALID_TOKEN);
+		}
+		return sortValues;
+	}
+
+	/**
+	 * @return The token for the page after this one or null if this is the last page.
+	 */
+	public static String getNextToken(Pageable pageRequest, int pageItems, long total, String... lastSortValues) {
+		long nextOffset = pageRequest.getOffset() + pageItems;
+		if (pageItems == 0 || nextOffset >= total) {
+			return null;
+		}
+		String[] values = new String[lastSortValues.length + 1];
+		values[0] = Long.toString(nextOffset);
+		System.arraycopy(lastSortValues, 0, values, 1, lastSortValues.length);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(String.join(SEPARATOR, values).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Criteria for the items after the given sort values, all fields sorted ascending.
+	 * For fields a, b this is: a > valueA OR (a = valueA AND b > valueB)
+	 * Use as a filter clause of the main query, not as a post filter, so that the criteria can skip documents rather than filtering the hits.
+	 */
+	public static BoolQueryBuilder getAfterCriteria(String[] sortFields, String[] sortValues) {
+		BoolQueryBuilder afterCriteria = boolQuery();
+		for (int i = 0; i < sortFields.length; i++) {
+			BoolQueryBuilder clause = boolQuery();
+			for (int j = 0; j < i; j++) {
+				clause.must(termQuery(sortFields[j], sortValues[j]));
+			}
+			clause.must(rangeQuery(sortFields[i]).gt(sortValues[i]));
+			afterCriteria.should(clause);
+		}
+		return afterCriteria;
+	}
+
+	/**
+	 * Criteria for the items after the given value of a numeric field which is sorted in the given order.
+	 */
+	public static RangeQueryBuilder getAfterCriteria(String sortField, String sortValue, SortOrder sortOrder) {
+		long value;
+		try {
+			value = Long.parseLong(sortValue);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(INVALID_TOKEN, e);
+		}
+		return sortOrder == SortOrder.ASC ? rangeQuery(sortField).gt(value) : rangeQuery(sortField).lt(value);
+	}
+
+	/**
+	 * Pages selected with after criteria always start from the first page of the remaining results.
+	 */
+	public static PageRequest getFirstPage(Pageable pageRequest) {
+		return PageRequest.of(0, pageRequest.getPageSize());
+	}
+
+	/**
+	 * The total of all items given the total of the items remaining after the criteria of a page selected with after criteria.
+	 */
+	public static long getTotal(Pageable pageRequest, long remainingTotal) {
+		return pageRequest.getOffset() + remainingTotal;
+	}
+}
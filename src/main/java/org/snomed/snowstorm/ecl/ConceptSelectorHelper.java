@@ -10,6 +10,7 @@ import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.core.util.SearchAfterHelper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -47,10 +48,20 @@ public class ConceptSelectorHelper {
 
 		if (pageRequest != null && inclusionFilter == null) {
 			// Fetch a page of IDs
-			searchQueryBuilder
-					.withPageable(pageRequest)
-					.withSort(SortBuilders.fieldSort(QueryConcept.Fields.CONCEPT_ID).order(SortOrder.DESC));// Sorting meaningless but supports deterministic pagination
+			searchQueryBuilder.withSort(getOrder());// Sorting meaningless but supports deterministic pagination
 
+			String[] searchAfter = SearchAfterHelper.getSearchAfter(pageRequest, 1);
+			if (searchAfter != null) {
+				// Continue after the last concept id of the previous page
+				searchQueryBuilder
+						.withQuery(boolQuery().must(query).filter(SearchAfterHelper.getAfterCriteria(QueryConcept.Fields.CONCEPT_ID, searchAfter[0], SortOrder.DESC)))
+						.withPageable(SearchAfterHelper.getFirstPage(pageRequest));
+				Page<QueryConcept> queryConcepts = queryService.queryForPage(searchQueryBuilder.build());
+				List<Long> ids = queryConcepts.getContent().stream().map(QueryConcept::getConceptIdL).collect(toList());
+				return new PageImpl<>(ids, pageRequest, SearchAfterHelper.getTotal(pageRequest, queryConcepts.getTotalElements()));
+			}
+
+			searchQueryBuilder.withPageable(pageRequest);
 			Page<QueryConcept> queryConcepts = queryService.queryForPage(searchQueryBuilder.build());
 			List<Long> ids = queryConcepts.getContent().stream().map(QueryConcept::getConceptIdL).collect(toList());
 			return new PageImpl<>(ids, pageRequest, queryConcepts.getTotalElements());
@@ -90,6 +101,7 @@ public class ConceptSelectorHelper {
 	private static String[] getRequiredFields(Function<QueryConcept, Boolean> inclusionFilter) {
 		Set<String> fields = Sets.newHashSet(QueryConcept.Fields.CONCEPT_ID);
 		if (inclusionFilter != null) {
+			fields.add(QueryConcept.Fields.ATTR_ENC);
 			fields.add(QueryConcept.Fields.ATTR_MAP);
 		}
 		return fields.toArray(new String[]{});
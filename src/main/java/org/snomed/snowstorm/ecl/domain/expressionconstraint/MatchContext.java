@@ -1,18 +1,18 @@
 package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
+import org.snomed.snowstorm.core.data.domain.GroupedAttributesReader;
+
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class MatchContext {
 
-	private Map<Integer, Map<String, List<String>>> conceptAttributes;
+	private GroupedAttributesReader conceptAttributes;
 	private boolean withinGroup;
 	private MatchContext parentContext;
 	private Set<Integer> matchingGroups;
 
-	MatchContext(Map<Integer, Map<String, List<String>>> conceptAttributes) {
+	MatchContext(GroupedAttributesReader conceptAttributes) {
 		this.conceptAttributes = conceptAttributes;
 	}
 
@@ -25,8 +25,11 @@ public class MatchContext {
 		return withinGroup;
 	}
 
-	public Map<Integer, Map<String, List<String>>> getConceptAttributes() {
-		return parentContext != null ? parentContext.getConceptAttributes() : conceptAttributes;
+	/**
+	 * @return Reader over the concept attributes, reset to the start.
+	 */
+	public GroupedAttributesReader getConceptAttributes() {
+		return parentContext != null ? parentContext.getConceptAttributes() : conceptAttributes.reset();
 	}
 
 	public Set<Integer> getMatchingGroups() {
@@ -11,7 +11,6 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Slice;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -23,28 +22,26 @@ public class SDottedExpressionConstraint extends DottedExpressionConstraint impl
 
 	@Override
 	public Optional<Page<Long>> select(String path, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter, PageRequest pageRequest, QueryService queryService) {
-		Optional<Page<Long>> conceptIds = SExpressionConstraintHelper.select(this, path, branchCriteria, stated, conceptIdFilter, null, queryService);
+		Optional<Page<Long>> focusConceptIds = SExpressionConstraintHelper.select(this, path, branchCriteria, stated, conceptIdFilter, null, queryService);
 
-		if (!conceptIds.isPresent()) {
+		if (!focusConceptIds.isPresent()) {
 			throw new UnsupportedOperationException("Dotted expression using wildcard focus concept is not supported.");
 		}
 
+		List<Long> conceptIds = focusConceptIds.get().getContent();
 		for (SubExpressionConstraint dottedAttribute : dottedAttributes) {
 			Optional<Page<Long>> attributeTypeIdsOptional = ((SSubExpressionConstraint)dottedAttribute).select(path, branchCriteria, stated, conceptIdFilter, null, queryService);
 			List<Long> attributeTypeIds = attributeTypeIdsOptional.map(Slice::getContent).orElse(null);
-			// XXX Note that this content is not paginated
-			List<Long> idList = new ArrayList<>(queryService.findRelationshipDestinationIds(conceptIds.get().getContent(), attributeTypeIds, branchCriteria, stated));
-			conceptIds = Optional.of(new PageImpl<>(idList));
+
+			conceptIds = queryService.findRelationshipDestinationIdsInChunks(conceptIds, attributeTypeIds, branchCriteria, stated);
 		}
 
-		// Manually apply pagination
+		// Apply the page window to the final set of ids
 		if (pageRequest != null) {
-			List<Long> content = conceptIds.get().getContent();
-			List<Long> pageOfContent = PageCollectionUtil.subList(content, pageRequest.getPageNumber(), pageRequest.getPageSize());
-			conceptIds = Optional.of(new PageImpl<>(pageOfContent, pageRequest, content.size()));
+			return Optional.of(PageCollectionUtil.listToPage(conceptIds, pageRequest));
 		}
 
-		return conceptIds;
+		return Optional.of(new PageImpl<>(conceptIds));
 	}
 
 	@Override
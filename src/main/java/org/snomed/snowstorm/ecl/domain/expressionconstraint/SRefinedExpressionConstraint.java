@@ -11,8 +11,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
 import java.util.Collection;
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 public class SRefinedExpressionConstraint extends RefinedExpressionConstraint implements SExpressionConstraint {
@@ -38,8 +36,7 @@ public class SRefinedExpressionConstraint extends RefinedExpressionConstraint im
 
 		if (refinementBuilder.isInclusionFilterRequired()) {
 			refinementBuilder.setInclusionFilter(queryConcept -> {
-				Map<Integer, Map<String, List<String>>> conceptAttributes = queryConcept.getGroupedAttributesMap();
-				MatchContext matchContext = new MatchContext(conceptAttributes);
+				MatchContext matchContext = new MatchContext(queryConcept.getAttributesReader());
 				return ((SEclRefinement) eclRefinement).isMatch(matchContext);
 			});
 		}
@@ -1,5 +1,7 @@
 package org.snomed.snowstorm.ecl.domain.refinement;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.springframework.data.domain.Page;
 
 import java.util.List;
@@ -7,8 +9,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
-import static java.lang.Long.parseLong;
-
 class AttributeRange {
 
 	private final boolean attributeTypeWildcard;
@@ -18,6 +18,10 @@ class AttributeRange {
 	private final Integer cardinalityMax;
 	private final Optional<Page<Long>> attributeTypesOptional;
 
+	// Primitive sets for matching attributes of each concept without boxing
+	private final LongSet possibleAttributeTypeIds;
+	private final LongSet possibleAttributeValueIds;
+
 	AttributeRange(boolean attributeTypeWildcard, Optional<Page<Long>> attributeTypesOptional, Set<String> possibleAttributeTypes, List<Long> possibleAttributeValues, Integer cardinalityMin, Integer cardinalityMax) {
 		this.attributeTypeWildcard = attributeTypeWildcard;
 		this.attributeTypesOptional = attributeTypesOptional;
@@ -25,14 +29,20 @@ class AttributeRange {
 		this.possibleAttributeValues = possibleAttributeValues;
 		this.cardinalityMin = cardinalityMin;
 		this.cardinalityMax = cardinalityMax;
+		possibleAttributeTypeIds = attributeTypeWildcard ? null : new LongOpenHashSet(attributeTypesOptional.get().getContent());
+		possibleAttributeValueIds = possibleAttributeValues == null ? null : new LongOpenHashSet(possibleAttributeValues);
+	}
+
+	boolean isAttributeTypeWildcard() {
+		return attributeTypeWildcard;
 	}
 
-	boolean isTypeWithinRange(String conceptId) {
-		return attributeTypeWildcard || possibleAttributeTypes.contains(conceptId);
+	boolean isTypeWithinRange(long conceptId) {
+		return attributeTypeWildcard || possibleAttributeTypeIds.contains(conceptId);
 	}
 
-	boolean isValueWithinRange(String conceptAttributeValue) {
-		return possibleAttributeValues == null || possibleAttributeValues.contains(parseLong(conceptAttributeValue));
+	boolean isValueWithinRange(long conceptAttributeValue) {
+		return possibleAttributeValueIds == null || possibleAttributeValueIds.contains(conceptAttributeValue);
 	}
 
 	Optional<Page<Long>> getAttributeTypesOptional() {
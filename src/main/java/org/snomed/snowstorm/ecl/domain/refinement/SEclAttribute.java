@@ -1,8 +1,12 @@
 package org.snomed.snowstorm.ecl.domain.refinement;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
+import org.apache.lucene.search.join.ScoreMode;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.snomed.langauges.ecl.domain.refinement.EclAttribute;
+import org.snomed.snowstorm.core.data.domain.GroupedAttributesReader;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.SRefinement;
@@ -13,7 +17,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Slice;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -23,14 +26,9 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 	private AttributeRange attributeRange;
 	private RefinementBuilder refinementBuilder;
 
-	@Override
-	public void setNumericComparisonOperator(String numericComparisonOperator) {
-		throw new UnsupportedOperationException("Only the ExpressionComparisonOperator is supported. NumericComparisonOperator and StringComparisonOperator are not supported.");
-	}
-
 	@Override
 	public void setStringComparisonOperator(String stringComparisonOperator) {
-		throw new UnsupportedOperationException("Only the ExpressionComparisonOperator is supported. NumericComparisonOperator and StringComparisonOperator are not supported.");
+		throw new UnsupportedOperationException("Only the ExpressionComparisonOperator and NumericComparisonOperator are supported. StringComparisonOperator is not supported.");
 	}
 
 	@Override
@@ -45,6 +43,11 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 		BranchCriteria branchCriteria = refinementBuilder.getBranchCriteria();
 		boolean stated = refinementBuilder.isStated();
 
+		if (numericComparisonOperator != null) {
+			addNumericCriteria(query);
+			return;
+		}
+
 		if (reverse) {
 			// Reverse flag
 
@@ -61,8 +64,8 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 		} else {
 			// Not reverse flag
 
-			// The query is not capable of constraining the number of times an attribute occurs, only that it does or does not occur.
-			// Further cardinality checking against fetched index records can be enabled using the specificCardinality flag.
+			// The query can constrain the number of times an attribute occurs only when any value of a single attribute type is accepted.
+			// Otherwise further cardinality checking against fetched index records is enabled using the specificCardinality flag.
 			boolean specificCardinality = false;
 			boolean mustOccur = false;
 			boolean mustNotOccur = false;
@@ -106,16 +109,23 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 				specificCardinality = true;
 			}
 
-			if (specificCardinality) {
-				refinementBuilder.inclusionFilterRequired();
-			}
-
-
 			boolean equalsOperator = expressionComparisonOperator.equals("=");
 
 			AttributeRange attributeRange = getAttributeRange();
 			List<Long> possibleAttributeValues = attributeRange.getPossibleAttributeValues();
 			Set<String> attributeTypeProperties = attributeRange.getPossibleAttributeTypes();
+
+			if (specificCardinality) {
+				if (equalsOperator && possibleAttributeValues == null && attributeTypeProperties.size() == 1
+						&& !attributeTypeProperties.contains(SExpressionConstraintHelper.MISSING)
+						&& refinementBuilder.getQueryService().isAttributeCountIndexed()) {
+					// Any value of a single attribute type (or the wildcard type) - the count of values is held in the index
+					addCardinalityCriteria(query, getAttributeCountField(attributeTypeProperties.iterator().next()));
+				} else {
+					refinementBuilder.inclusionFilterRequired();
+				}
+			}
+
 			if (possibleAttributeValues == null) {
 				if (mustOccur || mustNotOccur) {
 					// Value is wildcard
@@ -179,6 +189,101 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 		}
 	}
 
+	private void addNumericCriteria(BoolQueryBuilder query) {
+		if (reverse) {
+			throw new IllegalArgumentException("The reverse flag can not be used with a concrete value.");
+		}
+
+		// Concrete values are held in nested documents so that the type and value must match on the same attribute
+		AttributeRange attributeRange = getAttributeRange();
+		BoolQueryBuilder numericAttributeQuery = boolQuery();
+		if (!attributeRange.isAttributeTypeWildcard()) {
+			numericAttributeQuery.must(termsQuery(QueryConcept.Fields.ATTR_NUM_TYPE, attributeRange.getPossibleAttributeTypes()));
+		}
+		double number = getNumericValue();
+		switch (numericComparisonOperator) {
+			case "=":
+				numericAttributeQuery.must(termQuery(QueryConcept.Fields.ATTR_NUM_VALUE, number));
+				break;
+			case "!=":
+				numericAttributeQuery.mustNot(termQuery(QueryConcept.Fields.ATTR_NUM_VALUE, number));
+				break;
+			case "<":
+				numericAttributeQuery.must(rangeQuery(QueryConcept.Fields.ATTR_NUM_VALUE).lt(number));
+				break;
+			case "<=":
+				numericAttributeQuery.must(rangeQuery(QueryConcept.Fields.ATTR_NUM_VALUE).lte(number));
+				break;
+			case ">":
+				numericAttributeQuery.must(rangeQuery(QueryConcept.Fields.ATTR_NUM_VALUE).gt(number));
+				break;
+			case ">=":
+				numericAttributeQuery.must(rangeQuery(QueryConcept.Fields.ATTR_NUM_VALUE).gte(number));
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported numeric comparison operator '" + numericComparisonOperator + "'.");
+		}
+		NestedQueryBuilder numericQuery = nestedQuery(QueryConcept.Fields.ATTR_NUM, numericAttributeQuery, ScoreMode.None);
+
+		if ((cardinalityMin == null && cardinalityMax == null) || (isZero(cardinalityMin) && cardinalityMax == null)) {
+			// Unbound, no constraints needed
+			return;
+		}
+		if (isZero(cardinalityMax)) {
+			query.mustNot(numericQuery);
+		} else if (isOneOrMore(cardinalityMin)) {
+			query.must(numericQuery);
+			if (cardinalityMin > 1 || cardinalityMax != null) {
+				// Number of matching values checked against fetched index records
+				refinementBuilder.inclusionFilterRequired();
+			}
+		} else {
+			// Optional but bounded
+			refinementBuilder.inclusionFilterRequired();
+		}
+	}
+
+	private double getNumericValue() {
+		try {
+			return Double.parseDouble(numericValue);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Concrete value '" + numericValue + "' is not a number.");
+		}
+	}
+
+	private boolean isNumericMatch(double conceptAttributeValue) {
+		int comparison = Double.compare(conceptAttributeValue, getNumericValue());
+		switch (numericComparisonOperator) {
+			case "=":
+				return comparison == 0;
+			case "!=":
+				return comparison != 0;
+			case "<":
+				return comparison < 0;
+			case "<=":
+				return comparison <= 0;
+			case ">":
+				return comparison > 0;
+			case ">=":
+				return comparison >= 0;
+			default:
+				return false;
+		}
+	}
+
+	private void addCardinalityCriteria(BoolQueryBuilder query, String attributeCountField) {
+		if (isOneOrMore(cardinalityMin)) {
+			RangeQueryBuilder countRange = rangeQuery(attributeCountField).gte(cardinalityMin);
+			if (cardinalityMax != null) {
+				countRange.lte(cardinalityMax);
+			}
+			query.must(countRange);
+		} else {
+			// Optional but bounded, concepts without the attribute have no count
+			query.mustNot(rangeQuery(attributeCountField).gt(cardinalityMax));
+		}
+	}
+
 	private boolean isZero(Integer i) {
 		return i != null && i == 0;
 	}
@@ -204,7 +309,9 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 				}
 			}
 
-			List<Long> possibleAttributeValues_ = ((SSubExpressionConstraint) value).select(refinementBuilder).map(Slice::getContent).orElse(null);
+			// No value constraint to select when the attribute is compared with a concrete value
+			List<Long> possibleAttributeValues_ = value == null ? null :
+					((SSubExpressionConstraint) value).select(refinementBuilder).map(Slice::getContent).orElse(null);
 
 			attributeRange = new AttributeRange(attributeTypeWildcard, attributeTypesOptional, attributeTypeProperties_, possibleAttributeValues_, cardinalityMin, cardinalityMax);
 		}
@@ -213,27 +320,35 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 
 	void checkConceptConstraints(MatchContext matchContext) {
 		attributeRange = getAttributeRange();
-		Map<Integer, Map<String, List<String>>> conceptAttributes = matchContext.getConceptAttributes();
+		GroupedAttributesReader conceptAttributes = matchContext.getConceptAttributes();
 		boolean withinGroup = matchContext.isWithinGroup();
-		boolean equalsOperator = expressionComparisonOperator.equals("=");
+		boolean equalsOperator = "=".equals(expressionComparisonOperator);
+		boolean numericComparison = numericComparisonOperator != null;
 
 		// Count occurrence of this attribute within each group
-		final AtomicInteger attributeMatchCount = new AtomicInteger(0);
-		final Map<Integer, AtomicInteger> groupAttributeMatchCounts = new HashMap<>();
-
-		for (Map.Entry<Integer, Map<String, List<String>>> attributeGroup : conceptAttributes.entrySet()) {
-			attributeGroup.getValue().entrySet().stream()
-					.filter(entrySet -> attributeRange.isTypeWithinRange(entrySet.getKey()))
-					.forEach((Map.Entry<String, List<String>> entrySet) ->
-							entrySet.getValue().forEach(conceptAttributeValue -> {
-								if (equalsOperator == attributeRange.isValueWithinRange(conceptAttributeValue)) {
-									// Increment count for attribute match in the concept
-									attributeMatchCount.incrementAndGet();
-									// Increment count for attribute match in this relationship group
-									groupAttributeMatchCounts.computeIfAbsent(attributeGroup.getKey(), i -> new AtomicInteger()).incrementAndGet();
-								}
-							})
-					);
+		int attributeMatchCount = 0;
+		final Map<Integer, Integer> groupAttributeMatchCounts = new HashMap<>();
+
+		while (conceptAttributes.nextGroup()) {
+			int groupMatchCount = 0;
+			while (conceptAttributes.nextAttribute()) {
+				if (!attributeRange.isTypeWithinRange(conceptAttributes.getType())) {
+					continue;
+				}
+				while (conceptAttributes.nextValue()) {
+					boolean match = numericComparison ?
+							conceptAttributes.isConcreteValue() && isNumericMatch(conceptAttributes.getConcreteValue()) :
+							!conceptAttributes.isConcreteValue() && equalsOperator == attributeRange.isValueWithinRange(conceptAttributes.getConceptValue());
+					if (match) {
+						groupMatchCount++;
+					}
+				}
+			}
+			if (groupMatchCount > 0) {
+				// Count for attribute match in the concept and in this relationship group
+				attributeMatchCount += groupMatchCount;
+				groupAttributeMatchCounts.put(conceptAttributes.getGroup(), groupMatchCount);
+			}
 		}
 
 		// Gather the group number of groups with this attribute
@@ -246,16 +361,16 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 					continue; // Group 0 is not a group
 					// TODO: Should we let MRCM self-grouped attributes through here?
 				}
-				AtomicInteger inGroupAttributeMatchCount = groupAttributeMatchCounts.get(group);
-				if ((attributeRange.getCardinalityMin() == null || attributeRange.getCardinalityMin() <= inGroupAttributeMatchCount.get())
-						&& (attributeRange.getCardinalityMax() == null || attributeRange.getCardinalityMax() >= inGroupAttributeMatchCount.get())) {
+				int inGroupAttributeMatchCount = groupAttributeMatchCounts.get(group);
+				if ((attributeRange.getCardinalityMin() == null || attributeRange.getCardinalityMin() <= inGroupAttributeMatchCount)
+						&& (attributeRange.getCardinalityMax() == null || attributeRange.getCardinalityMax() >= inGroupAttributeMatchCount)) {
 					matchingGroups.add(group);
 				}
 			}
 		} else {
 			// Apply attribute cardinality across whole concept
-			if ((attributeRange.getCardinalityMin() == null || attributeRange.getCardinalityMin() <= attributeMatchCount.get())
-					&& (attributeRange.getCardinalityMax() == null || attributeRange.getCardinalityMax() >= attributeMatchCount.get())) {
+			if ((attributeRange.getCardinalityMin() == null || attributeRange.getCardinalityMin() <= attributeMatchCount)
+					&& (attributeRange.getCardinalityMax() == null || attributeRange.getCardinalityMax() >= attributeMatchCount)) {
 
 				matchingGroups.add(-1);
 			}
@@ -268,4 +383,8 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 		return QueryConcept.Fields.ATTR + "." + attributeTypeProperty;
 	}
 
+	private String getAttributeCountField(String attributeTypeProperty) {
+		return QueryConcept.Fields.ATTR_COUNT + "." + attributeTypeProperty;
+	}
+
 }
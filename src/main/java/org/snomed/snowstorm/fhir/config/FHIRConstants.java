@@ -17,14 +17,22 @@ public interface FHIRConstants {
 
 	String LANG_EN = "en";
 	String LANGUAGE = "language";
+	String MESSAGE = "message";
 	StringType MODULE_ID = new StringType("moduleId");
 	String NAME = "name";
+	String OUTCOME = "outcome";
 	String PROPERTY = "property";
 	StringType PARENT = new StringType("parent");
+	String RESULT = "result";
 
 	String SNOMED_EDITION = "SNOMED CT International Edition";
 	String SNOMED_INTERNATIONAL = "SNOMED International";
 	String SNOMED_URI = "http://snomed.info/sct";
+
+	String SUBSUMPTION_EQUIVALENT = "equivalent";
+	String SUBSUMPTION_SUBSUMES = "subsumes";
+	String SUBSUMPTION_SUBSUMED_BY = "subsumed-by";
+	String SUBSUMPTION_NOT_SUBSUMED = "not-subsumed";
 	
 	StringType SUFFICIENTLY_DEFINED = new StringType("sufficientlyDefined");
 	String URL = "url";
@@ -5,6 +5,7 @@ import java.util.List;
 
 import javax.servlet.ServletException;
 
+import org.snomed.snowstorm.fhir.services.FHIRBatchProvider;
 import org.snomed.snowstorm.fhir.services.FHIRCodeSystemProvider;
 import org.snomed.snowstorm.fhir.services.FHIRValueSetProvider;
 import org.springframework.web.context.WebApplicationContext;
@@ -61,6 +62,9 @@ public class HapiRestfulServlet extends RestfulServer {
 		resourceProviders.add(csp);
 		resourceProviders.add(vsp);
 		setResourceProviders(resourceProviders);
+
+		// System level batch of operations
+		setPlainProviders(applicationContext.getBean(FHIRBatchProvider.class));
 	}
 }
 
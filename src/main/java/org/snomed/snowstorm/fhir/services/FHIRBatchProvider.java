@@ -0,0 +1,195 @@
+package org.snomed.snowstorm.fhir.services;
+
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hl7.fhir.dstu3.model.*;
+import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
+import org.snomed.snowstorm.fhir.config.FHIRConstants;
+import org.snomed.snowstorm.rest.ControllerHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Batch of terminology operations in one Bundle, grouped by code system version so that each group is answered with a few requests.
+ */
+@Component
+public class FHIRBatchProvider implements FHIRConstants {
+
+	private static final String LOOKUP = "CodeSystem/$lookup";
+	private static final String SUBSUMES = "CodeSystem/$subsumes";
+	private static final String VALIDATE_CODE = "CodeSystem/$validate-code";
+	private static final Map<String, Set<String>> OPERATION_REQUIRED_PARAMS = ImmutableMap.of(
+			LOOKUP, Collections.singleton("code"),
+			SUBSUMES, ImmutableSet.of("codeA", "codeB"),
+			VALIDATE_CODE, Collections.singleton("code"));
+	private static final String OPERATION_PARAM = "_operation";
+
+	@Autowired
+	private FHIRCodeSystemProvider codeSystemProvider;
+
+	@Autowired
+	private FHIRHelper helper;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Transaction
+	public Bundle batch(@TransactionParam Bundle bundle) {
+		List<Bundle.BundleEntryComponent> entries = bundle.getEntry();
+		Bundle.BundleEntryComponent[] responseEntries = new Bundle.BundleEntryComponent[entries.size()];
+
+		// Entry index to parameters, by code system version
+		Map<String, Map<Integer, Map<String, String>>> entriesByVersion = new HashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			Bundle.BundleEntryComponent entry = entries.get(i);
+			String url = entry.getRequest().getUrl();
+			if (url == null) {
+				responseEntries[i] = errorEntry(IssueType.REQUIRED, "400 Bad Request", "Entry request url is required.");
+				continue;
+			}
+			Map<String, String> params = getParams(url, entry.getResource());
+			String operation = getOperation(url);
+			params.put(OPERATION_PARAM, operation);
+			if (!OPERATION_REQUIRED_PARAMS.containsKey(operation)) {
+				responseEntries[i] = errorEntry(IssueType.NOTSUPPORTED, "400 Bad Request", "Operation " + operation + " is not supported in a batch.");
+			} else if (!SNOMED_URI.equals(params.get("system")) || !params.keySet().containsAll(OPERATION_REQUIRED_PARAMS.get(operation))) {
+				responseEntries[i] = errorEntry(IssueType.VALUE, "400 Bad Request", "Parameters " + OPERATION_REQUIRED_PARAMS.get(operation) +
+						" and system must be present, and currently only " + SNOMED_URI + " is supported.");
+			} else {
+				entriesByVersion.computeIfAbsent(params.getOrDefault(VERSION, ""), v -> new LinkedHashMap<>()).put(i, params);
+			}
+		}
+
+		List<String> languageCodes = ControllerHelper.getLanguageCodes(ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER);
+		for (Map.Entry<String, Map<Integer, Map<String, String>>> versionEntries : entriesByVersion.entrySet()) {
+			Map<Integer, Map<String, String>> entryParams = versionEntries.getValue();
+			try {
+				String version = versionEntries.getKey();
+				String branchPath = helper.getBranchPathForCodeSystemVersion(version.isEmpty() ? null : new StringType(version));
+
+				// Each operation is answered for all entries of this version together
+				List<Integer> lookupEntries = new ArrayList<>();
+				List<Integer> subsumesEntries = new ArrayList<>();
+				List<Integer> validateCodeEntries = new ArrayList<>();
+				entryParams.forEach((index, params) -> {
+					switch (params.get(OPERATION_PARAM)) {
+						case LOOKUP:
+							lookupEntries.add(index);
+							break;
+						case SUBSUMES:
+							subsumesEntries.add(index);
+							break;
+						case VALIDATE_CODE:
+							validateCodeEntries.add(index);
+							break;
+					}
+				});
+
+				if (!lookupEntries.isEmpty()) {
+					Set<String> codes = lookupEntries.stream().map(index -> entryParams.get(index).get("code")).collect(Collectors.toSet());
+					Map<String, Parameters> lookups = codeSystemProvider.lookup(branchPath, codes, languageCodes);
+					for (Integer index : lookupEntries) {
+						String code = entryParams.get(index).get("code");
+						responseEntries[index] = resultEntry(lookups.get(code), code);
+					}
+				}
+				if (!subsumesEntries.isEmpty()) {
+					List<String[]> codePairs = subsumesEntries.stream()
+							.map(index -> new String[] {entryParams.get(index).get("codeA"), entryParams.get(index).get("codeB")}).collect(Collectors.toList());
+					List<Parameters> outcomes = codeSystemProvider.subsumes(branchPath, codePairs);
+					for (int i = 0; i < subsumesEntries.size(); i++) {
+						responseEntries[subsumesEntries.get(i)] = resultEntry(outcomes.get(i), codePairs.get(i)[0] + " or " + codePairs.get(i)[1]);
+					}
+				}
+				if (!validateCodeEntries.isEmpty()) {
+					List<String> codes = validateCodeEntries.stream().map(index -> entryParams.get(index).get("code")).collect(Collectors.toList());
+					List<String> displays = validateCodeEntries.stream().map(index -> entryParams.get(index).get("display")).collect(Collectors.toList());
+					List<Parameters> results = codeSystemProvider.validateCode(branchPath, codes, displays);
+					for (int i = 0; i < validateCodeEntries.size(); i++) {
+						responseEntries[validateCodeEntries.get(i)] = okEntry(results.get(i));
+					}
+				}
+			} catch (NotFoundException e) {
+				entryParams.keySet().forEach(index -> responseEntries[index] = errorEntry(IssueType.NOTFOUND, "404 Not Found", e.getMessage()));
+			}
+		}
+		logger.info("Batch of {} entries, {} code system versions.", entries.size(), entriesByVersion.size());
+
+		Bundle response = new Bundle().setType(Bundle.BundleType.BATCHRESPONSE);
+		for (Bundle.BundleEntryComponent responseEntry : responseEntries) {
+			response.addEntry(responseEntry);
+		}
+		return response;
+	}
+
+	private Bundle.BundleEntryComponent resultEntry(Parameters parameters, String codes) {
+		return parameters != null ? okEntry(parameters) : errorEntry(IssueType.NOTFOUND, "404 Not Found", "Concept " + codes + " not found.");
+	}
+
+	private String getOperation(String url) {
+		String path = url.contains("?") ? url.substring(0, url.indexOf("?")) : url;
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+	private Map<String, String> getParams(String url, Resource resource) {
+		Map<String, String> params = new HashMap<>();
+		UriComponents uriComponents = UriComponentsBuilder.fromUriString(url).build();
+		MultiValueMap<String, String> queryParams = uriComponents.getQueryParams();
+		queryParams.forEach((name, values) -> {
+			if (!values.isEmpty() && values.get(0) != null) {
+				params.put(name, decode(values.get(0)));
+			}
+		});
+		if (resource instanceof Parameters) {
+			for (Parameters.ParametersParameterComponent parameter : ((Parameters) resource).getParameter()) {
+				if (parameter.getValue() != null && parameter.getValue().isPrimitive()) {
+					params.put(parameter.getName(), parameter.getValue().primitiveValue());
+				}
+			}
+		}
+		return params;
+	}
+
+	private String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return value;
+		}
+	}
+
+	private Bundle.BundleEntryComponent okEntry(Resource resource) {
+		Bundle.BundleEntryComponent entry = new Bundle.BundleEntryComponent().setResource(resource);
+		entry.getResponse().setStatus("200 OK");
+		return entry;
+	}
+
+	private Bundle.BundleEntryComponent errorEntry(IssueType issueType, String status, String message) {
+		OperationOutcome outcome = new OperationOutcome();
+		outcome.addIssue()
+				.setSeverity(OperationOutcome.IssueSeverity.ERROR)
+				.setCode(issueType)
+				.setDiagnostics(message);
+		Bundle.BundleEntryComponent entry = new Bundle.BundleEntryComponent();
+		entry.getResponse().setStatus(status).setOutcome(outcome);
+		return entry;
+	}
+}
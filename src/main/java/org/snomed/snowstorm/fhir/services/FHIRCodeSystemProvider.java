@@ -3,44 +3,51 @@ package org.snomed.snowstorm.fhir.services;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 
 import org.hl7.fhir.dstu3.model.*;
 import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.Concept;
-import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.domain.Description;
 import org.snomed.snowstorm.core.data.services.ConceptService;
-import org.snomed.snowstorm.core.data.services.NotFoundException;
 import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.fhir.config.FHIRConstants;
 import org.snomed.snowstorm.rest.ControllerHelper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-
-import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class FHIRCodeSystemProvider implements IResourceProvider, FHIRConstants {
 
-	@Autowired
-	private CodeSystemService codeSystemService;
-
 	@Autowired
 	private ConceptService conceptService;
 
 	@Autowired
 	private QueryService queryService;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	@Autowired
 	private HapiCodeSystemMapper mapper;
 	
-	private FHIRHelper helper = new FHIRHelper();
+	@Autowired
+	private FHIRHelper helper;
 
 	@Operation(name="$lookup", idempotent=true)
 	public Parameters lookup(
@@ -58,39 +65,156 @@ public class FHIRCodeSystemProvider implements IResourceProvider, FHIRConstants
 			throw new FHIROperationException(IssueType.VALUE, "System must be present, and currently only " + SNOMED_URI + " is supported.");
 		}
 
-		String defaultModule = helper.getSnomedEditionModule(codeSystemUri);
-		Integer editionVersionString = null;
-		if (codeSystemUri != null) {
-			editionVersionString = helper.getSnomedVersion(codeSystemUri.toString());
+		String branchPath = helper.getBranchPathForCodeSystemVersion(codeSystemUri);
+
+		//List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
+		List<String> languageCodes = ControllerHelper.getLanguageCodes(ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER);
+
+		Map<String, Parameters> lookups = lookup(branchPath, Collections.singleton(code.getValue()), languageCodes);
+		return ControllerHelper.throwIfNotFound("Concept", lookups.get(code.getValue()));
+	}
+
+	/**
+	 * Looks up a batch of codes on one branch. The number of requests made does not depend on the number of codes.
+	 * Only descriptions are loaded with each concept, parents and children come from the semantic index.
+	 * @return Lookup parameters by code, codes not found are not included.
+	 */
+	Map<String, Parameters> lookup(String branchPath, Collection<String> codes, List<String> languageCodes) {
+		Collection<Concept> concepts = conceptService.findWithDescriptions(branchPath, codes, languageCodes);
+		List<Long> conceptIds = concepts.stream().map(Concept::getConceptIdAsLong).collect(Collectors.toList());
+
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		Map<Long, Set<Long>> parentIdsMap = queryService.findParentIdsMap(branchCriteria, false, conceptIds);
+		Map<Long, Set<Long>> childIdsMap = queryService.findChildIdsMap(branchCriteria, false, conceptIds);
+
+		Map<String, Parameters> lookups = new HashMap<>();
+		for (Concept concept : concepts) {
+			Long conceptId = concept.getConceptIdAsLong();
+			lookups.put(concept.getConceptId(), mapper.mapToFHIR(concept,
+					parentIdsMap.getOrDefault(conceptId, Collections.emptySet()), childIdsMap.getOrDefault(conceptId, Collections.emptySet())));
+		}
+		return lookups;
+	}
+
+	@Operation(name="$subsumes", idempotent=true)
+	public Parameters subsumes(
+			HttpServletRequest request,
+			HttpServletResponse response,
+			@OperationParam(name="codeA") CodeType codeA,
+			@OperationParam(name="codeB") CodeType codeB,
+			@OperationParam(name="system") UriType system,
+			@OperationParam(name="version") StringType codeSystemUri) throws FHIROperationException {
+
+		if (system == null || system.isEmpty() || !system.equals(SNOMED_URI)) {
+			throw new FHIROperationException(IssueType.VALUE, "System must be present, and currently only " + SNOMED_URI + " is supported.");
+		}
+		if (codeA == null || codeB == null) {
+			throw new FHIROperationException(IssueType.REQUIRED, "Both codeA and codeB must be present.");
+		}
+
+		String branchPath = helper.getBranchPathForCodeSystemVersion(codeSystemUri);
+		List<Parameters> outcomes = subsumes(branchPath, Collections.singletonList(new String[] {codeA.getValue(), codeB.getValue()}));
+		return ControllerHelper.throwIfNotFound("Concept", outcomes.get(0));
+	}
+
+	@Operation(name="$validate-code", idempotent=true)
+	public Parameters validateCode(
+			HttpServletRequest request,
+			HttpServletResponse response,
+			@OperationParam(name="code") CodeType code,
+			@OperationParam(name="system") UriType system,
+			@OperationParam(name="version") StringType codeSystemUri,
+			@OperationParam(name="display") StringType display) throws FHIROperationException {
+
+		if (system == null || system.isEmpty() || !system.equals(SNOMED_URI)) {
+			throw new FHIROperationException(IssueType.VALUE, "System must be present, and currently only " + SNOMED_URI + " is supported.");
+		}
+		if (code == null) {
+			throw new FHIROperationException(IssueType.REQUIRED, "Code must be present.");
+		}
+
+		String branchPath = helper.getBranchPathForCodeSystemVersion(codeSystemUri);
+		return validateCode(branchPath, Collections.singletonList(code.getValue()), Collections.singletonList(display != null ? display.getValue() : null)).get(0);
+	}
+
+	/**
+	 * Subsumption of a batch of code pairs on one branch, using the ancestors held in the semantic index.
+	 * @return Outcome parameters in the order of the pairs, null where either code is not an active concept.
+	 */
+	List<Parameters> subsumes(String branchPath, List<String[]> codePairs) {
+		Set<Long> conceptIds = new HashSet<>();
+		for (String[] codePair : codePairs) {
+			for (String code : codePair) {
+				if (IdentifierService.isConceptId(code)) {
+					conceptIds.add(Long.parseLong(code));
+				}
+			}
 		}
+		Map<Long, Set<Long>> ancestorIdsMap = queryService.findAncestorIdsMap(versionControlHelper.getBranchCriteria(branchPath), false, conceptIds);
 
-		org.snomed.snowstorm.core.data.domain.CodeSystem codeSystem = codeSystemService.findByDefaultModule(defaultModule);
-		if (codeSystem == null) {
-			throw new NotFoundException(String.format("No code system with default module %s.", defaultModule));
+		List<Parameters> outcomes = new ArrayList<>();
+		for (String[] codePair : codePairs) {
+			Set<Long> ancestorsA = IdentifierService.isConceptId(codePair[0]) ? ancestorIdsMap.get(Long.parseLong(codePair[0])) : null;
+			Set<Long> ancestorsB = IdentifierService.isConceptId(codePair[1]) ? ancestorIdsMap.get(Long.parseLong(codePair[1])) : null;
+			if (ancestorsA == null || ancestorsB == null) {
+				outcomes.add(null);
+				continue;
+			}
+			String outcome;
+			if (codePair[0].equals(codePair[1])) {
+				outcome = SUBSUMPTION_EQUIVALENT;
+			} else if (ancestorsB.contains(Long.parseLong(codePair[0]))) {
+				outcome = SUBSUMPTION_SUBSUMES;
+			} else if (ancestorsA.contains(Long.parseLong(codePair[1]))) {
+				outcome = SUBSUMPTION_SUBSUMED_BY;
+			} else {
+				outcome = SUBSUMPTION_NOT_SUBSUMED;
+			}
+			outcomes.add(mapper.mapSubsumptionOutcome(outcome));
 		}
+		return outcomes;
+	}
 
-		CodeSystemVersion codeSystemVersion;
-		String shortName = codeSystem.getShortName();
-		if (editionVersionString != null) {
-			// Lookup specific version
-			codeSystemVersion = codeSystemService.findVersion(shortName, editionVersionString);
-		} else {
-			// Lookup latest
-			codeSystemVersion = codeSystemService.findLatestVersion(shortName);
+	/**
+	 * Validation of a batch of codes on one branch. A code is valid if it is an active concept.
+	 * Where a display is given it must also match the term of one of the active descriptions of the concept.
+	 * @return Result parameters in the order of the codes.
+	 */
+	List<Parameters> validateCode(String branchPath, List<String> codes, List<String> displays) {
+		Set<Long> conceptIds = codes.stream().filter(IdentifierService::isConceptId).map(Long::parseLong).collect(Collectors.toSet());
+		Set<Long> activeConceptIds = conceptService.findActiveConceptIds(versionControlHelper.getBranchCriteria(branchPath), conceptIds);
+
+		// Descriptions are only needed to check displays
+		Set<String> displayCheckCodes = new HashSet<>();
+		for (int i = 0; i < codes.size(); i++) {
+			if (displays.get(i) != null && IdentifierService.isConceptId(codes.get(i)) && activeConceptIds.contains(Long.parseLong(codes.get(i)))) {
+				displayCheckCodes.add(codes.get(i));
+			}
 		}
-		if (codeSystemVersion == null) {
-			throw new NotFoundException(String.format("No version found for Code system %s with default module %s.", shortName, defaultModule));
+		Map<String, Set<String>> conceptTerms = new HashMap<>();
+		if (!displayCheckCodes.isEmpty()) {
+			List<String> languageCodes = ControllerHelper.getLanguageCodes(ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER);
+			for (Concept concept : conceptService.findWithDescriptions(branchPath, displayCheckCodes, languageCodes)) {
+				conceptTerms.put(concept.getConceptId(), concept.getDescriptions().stream()
+						.filter(Description::isActive).map(Description::getTerm).collect(Collectors.toSet()));
+			}
 		}
-		String branchPath = codeSystemVersion.getBranchPath();
 
-		//List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
-		List<String> languageCodes = ControllerHelper.getLanguageCodes(ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER);
-		
-				Concept concept = ControllerHelper.throwIfNotFound("Concept", conceptService.find(code.getValue(), languageCodes, branchPath));
-		Page<Long> childIds = queryService.searchForIds(queryService.createQueryBuilder(false).ecl("<!" + code.getValue()), branchPath, LARGE_PAGE);
-		return mapper.mapToFHIR(concept, childIds.getContent());
+		List<Parameters> results = new ArrayList<>();
+		for (int i = 0; i < codes.size(); i++) {
+			String code = codes.get(i);
+			String display = displays.get(i);
+			if (!IdentifierService.isConceptId(code) || !activeConceptIds.contains(Long.parseLong(code))) {
+				results.add(mapper.mapValidateCodeResult(false, String.format("Code %s is not an active concept in this code system version.", code)));
+			} else if (display != null && !conceptTerms.getOrDefault(code, Collections.emptySet()).contains(display)) {
+				results.add(mapper.mapValidateCodeResult(false, String.format("Display '%s' is not a term of concept %s.", display, code)));
+			} else {
+				results.add(mapper.mapValidateCodeResult(true, null));
+			}
+		}
+		return results;
 	}
-	
+
 	@Override
 	public Class<? extends IBaseResource> getResourceType() {
 		return CodeSystem.class;
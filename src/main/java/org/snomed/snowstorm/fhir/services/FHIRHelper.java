@@ -1,11 +1,52 @@
 package org.snomed.snowstorm.fhir.services;
 
 import org.hl7.fhir.dstu3.model.StringType;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
 import org.snomed.snowstorm.fhir.config.FHIRConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
 
+@Component
 class FHIRHelper {
 
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	/**
+	 * Finds the branch of the code system version identified by a SNOMED CT version URI.
+	 * The latest version of the edition is used if the URI has no version, the International Edition if no URI is given.
+	 */
+	String getBranchPathForCodeSystemVersion(StringType codeSystemVersionUri) {
+		String defaultModule = getSnomedEditionModule(codeSystemVersionUri);
+		Integer editionVersionString = null;
+		if (codeSystemVersionUri != null) {
+			editionVersionString = getSnomedVersion(codeSystemVersionUri.toString());
+		}
+
+		CodeSystem codeSystem = codeSystemService.findByDefaultModule(defaultModule);
+		if (codeSystem == null) {
+			throw new NotFoundException(String.format("No code system with default module %s.", defaultModule));
+		}
+
+		CodeSystemVersion codeSystemVersion;
+		String shortName = codeSystem.getShortName();
+		if (editionVersionString != null) {
+			// Lookup specific version
+			codeSystemVersion = codeSystemService.findVersion(shortName, editionVersionString);
+		} else {
+			// Lookup latest
+			codeSystemVersion = codeSystemService.findLatestVersion(shortName);
+		}
+		if (codeSystemVersion == null) {
+			throw new NotFoundException(String.format("No version found for Code system %s with default module %s.", shortName, defaultModule));
+		}
+		return codeSystemVersion.getBranchPath();
+	}
+
 	Integer getSnomedVersion(String versionStr) {
 		String versionUri = "/" + FHIRConstants.VERSION + "/";
 		return !versionStr.contains("/" + FHIRConstants.VERSION + "/")
@@ -3,52 +3,154 @@ package org.snomed.snowstorm.fhir.services;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.hl7.fhir.dstu3.model.*;
+import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.fhir.config.FHIRConstants;
+import org.snomed.snowstorm.rest.ControllerHelper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
-import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class FHIRValueSetProvider implements IResourceProvider, FHIRConstants {
-	
+
+	private static final int DEFAULT_COUNT = 1000;
+	private static final int EXPANSION_CACHE_MAX_IDS = 10_000_000;
+	private static final String ECL_VALUE_SET_PARAM = "fhir_vs=ecl/";
+
 	@Autowired
 	private QueryService queryService;
-	
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	@Autowired
 	private HapiValueSetMapper mapper;
-	
-	private FHIRHelper helper = new FHIRHelper();
-	
+
+	@Autowired
+	private FHIRHelper helper;
+
+	// Concept ids of each expansion, in expansion order. Branch head timestamp in the key so that any commit invalidates.
+	private final Cache<String, long[]> expansionCache = CacheBuilder.newBuilder()
+			.maximumWeight(EXPANSION_CACHE_MAX_IDS)
+			.weigher((String key, long[] conceptIds) -> conceptIds.length)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@Operation(name="$expand", idempotent=true)
 	public ValueSet expand(
 			HttpServletRequest request,
 			HttpServletResponse response,
-			@OperationParam(name="url") String url) throws FHIROperationException {
-
-		// TODO: Surely we should be doing the same code system and version mapping here as we are in the $lookup operation?
-		String branch = "MAIN";
-		QueryService.ConceptQueryBuilder queryBuilder = queryService.createQueryBuilder(false);  //Inferred view only for now
-		String ecl = url.substring(url.indexOf("fhir_vs=ecl/") + 12);
-		queryBuilder.ecl(ecl);
-		Page<ConceptMini> conceptMiniPage = queryService.search(queryBuilder, BranchPathUriUtil.decodePath(branch), PageRequest.of(0, 1000));
-		logger.info("Recovered: {} concepts from branch: {} with ecl: '{}'", conceptMiniPage.getContent().size(), branch, ecl);
-		return mapper.mapToFHIR(conceptMiniPage.getContent(), url); 
+			@OperationParam(name="url") String url,
+			@OperationParam(name="filter") String filter,
+			@OperationParam(name="displayLanguage") String displayLanguage,
+			@OperationParam(name="offset") IntegerType offsetParam,
+			@OperationParam(name="count") IntegerType countParam) throws FHIROperationException {
+
+		if (url == null || !url.contains(ECL_VALUE_SET_PARAM)) {
+			throw new FHIROperationException(IssueType.VALUE, "Url must be present and use the implicit ECL value set format " + SNOMED_URI + "?" + ECL_VALUE_SET_PARAM + "<ecl>");
+		}
+		int offset = offsetParam != null && offsetParam.getValue() != null ? offsetParam.getValue() : 0;
+		int count = countParam != null && countParam.getValue() != null ? countParam.getValue() : DEFAULT_COUNT;
+		if (offset < 0 || count < 0) {
+			throw new FHIROperationException(IssueType.VALUE, "Offset and count must not be negative.");
+		}
+		if (filter != null && !filter.isEmpty() && filter.length() < QueryService.MIN_TERM_LENGTH) {
+			throw new FHIROperationException(IssueType.VALUE, "Filter must be at least " + QueryService.MIN_TERM_LENGTH + " characters.");
+		}
+
+		// Edition and version are taken from the part of the url before the value set parameters
+		String codeSystemVersionUri = url.substring(0, url.indexOf("?") != -1 ? url.indexOf("?") : url.indexOf(ECL_VALUE_SET_PARAM));
+		String branchPath = helper.getBranchPathForCodeSystemVersion(new StringType(codeSystemVersionUri));
+		String ecl = url.substring(url.indexOf(ECL_VALUE_SET_PARAM) + ECL_VALUE_SET_PARAM.length());
+		List<String> languageCodes = ControllerHelper.getLanguageCodes(displayLanguage != null ? displayLanguage : ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER);
+
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		String cacheKey = String.join("|", url, branchPath, Long.toString(branch.getHeadTimestamp()), String.valueOf(filter), String.valueOf(displayLanguage));
+
+		String etag = "W/\"" + Integer.toHexString(Objects.hash(cacheKey, offset, count)) + "\"";
+		response.setHeader("ETag", etag);
+		if (etag.equals(request.getHeader("If-None-Match"))) {
+			throw new NotModifiedException("Value set expansion not modified.");
+		}
+
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		long[] conceptIds;
+		try {
+			conceptIds = expansionCache.get(cacheKey, () -> expand(ecl, filter, languageCodes, branchPath, branchCriteria));
+		} catch (ExecutionException e) {
+			throw new FHIROperationException(IssueType.EXCEPTION, "Failed to expand value set " + url, e);
+		}
+
+		// Only the requested page is loaded
+		int fromIndex = Math.min(offset, conceptIds.length);
+		int toIndex = (int) Math.min((long) fromIndex + count, conceptIds.length);
+		List<Long> pageOfIds = new LongArrayList(conceptIds, fromIndex, toIndex - fromIndex);
+		Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchCriteria, pageOfIds, languageCodes).getResultsMap();
+		List<ConceptMini> pageOfConcepts = new ArrayList<>();
+		for (Long conceptId : pageOfIds) {
+			ConceptMini conceptMini = conceptMinis.get(conceptId.toString());
+			if (conceptMini != null) {
+				pageOfConcepts.add(conceptMini);
+			}
+		}
+		logger.info("Recovered: {} of {} concepts from branch: {} with ecl: '{}'", pageOfConcepts.size(), conceptIds.length, branchPath, ecl);
+		return mapper.mapToFHIR(pageOfConcepts, url, conceptIds.length, offset);
 	}
-	
+
+	private long[] expand(String ecl, String filter, List<String> languageCodes, String branchPath, BranchCriteria branchCriteria) {
+		List<Long> ids;
+		if (filter == null || filter.isEmpty()) {
+			// All ids of the ECL
+			ids = eclQueryService.selectConceptIds(ecl, branchCriteria, branchPath, false, (PageRequest) null).getContent();
+		} else {
+			// All term matches of the ECL ordered by relevance
+			QueryService.ConceptQueryBuilder queryBuilder = queryService.createQueryBuilder(false)  //Inferred view only for now
+					.ecl(ecl)
+					.termPrefix(filter)
+					.languageCodes(languageCodes);
+			ids = queryService.searchForAllEclIdsWithTerm(queryBuilder, branchPath);
+		}
+		return ids.stream().mapToLong(Long::longValue).toArray();
+	}
+
 	@Override
 	public Class<? extends IBaseResource> getResourceType() {
 		return ValueSet.class;
@@ -1,7 +1,6 @@
 package org.snomed.snowstorm.fhir.services;
 
 import java.util.Collection;
-import java.util.List;
 
 import org.hl7.fhir.dstu3.model.*;
 import org.snomed.snowstorm.core.data.domain.*;
@@ -10,17 +9,32 @@ import org.snomed.snowstorm.fhir.config.FHIRConstants;
 
 public class HapiCodeSystemMapper implements FHIRConstants {
 	
-	public Parameters mapToFHIR(Concept c, Collection<Long> childIds) {
+	public Parameters mapToFHIR(Concept c, Collection<Long> parentIds, Collection<Long> childIds) {
 		Parameters parameters = getStandardParameters();
 		Parameters.ParametersParameterComponent preferredTerm = new Parameters.ParametersParameterComponent(DISPLAY);
 		parameters.addParameter(preferredTerm);
 		addDesignations(parameters, c, preferredTerm);
 		addProperties(parameters, c);
-		addParents(parameters,c);
+		addParents(parameters, parentIds);
 		addChildren(parameters, childIds);
 		return parameters;
 	}
 
+	public Parameters mapSubsumptionOutcome(String outcome) {
+		Parameters parameters = getStandardParameters();
+		parameters.addParameter().setName(OUTCOME).setValue(new CodeType(outcome));
+		return parameters;
+	}
+
+	public Parameters mapValidateCodeResult(boolean result, String message) {
+		Parameters parameters = getStandardParameters();
+		parameters.addParameter().setName(RESULT).setValue(new BooleanType(result));
+		if (message != null) {
+			parameters.addParameter().setName(MESSAGE).setValue(new StringType(message));
+		}
+		return parameters;
+	}
+
 	private Parameters getStandardParameters() {
 		Parameters parameters = new Parameters();
 		//String copyrightStr = COPYRIGHT.replace("YEAR", Integer.toString(Year.now().getValue()));
@@ -52,10 +66,9 @@ public class HapiCodeSystemMapper implements FHIRConstants {
 		parameters.addParameter(createProperty(SUFFICIENTLY_DEFINED, sufficientlyDefined, false));
 	}
 
-	private void addParents(Parameters p, Concept c) {
-		List<Relationship> parentRels = c.getRelationships(true, Concepts.ISA, null, Concepts.INFERRED_RELATIONSHIP);
-		for (Relationship thisParentRel : parentRels) {
-			p.addParameter(createProperty(PARENT, thisParentRel.getDestinationId(), true));
+	private void addParents(Parameters p, Collection<Long> parentIds) {
+		for (Long parentId : parentIds) {
+			p.addParameter(createProperty(PARENT, parentId.toString(), true));
 		}
 	}
 	
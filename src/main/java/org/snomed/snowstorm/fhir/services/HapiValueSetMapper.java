@@ -16,6 +16,14 @@ public class HapiValueSetMapper implements FHIRConstants {
 		return v;
 	}
 
+	public ValueSet mapToFHIR(List<ConceptMini> pageOfConcepts, String url, int total, int offset) {
+		ValueSet v = mapToFHIR(pageOfConcepts, url);
+		v.getExpansion()
+			.setTotal(total)
+			.setOffset(offset);
+		return v;
+	}
+
 	private ValueSet getStandardValueSet(String url) {
 		ValueSet v = new ValueSet();
 		v.setUrl(url);
@@ -0,0 +1,59 @@
+package org.snomed.snowstorm.mrcm;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.snomed.snowstorm.mrcm.model.Attribute;
+import org.snomed.snowstorm.mrcm.model.Domain;
+import org.snomed.snowstorm.mrcm.model.InclusionType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MRCM attribute hierarchy resolved against the content of one branch head.
+ * Attribute concepts are resolved to the MRCM attribute of themselves or their first ancestor.
+ * Domains are not expanded, a parent concept is matched to a domain using its own ancestors.
+ */
+class MRCMBranchIndex {
+
+	private final Collection<Domain> domains;
+	private final Long2ObjectMap<Attribute> resolvedAttributes;
+	private final Long2ObjectMap<LongSet> attributeDescendantIds;
+
+	MRCMBranchIndex(Collection<Domain> domains, Long2ObjectMap<Attribute> resolvedAttributes, Long2ObjectMap<LongSet> attributeDescendantIds) {
+		this.domains = domains;
+		this.resolvedAttributes = resolvedAttributes;
+		this.attributeDescendantIds = attributeDescendantIds;
+	}
+
+	/**
+	 * @param parentAncestorIds Ancestors of each parent concept. A new child of a parent is within a domain if the parent is the domain concept
+	 *                          or, unless the domain is self only, a descendant of it.
+	 */
+	Set<Long> getDomainAttributeIds(Collection<Long> parentIds, Map<Long, Set<Long>> parentAncestorIds) {
+		Set<Long> attributeIds = new HashSet<>();
+		for (Domain domain : domains) {
+			Long domainId = domain.getConceptId();
+			for (Long parentId : parentIds) {
+				if (parentId.equals(domainId) || (domain.getInclusionType() != InclusionType.SELF
+						&& parentAncestorIds.getOrDefault(parentId, Collections.emptySet()).contains(domainId))) {
+					for (Attribute attribute : domain.getAttributes()) {
+						attributeIds.add(attribute.getConceptId());
+						if (attribute.getInclusionType() != InclusionType.SELF) {
+							attributeIds.addAll(attributeDescendantIds.get((long) attribute.getConceptId()));
+						}
+					}
+					break;
+				}
+			}
+		}
+		return attributeIds;
+	}
+
+	Attribute getSelfOrFirstAncestorAttribute(Long attributeId) {
+		return resolvedAttributes.get((long) attributeId);
+	}
+}
@@ -1,26 +1,42 @@
 package org.snomed.snowstorm.mrcm;
 
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.services.*;
+import org.snomed.snowstorm.core.util.LongIntersectionUtil;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.mrcm.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
-public class MRCMService {
-	
+public class MRCMService implements CommitListener {
+
+	private static final int RANGE_CACHE_MAX_IDS = 5_000_000;
+
 	@Autowired
 	private QueryService queryService;
 
@@ -30,104 +46,189 @@ public class MRCMService {
 	@Autowired
 	private VersionControlHelper versionControlHelper;
 
+	@Autowired
+	private BranchService branchService;
+
 	private Map<String, MRCM> branchMrcmMap;
 
+	// Resolution of the MRCM against each branch head, keyed by branch path and head timestamp
+	private final Cache<String, MRCMBranchIndex> branchIndexCache = CacheBuilder.newBuilder()
+			.maximumSize(50)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
+	// Sorted concept ids of each attribute range, keyed by branch path, head timestamp and attribute
+	private final Cache<String, long[]> attributeRangeCache = CacheBuilder.newBuilder()
+			.maximumWeight(RANGE_CACHE_MAX_IDS)
+			.weigher((String key, long[] conceptIds) -> conceptIds.length)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
 	@Value("${validation.mrcm.xml.path}")
 	private String mrcmXmlPath;
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
+	@PostConstruct
+	public void init() {
+		branchService.addCommitListener(this);
+	}
+
 	public void loadFromFiles() throws ServiceException {
 		this.branchMrcmMap = new MRCMLoader(mrcmXmlPath).loadFromFiles();
+		branchIndexCache.invalidateAll();
+		attributeRangeCache.invalidateAll();
 	}
 
 	public Collection<ConceptMini> retrieveDomainAttributes(String branchPath, Set<Long> parentIds, List<String> languageCodes) {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		Set<Long> allMatchedAttributeIds; 
-		
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		Set<Long> allMatchedAttributeIds;
+
 		//If no parents are specified, we can always at least return ISA as a valid option
 		if (parentIds == null || parentIds.isEmpty()) {
 			allMatchedAttributeIds = Collections.singleton(Concepts.IS_A_LONG);
 		} else {
-			Set<Long> allAncestors = queryService.findAncestorIdsAsUnion(branchCriteria, false, parentIds);
-			allAncestors.addAll(parentIds);
-	
-			Set<Domain> matchedDomains = getClosestMrcm(branchPath).getDomainMap().values().stream().filter(d -> {
-				Long domainConceptId = d.getConceptId();
-				InclusionType inclusionType = d.getInclusionType();
-				if ((inclusionType == InclusionType.SELF || inclusionType == InclusionType.SELF_OR_DESCENDANT)
-						&& parentIds.contains(domainConceptId)) {
-					return true;
-				}
-				if ((inclusionType == InclusionType.DESCENDANT || inclusionType == InclusionType.SELF_OR_DESCENDANT)
-						&& allAncestors.contains(domainConceptId)) {
-					return true;
-				}
-				return false;
-			}).collect(Collectors.toSet());
-	
-			Set<Attribute> matchedAttributes = matchedDomains.stream().map(Domain::getAttributes).flatMap(Collection::stream).collect(Collectors.toSet());
-	
-			allMatchedAttributeIds = matchedAttributes.stream().map(Attribute::getConceptId).collect(Collectors.toSet());
-			Set<Long> descendantTypeAttributes = matchedAttributes.stream().filter(attribute -> attribute.getInclusionType() == InclusionType.DESCENDANT).map(Attribute::getConceptId).collect(Collectors.toSet());
-			Set<Long> selfOrDescendantTypeAttributes = matchedAttributes.stream().filter(attribute -> attribute.getInclusionType() == InclusionType.SELF_OR_DESCENDANT).map(Attribute::getConceptId).collect(Collectors.toSet());
-	
-			List<Long> descendantAttributes = queryService.findDescendantIdsAsUnion(branchCriteria, false, Sets.union(descendantTypeAttributes, selfOrDescendantTypeAttributes));
-	
-			allMatchedAttributeIds.removeAll(descendantAttributes);
-			allMatchedAttributeIds.addAll(descendantAttributes);
+			// Only the ancestors of the given parents are needed to place them in domains
+			Map<Long, Set<Long>> parentAncestorIds = queryService.findAncestorIdsMap(branchCriteria, false, parentIds);
+			allMatchedAttributeIds = getBranchIndex(branch, branchCriteria).getDomainAttributeIds(parentIds, parentAncestorIds);
 		}
 
-		return conceptService.findConceptMinis(branchCriteria, allMatchedAttributeIds, languageCodes).getResultsMap().values();
+		return conceptService.findConceptMinis(branch, allMatchedAttributeIds, languageCodes).getResultsMap().values();
 	}
 
-	public Collection<ConceptMini> retrieveAttributeValues(String branchPath, String attributeId, String termPrefix, List<String> languageCodes) {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		Attribute attribute = findSelfOrFirstAncestorAttribute(branchPath, branchCriteria, attributeId);
+	public Page<ConceptMini> retrieveAttributeValues(String branchPath, String attributeId, String termPrefix, List<String> languageCodes, PageRequest pageRequest) {
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		Attribute attribute = getBranchIndex(branch, branchCriteria).getSelfOrFirstAncestorAttribute(Long.parseLong(attributeId));
 		if (attribute == null) {
 			throw new IllegalArgumentException("MRCM Attribute " + attributeId + " not found.");
 		}
-		
-		QueryService.ConceptQueryBuilder queryBuilder = queryService.createQueryBuilder(false)
-				.termPrefix(termPrefix)
-				.languageCodes(languageCodes);
+		if (termPrefix == null || termPrefix.length() < 3) {
+			return new PageImpl<>(Collections.emptyList(), pageRequest, 0);
+		}
+
+		long[] rangeConceptIds;
+		try {
+			rangeConceptIds = attributeRangeCache.get(branchPath + "|" + branch.getHeadTimestamp() + "|" + attribute.getConceptId(),
+					() -> findRangeConceptIds(attribute, branchCriteria));
+		} catch (ExecutionException e) {
+			throw new RuntimeServiceException("Failed to evaluate range of MRCM attribute " + attribute.getConceptId() + " on branch " + branchPath, e);
+		}
+
+		// Lexical matches give the ordering, the cached range filters them
+		List<Long> lexicalMatches = queryService.findLexicalMatchDescriptionConceptIds(branchCriteria, termPrefix, languageCodes);
+		Page<Long> conceptIdPage = LongIntersectionUtil.orderedIntersection(lexicalMatches, rangeConceptIds, pageRequest);
+
+		Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branch, conceptIdPage.getContent(), languageCodes).getResultsMap();
+		List<ConceptMini> pageOfConcepts = new ArrayList<>();
+		for (Long conceptId : conceptIdPage.getContent()) {
+			ConceptMini conceptMini = conceptMinis.get(conceptId.toString());
+			if (conceptMini != null) {
+				pageOfConcepts.add(conceptMini);
+			}
+		}
+		return new PageImpl<>(pageOfConcepts, pageRequest, conceptIdPage.getTotalElements());
+	}
 
+	private long[] findRangeConceptIds(Attribute attribute, BranchCriteria branchCriteria) {
+		TimerUtil timer = new TimerUtil("MRCM range " + attribute.getConceptId());
+		LongSet conceptIds = new LongOpenHashSet();
+		Set<Long> selfIds = new HashSet<>();
+		Set<Long> descendantOfIds = new HashSet<>();
 		for (Range range : attribute.getRangeSet()) {
-			Long conceptId = range.getConceptId();
-			InclusionType inclusionType = range.getInclusionType();
-			switch (inclusionType) {
-				case SELF:
-					queryBuilder.self(conceptId);
-					break;
-				case DESCENDANT:
-					queryBuilder.descendant(conceptId);
-					break;
-				case SELF_OR_DESCENDANT:
-					queryBuilder.selfOrDescendant(conceptId);
-					break;
+			if (range.getInclusionType() != InclusionType.DESCENDANT) {
+				selfIds.add(range.getConceptId());
+			}
+			if (range.getInclusionType() != InclusionType.SELF) {
+				descendantOfIds.add(range.getConceptId());
 			}
 		}
+		if (!selfIds.isEmpty()) {
+			// Only active concepts are in the semantic index
+			conceptIds.addAll(queryService.findAncestorIdsMap(branchCriteria, false, selfIds).keySet());
+		}
+		if (!descendantOfIds.isEmpty()) {
+			conceptIds.addAll(queryService.findDescendantIdSet(branchCriteria, false, descendantOfIds));
+		}
+		long[] sortedConceptIds = conceptIds.toLongArray();
+		Arrays.sort(sortedConceptIds);
+		timer.finish();
+		return sortedConceptIds;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		// Any commit moves the branch head so indexes of the previous head will not be used again
+		String keyPrefix = commit.getBranch().getPath() + "|";
+		branchIndexCache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+		attributeRangeCache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+	}
 
-		return queryService.search(queryBuilder, branchPath, PageRequest.of(0, 50)).getContent();
+	private MRCMBranchIndex getBranchIndex(Branch branch, BranchCriteria branchCriteria) {
+		String branchPath = branch.getPath();
+		MRCM mrcm = getClosestMrcm(branchPath);
+		try {
+			return branchIndexCache.get(branchPath + "|" + branch.getHeadTimestamp(), () -> buildBranchIndex(branchPath, mrcm, branchCriteria));
+		} catch (ExecutionException e) {
+			throw new RuntimeServiceException("Failed to build MRCM index for branch " + branchPath, e);
+		}
 	}
 
-	private Attribute findSelfOrFirstAncestorAttribute(String branchPath, BranchCriteria branchCriteria, String attributeIdStr) {
+	private MRCMBranchIndex buildBranchIndex(String branchPath, MRCM mrcm, BranchCriteria branchCriteria) {
+		TimerUtil timer = new TimerUtil("MRCM index " + branchPath);
+
+		// The attribute hierarchy is small so is loaded once and walked in memory
+		Set<Long> mrcmAttributeIds = new HashSet<>(mrcm.getAttributeMap().keySet());
+		mrcm.getDomainMap().values().forEach(domain -> domain.getAttributes().forEach(attribute -> mrcmAttributeIds.add(attribute.getConceptId())));
+		LongSet attributeHierarchyIds = queryService.findDescendantIdSet(branchCriteria, false, mrcmAttributeIds);
+		attributeHierarchyIds.addAll(mrcmAttributeIds);
+		Map<Long, Set<Long>> parentIdsMap = queryService.findParentIdsMap(branchCriteria, false, attributeHierarchyIds);
+		Map<Long, Set<Long>> ancestorIdsMap = queryService.findAncestorIdsMap(branchCriteria, false, attributeHierarchyIds);
+
+		Long2ObjectMap<LongSet> attributeDescendantIds = new Long2ObjectOpenHashMap<>();
+		mrcmAttributeIds.forEach(attributeId -> attributeDescendantIds.put((long) attributeId, new LongOpenHashSet()));
+		ancestorIdsMap.forEach((conceptId, ancestorIds) -> {
+			for (Long ancestorId : ancestorIds) {
+				LongSet descendantIds = attributeDescendantIds.get((long) ancestorId);
+				if (descendantIds != null) {
+					descendantIds.add((long) conceptId);
+				}
+			}
+		});
+
+		Long2ObjectMap<Attribute> resolvedAttributes = new Long2ObjectOpenHashMap<>();
+		for (Long conceptId : attributeHierarchyIds) {
+			Attribute attribute = findSelfOrFirstAncestorAttribute(conceptId, mrcm.getAttributeMap(), parentIdsMap);
+			if (attribute != null) {
+				resolvedAttributes.put((long) conceptId, attribute);
+			}
+		}
+		timer.finish();
+
+		return new MRCMBranchIndex(mrcm.getDomainMap().values(), resolvedAttributes, attributeDescendantIds);
+	}
+
+	private Attribute findSelfOrFirstAncestorAttribute(Long attributeId, Map<Long, Attribute> attributeMap, Map<Long, Set<Long>> parentIdsMap) {
 		//Breadth first scan of ancestors requires use of Queue
-		Queue<Long> ancestorIds = new LinkedBlockingQueue<>(); 
-		ancestorIds.add(Long.parseLong(attributeIdStr));
-		
-		Attribute attribute = null;
+		Queue<Long> ancestorIds = new ArrayDeque<>();
+		Set<Long> visited = new HashSet<>();
+		ancestorIds.add(attributeId);
 		while (!ancestorIds.isEmpty()) {
-			Long attributeId = ancestorIds.poll();
-			attribute = getClosestMrcm(branchPath).getAttributeMap().get(attributeId);
+			Long ancestorId = ancestorIds.poll();
+			Attribute attribute = attributeMap.get(ancestorId);
 			if (attribute != null) {
-				break;
+				return attribute;
 			}
 			//If we haven't found an attribute, then add all immediate inferred parents to the queue.
 			//But we'll check the same level parents first, since they'll be earlier in the queue
-			ancestorIds.addAll(queryService.findParentIds(branchCriteria, false, attributeId.toString()));
+			for (Long parentId : parentIdsMap.getOrDefault(ancestorId, Collections.emptySet())) {
+				if (visited.add(parentId)) {
+					ancestorIds.add(parentId);
+				}
+			}
 		}
-		return attribute;
+		return null;
 	}
 
 	private MRCM getClosestMrcm(final String branchPath) {
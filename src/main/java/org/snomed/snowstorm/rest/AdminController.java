@@ -0,0 +1,50 @@
+package org.snomed.snowstorm.rest;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.IndexMigrationService;
+import org.snomed.snowstorm.core.data.services.QueryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@Api(tags = "Admin", description = "Index Maintenance")
+@RequestMapping(value = "/admin", produces = "application/json")
+public class AdminController {
+
+	@Autowired
+	private IndexMigrationService indexMigrationService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private QueryService queryService;
+
+	@ApiOperation(value = "Rebuild the description index with the latest search fields.",
+			notes = "Only required for indices created before the term prefix and language fields were introduced. " +
+					"All descriptions are copied to a new index which then replaces the old one. " +
+					"Searches keep using the old index until the copy is complete. " +
+					"Descriptions changed during the copy are not included so run this while no content is being imported or edited.")
+	@RequestMapping(value = "/actions/rebuild-description-index", method = RequestMethod.POST)
+	public void rebuildDescriptionIndex() {
+		indexMigrationService.updateMappingAndReindex(Description.class);
+		descriptionService.clearTermPrefixIndexed();
+	}
+
+	@ApiOperation(value = "Rebuild the semantic index with the compact attribute encoding and attribute counts.",
+			notes = "Only required for indices created before the attrEnc and attrCount fields were introduced. " +
+					"All semantic index entries are copied to a new index which then replaces the old one. " +
+					"ECL queries keep using the old index until the copy is complete. " +
+					"The server must be idle while this runs: entries written by imports, authoring or any other commit during the copy are lost " +
+					"and the semantic index of the affected branches would need to be rebuilt.")
+	@RequestMapping(value = "/actions/rebuild-semantic-index", method = RequestMethod.POST)
+	public void rebuildSemanticIndex() {
+		indexMigrationService.updateMappingAndReindex(QueryConcept.class);
+		queryService.clearAttributeCountIndexed();
+	}
+
+}
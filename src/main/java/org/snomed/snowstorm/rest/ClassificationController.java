@@ -12,6 +12,7 @@ import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.snomed.snowstorm.core.data.services.classification.ClassificationService;
 import org.snomed.snowstorm.core.data.services.classification.pojo.EquivalentConceptsResponse;
+import org.snomed.snowstorm.rest.converter.ItemsPageCSVConverter;
 import org.snomed.snowstorm.rest.pojo.ClassificationUpdateRequest;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,12 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+
 @RestController
 @Api(tags = "Classification", description = "-")
 @RequestMapping(value = "/{branch}/classifications", produces = "application/json")
@@ -62,6 +69,32 @@ public class ClassificationController {
 				ControllerHelper.getLanguageCodes(acceptLanguageHeader), ControllerHelper.getPageRequest(offset, limit)));
 	}
 
+	@ApiOperation(value = "Stream all relationship changes made by a classification run on a branch as tab separated values.",
+			notes = "Rows are written as they are loaded so there is no limit on the number of changes.")
+	@RequestMapping(value = "/{classificationId}/relationship-changes/stream", method = RequestMethod.GET, produces = "text/csv")
+	public void streamRelationshipChanges(
+			@PathVariable String branch,
+			@PathVariable String classificationId,
+			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		response.setContentType("text/csv");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream()));
+		ItemsPageCSVConverter.writeRelationshipChangeHeader(writer);
+		classificationService.streamRelationshipChanges(BranchPathUriUtil.decodePath(branch), classificationId, ControllerHelper.getLanguageCodes(acceptLanguageHeader),
+				changesChunk -> {
+					try {
+						for (RelationshipChange change : changesChunk) {
+							ItemsPageCSVConverter.writeRelationshipChange(change, writer);
+						}
+						writer.flush();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+		writer.flush();
+	}
+
 	@ApiOperation("Retrieve a preview of a concept with classification changes applied")
 	@RequestMapping(value = "/{classificationId}/concept-preview/{conceptId}", method = RequestMethod.GET)
 	@ResponseBody
@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.rest;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
@@ -15,6 +16,7 @@ import org.snomed.snowstorm.core.data.domain.expression.Expression;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.pojo.AsyncConceptChangeBatch;
 import org.snomed.snowstorm.core.data.services.pojo.ResultMapPage;
+import org.snomed.snowstorm.rest.converter.ItemsPageCSVConverter;
 import org.snomed.snowstorm.rest.pojo.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -25,7 +27,11 @@ import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.*;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -35,6 +41,8 @@ import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 @RequestMapping(produces = "application/json")
 public class ConceptController {
 
+	private static final int STREAM_CHUNK_SIZE = 1_000;
+
 	@Autowired
 	private ConceptService conceptService;
 
@@ -65,6 +73,7 @@ public class ConceptController {
 			@RequestParam(required = false) Set<String> conceptIds,
 			@RequestParam(required = false, defaultValue = "0") int offset,
 			@RequestParam(required = false, defaultValue = "50") int limit,
+			@RequestParam(required = false) String searchAfter,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		boolean stated = true;
@@ -84,7 +93,49 @@ public class ConceptController {
 
 		validatePageSize(limit);
 
-		return new ItemsPage<>(queryService.search(queryBuilder, BranchPathUriUtil.decodePath(branch), ControllerHelper.getPageRequest(offset, limit)));
+		return new ItemsPage<>(queryService.search(queryBuilder, BranchPathUriUtil.decodePath(branch), ControllerHelper.getPageRequest(offset, limit), searchAfter));
+	}
+
+	@ApiOperation(value = "Stream all concepts matching an ECL expression as tab separated values.",
+			notes = "Rows are written as they are loaded so there is no limit on the number of concepts.")
+	@RequestMapping(value = "/{branch}/concepts/stream", method = RequestMethod.GET, produces = "text/csv")
+	public void streamConcepts(
+			@PathVariable String branch,
+			@RequestParam(required = false) String definitionStatusFilter,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl,
+			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		boolean stated = true;
+		if (ecl != null && !ecl.isEmpty()) {
+			stated = false;
+		} else {
+			ecl = statedEcl;
+		}
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
+		QueryService.ConceptQueryBuilder queryBuilder = queryService.createQueryBuilder(stated)
+				.definitionStatusFilter(definitionStatusFilter)
+				.ecl(ecl)
+				.languageCodes(languageCodes);
+		List<Long> conceptIds = queryService.searchForAllEclIds(queryBuilder, path);
+
+		response.setContentType("text/csv");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream()));
+		ItemsPageCSVConverter.writeConceptMiniHeader(writer);
+		for (List<Long> conceptIdsChunk : Iterables.partition(conceptIds, STREAM_CHUNK_SIZE)) {
+			Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(path, conceptIdsChunk, languageCodes).getResultsMap();
+			for (Long conceptId : conceptIdsChunk) {
+				ConceptMini conceptMini = conceptMinis.get(conceptId.toString());
+				if (conceptMini != null) {
+					ItemsPageCSVConverter.writeConceptMini(conceptMini, writer);
+				}
+			}
+			writer.flush();
+		}
+		writer.flush();
 	}
 
 	@RequestMapping(value = "/{branch}/concepts/{conceptId}", method = RequestMethod.GET, produces = {"application/json", "text/csv"})
@@ -286,6 +337,7 @@ public class ConceptController {
 	@RequestMapping(value = "/rebuild/{branch}", method = RequestMethod.POST)
 	public void rebuildBranchTransitiveClosure(@PathVariable String branch) throws ConversionException {
 		queryConceptUpdateService.rebuildStatedAndInferredSemanticIndex(BranchPathUriUtil.decodePath(branch));
+		queryService.clearAttributeCountIndexed();
 	}
 
 	@ResponseBody
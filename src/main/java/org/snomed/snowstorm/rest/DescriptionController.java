@@ -8,6 +8,7 @@ import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Description;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
 import org.snomed.snowstorm.rest.converter.AggregationNameConverter;
 import org.snomed.snowstorm.rest.pojo.BrowserDescriptionSearchResult;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
@@ -15,7 +16,6 @@ import org.snomed.snowstorm.rest.pojo.PageWithFilters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
@@ -51,22 +51,24 @@ public class DescriptionController {
 			@PathVariable String branch,
 			@RequestParam(required = false) String term,
 			@RequestParam(required = false) Boolean conceptActive,
+			@RequestParam(defaultValue = "true") @ApiParam("Set to false to skip the semantic tag, membership, module and language filters, which makes the search faster") boolean includeAggregations,
 			@RequestParam(defaultValue = "0") int offset,
 			@RequestParam(defaultValue = "50") int limit,
+			@RequestParam(required = false) String searchAfter,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		branch = BranchPathUriUtil.decodePath(branch);
 		PageRequest pageRequest = ControllerHelper.getPageRequest(offset, limit);
 
 		List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
-		AggregatedPage<Description> page = descriptionService.findDescriptionsWithAggregations(branch, term, conceptActive, languageCodes, pageRequest);
+		SearchAfterPage<Description> page = descriptionService.findDescriptionsWithAggregations(branch, term, conceptActive, languageCodes, pageRequest, searchAfter, includeAggregations);
 		Set<String> conceptIds = page.getContent().stream().map(Description::getConceptId).collect(Collectors.toSet());
 		Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branch, conceptIds, languageCodes).getResultsMap();
 
 		List<BrowserDescriptionSearchResult> results = new ArrayList<>();
 		page.getContent().forEach(d -> results.add(new BrowserDescriptionSearchResult(d.getTerm(), d.isActive(), conceptMinis.get(d.getConceptId()))));
 
-		return new PageWithFilters<>(results, pageRequest, page.getTotalElements(), page.getAggregations(), languageAggregationNameConverter);
+		return new PageWithFilters<>(results, page.getPageable(), page.getTotalElements(), page.getAggregations(), page.getSearchAfter(), languageAggregationNameConverter);
 	}
 
 	@RequestMapping(value = "{branch}/descriptions", method = RequestMethod.GET)
@@ -41,11 +41,13 @@ public class MRCMController {
 			@PathVariable String path,
 			@PathVariable String attributeId,
 			@RequestParam String termPrefix,
+			@RequestParam(required = false, defaultValue = "0") int offset,
+			@RequestParam(required = false, defaultValue = "50") int limit,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		String branchPath = BranchPathUriUtil.decodePath(path);
 		List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
-		return new ItemsPage<>(mrcmService.retrieveAttributeValues(branchPath, attributeId, termPrefix, languageCodes));
+		return new ItemsPage<>(mrcmService.retrieveAttributeValues(branchPath, attributeId, termPrefix, languageCodes, ControllerHelper.getPageRequest(offset, limit)));
 	}
 
 	@ApiOperation("Reload MRCM from XML files. This is an alternative implementation to the reference sets.")
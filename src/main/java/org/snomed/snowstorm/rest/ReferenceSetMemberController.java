@@ -3,6 +3,7 @@ package org.snomed.snowstorm.rest;
 import com.fasterxml.jackson.annotation.JsonView;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.services.ConceptService;
@@ -43,6 +44,7 @@ public class ReferenceSetMemberController {
 			@RequestParam(required = false) String mapTarget,
 			@RequestParam(defaultValue = "0") int offset,
 			@RequestParam(defaultValue = "50") int limit,
+			@RequestParam(required = false) String searchAfter,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		Page<ReferenceSetMember> members = memberService.findMembers(
@@ -52,7 +54,8 @@ public class ReferenceSetMemberController {
 				referencedComponentId,
 				targetComponent,
 				mapTarget,
-				ControllerHelper.getPageRequest(offset, limit)
+				ControllerHelper.getPageRequest(offset, limit),
+				searchAfter
 		);
 		joinReferencedComponents(members.getContent(), ControllerHelper.getLanguageCodes(acceptLanguageHeader), branch);
 		return new ItemsPage<>(members);
@@ -91,4 +94,13 @@ public class ReferenceSetMemberController {
 		memberService.deleteMember(BranchPathUriUtil.decodePath(branch), uuid);
 	}
 
+	@RequestMapping(value = "/{branch}/members/actions/backfill-denormalised-fields", method = RequestMethod.POST)
+	@ApiOperation(value = "Set the referencedComponentType and conceptId fields on existing members of this branch.",
+			notes = "Only required for members indexed before these fields were introduced. Only members changed on this branch are updated, " +
+					"within a single commit. Run on MAIN first and then on any branch with content of its own. " +
+					"Members which have not been updated are still found by reference set queries, using a slower identifier pattern match.")
+	public void backfillDenormalisedFields(@PathVariable String branch) {
+		memberService.backfillDenormalisedFields(BranchPathUriUtil.decodePath(branch));
+	}
+
 }
@@ -53,6 +53,7 @@ public class RelationshipController {
 			@RequestParam(required = false) Integer group,
 			@RequestParam(defaultValue = "0") int offset,
 			@RequestParam(defaultValue = "50") int limit,
+			@RequestParam(required = false) String searchAfter,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
 		branch = BranchPathUriUtil.decodePath(branch);
@@ -68,7 +69,8 @@ public class RelationshipController {
 				destination,
 				characteristicType != null ? characteristicType.getCharacteristicType() : null,
 				group,
-				ControllerHelper.getPageRequest(offset, limit));
+				ControllerHelper.getPageRequest(offset, limit),
+				searchAfter);
 
 		expandSourceTypeAndDestination(branch, relationshipPage.getContent(), languageCodes);
 
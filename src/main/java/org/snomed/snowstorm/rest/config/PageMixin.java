@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.rest.config;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import org.snomed.snowstorm.rest.View;
@@ -40,6 +41,10 @@ public abstract class PageMixin {
 	@JsonView(value = View.Component.class)
 	abstract Map<String, Map<String, Long>> getFilters();
 
+	@JsonView(value = View.Component.class)
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	abstract String getSearchAfter();
+
 	@JsonIgnore
 	abstract Sort getSort();
 
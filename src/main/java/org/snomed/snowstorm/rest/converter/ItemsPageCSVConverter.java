@@ -39,72 +39,14 @@ public class ItemsPageCSVConverter extends AbstractGenericHttpMessageConverter<I
 			if (!items.isEmpty()) {
 				Object item = items.iterator().next();
 				if (ConceptMini.class.isAssignableFrom(item.getClass())) {
-					writer.write("id\tfsn\teffectiveTime\tactive\tmoduleId\tdefinitionStatus");
-					writer.newLine();
+					writeConceptMiniHeader(writer);
 					for (ConceptMini concept : (Collection<ConceptMini>) items) {
-						writer.write(concept.getConceptId());
-						writer.write(TAB);
-						writer.write(concept.getFsn());
-						writer.write(TAB);
-						writer.write(concept.getEffectiveTime());
-						writer.write(TAB);
-						writer.write(concept.getActive() != null ? concept.getActive().toString() : "");
-						writer.write(TAB);
-						writer.write(concept.getModuleId());
-						writer.write(TAB);
-						writer.write(concept.getDefinitionStatus());
-						writer.newLine();
+						writeConceptMini(concept, writer);
 					}
 				} else if (RelationshipChange.class.isAssignableFrom(item.getClass())) {
-					writer.write("changeNature\tsourceId\tsourceFsn\ttypeId\ttypeFsn\tdestinationId\tdestinationFsn\tdestinationNegated\tcharacteristicTypeId\tgroup\tid\tunionGroup\tmodifier");
-					writer.newLine();
+					writeRelationshipChangeHeader(writer);
 					for (RelationshipChange change : (Collection<RelationshipChange>) items) {
-						// changeNature
-						writer.write(change.getChangeNature().toString());
-						writer.write(TAB);
-						// sourceId
-						writer.write(change.getSourceId());
-						writer.write(TAB);
-						// sourceFsn
-						writer.write("\"");
-						writer.write(change.getSourceFsn());
-						writer.write("\"");
-						writer.write(TAB);
-						// typeId
-						writer.write(change.getTypeId());
-						writer.write(TAB);
-						// typeFsn
-						writer.write("\"");
-						writer.write(change.getTypeFsn());
-						writer.write("\"");
-						writer.write(TAB);
-						// destinationId
-						writer.write(change.getDestinationId());
-						writer.write(TAB);
-						// destinationFsn
-						writer.write("\"");
-						writer.write(change.getDestinationFsn());
-						writer.write("\"");
-						writer.write(TAB);
-						// destinationNegated
-						writer.write("false");
-						writer.write(TAB);
-						// characteristicTypeId
-						writer.write(Concepts.INFERRED_RELATIONSHIP);
-						writer.write(TAB);
-						// group
-						writer.write(change.getGroup() + "");
-						writer.write(TAB);
-						// id
-						writer.write(change.getRelationshipId());
-						writer.write(TAB);
-						// unionGroup
-						writer.write(change.getUnionGroup() + "");
-						writer.write(TAB);
-						// modifier
-						writer.write("EXISTENTIAL");
-						writer.write(TAB);
-						writer.newLine();
+						writeRelationshipChange(change, writer);
 					}
 				} else {
 					writer.write("No rows");
@@ -114,6 +56,84 @@ public class ItemsPageCSVConverter extends AbstractGenericHttpMessageConverter<I
 		}
 	}
 
+	public static void writeConceptMiniHeader(BufferedWriter writer) throws IOException {
+		writer.write("id\tfsn\teffectiveTime\tactive\tmoduleId\tdefinitionStatus");
+		writer.newLine();
+	}
+
+	public static void writeConceptMini(ConceptMini concept, BufferedWriter writer) throws IOException {
+		writeValue(concept.getConceptId(), writer);
+		writer.write(TAB);
+		writeValue(concept.getFsn(), writer);
+		writer.write(TAB);
+		writeValue(concept.getEffectiveTime(), writer);
+		writer.write(TAB);
+		writer.write(concept.getActive() != null ? concept.getActive().toString() : "");
+		writer.write(TAB);
+		writeValue(concept.getModuleId(), writer);
+		writer.write(TAB);
+		writeValue(concept.getDefinitionStatus(), writer);
+		writer.newLine();
+	}
+
+	public static void writeRelationshipChangeHeader(BufferedWriter writer) throws IOException {
+		writer.write("changeNature\tsourceId\tsourceFsn\ttypeId\ttypeFsn\tdestinationId\tdestinationFsn\tdestinationNegated\tcharacteristicTypeId\tgroup\tid\tunionGroup\tmodifier");
+		writer.newLine();
+	}
+
+	public static void writeRelationshipChange(RelationshipChange change, BufferedWriter writer) throws IOException {
+		// changeNature
+		writer.write(change.getChangeNature().toString());
+		writer.write(TAB);
+		// sourceId
+		writeValue(change.getSourceId(), writer);
+		writer.write(TAB);
+		// sourceFsn
+		writer.write("\"");
+		writeValue(change.getSourceFsn(), writer);
+		writer.write("\"");
+		writer.write(TAB);
+		// typeId
+		writeValue(change.getTypeId(), writer);
+		writer.write(TAB);
+		// typeFsn
+		writer.write("\"");
+		writeValue(change.getTypeFsn(), writer);
+		writer.write("\"");
+		writer.write(TAB);
+		// destinationId
+		writeValue(change.getDestinationId(), writer);
+		writer.write(TAB);
+		// destinationFsn
+		writer.write("\"");
+		writeValue(change.getDestinationFsn(), writer);
+		writer.write("\"");
+		writer.write(TAB);
+		// destinationNegated
+		writer.write("false");
+		writer.write(TAB);
+		// characteristicTypeId
+		writer.write(Concepts.INFERRED_RELATIONSHIP);
+		writer.write(TAB);
+		// group
+		writer.write(change.getGroup() + "");
+		writer.write(TAB);
+		// id
+		writeValue(change.getRelationshipId(), writer);
+		writer.write(TAB);
+		// unionGroup
+		writer.write(change.getUnionGroup() + "");
+		writer.write(TAB);
+		// modifier
+		writer.write("EXISTENTIAL");
+		writer.write(TAB);
+		writer.newLine();
+	}
+
+	private static void writeValue(String value, BufferedWriter writer) throws IOException {
+		writer.write(value != null ? value : "");
+	}
+
 	@Override
 	public ItemsPage<ConceptMini> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws HttpMessageNotReadableException {
 		return new ItemsPage<>(new HashSet<>());
@@ -1,6 +1,8 @@
 package org.snomed.snowstorm.rest.pojo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonView;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
 import org.snomed.snowstorm.rest.View;
 import org.springframework.data.domain.Page;
 
@@ -12,6 +14,7 @@ public class ItemsPage<T> {
 	private final long total;
 	private final long limit;
 	private final long offset;
+	private String searchAfter;
 
 	public ItemsPage(Collection<T> items) {
 		this.items = items;
@@ -31,7 +34,13 @@ public class ItemsPage<T> {
 		this.items = page.getContent();
 		this.limit = page.getSize();
 		this.total = page.getTotalElements();
-		this.offset = page.getNumber() * (long)page.getSize();
+		if (page instanceof SearchAfterPage) {
+			// The page may have been fetched with a token rather than an offset, the pageable knows its position either way
+			this.offset = page.getPageable().getOffset();
+			this.searchAfter = ((SearchAfterPage<T>) page).getSearchAfter();
+		} else {
+			this.offset = page.getNumber() * (long)page.getSize();
+		}
 	}
 
 	@JsonView(View.Component.class)
@@ -53,4 +62,10 @@ public class ItemsPage<T> {
 	public long getOffset() {
 		return offset;
 	}
+
+	@JsonView(View.Component.class)
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public String getSearchAfter() {
+		return searchAfter;
+	}
 }
@@ -6,7 +6,6 @@ import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.snomed.snowstorm.rest.converter.AggregationNameConverter;
 import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
 
@@ -17,9 +16,11 @@ import java.util.Map;
 public class PageWithFilters<T> extends PageImpl<T> {
 
 	private Map<String, Map<String, Long>> filters;
+	private String searchAfter;
 
-	public PageWithFilters(List<T> results, PageRequest pageRequest, long totalElements, Aggregations aggregations, AggregationNameConverter... nameConverters) {
-		this(results, pageRequest, totalElements, createFilters(aggregations, nameConverters));
+	public PageWithFilters(List<T> results, Pageable pageable, long totalElements, Aggregations aggregations, String searchAfter, AggregationNameConverter... nameConverters) {
+		this(results, pageable, totalElements, createFilters(aggregations, nameConverters));
+		this.searchAfter = searchAfter;
 	}
 
 	public PageWithFilters(List<T> content, Pageable pageable, long total, Map<String, Map<String, Long>> filters) {
@@ -61,4 +62,8 @@ public class PageWithFilters<T> extends PageImpl<T> {
 	public Map<String, Map<String, Long>> getFilters() {
 		return filters;
 	}
+
+	public String getSearchAfter() {
+		return searchAfter;
+	}
 }
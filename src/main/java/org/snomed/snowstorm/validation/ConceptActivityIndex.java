@@ -0,0 +1,61 @@
+package org.snomed.snowstorm.validation;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Active flags of the concepts referenced by one validation run, loaded in bulk before the rules run.
+ */
+class ConceptActivityIndex {
+
+	private final LongSet prefetchedIds;
+	private final LongSet activeIds;
+	private final LongSet inactiveIds;
+
+	ConceptActivityIndex() {
+		this(Collections.emptySet(), new LongOpenHashSet(), new LongOpenHashSet());
+	}
+
+	ConceptActivityIndex(Collection<String> prefetchedIds, LongSet activeIds, LongSet inactiveIds) {
+		this.prefetchedIds = new LongOpenHashSet(prefetchedIds.size());
+		prefetchedIds.forEach(conceptId -> this.prefetchedIds.add(Long.parseLong(conceptId)));
+		this.activeIds = activeIds;
+		this.inactiveIds = inactiveIds;
+	}
+
+	boolean isPrefetched(String conceptId) {
+		return isLong(conceptId) && prefetchedIds.contains(Long.parseLong(conceptId));
+	}
+
+	/**
+	 * @return the active flag of the concept or null if the concept was not prefetched or does not exist.
+	 */
+	Boolean isActive(String conceptId) {
+		if (!isPrefetched(conceptId)) {
+			return null;
+		}
+		long id = Long.parseLong(conceptId);
+		if (activeIds.contains(id)) {
+			return true;
+		}
+		if (inactiveIds.contains(id)) {
+			return false;
+		}
+		return null;
+	}
+
+	private boolean isLong(String conceptId) {
+		if (conceptId == null || conceptId.isEmpty() || conceptId.length() > 18) {
+			return false;
+		}
+		for (int i = 0; i < conceptId.length(); i++) {
+			if (!Character.isDigit(conceptId.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -17,7 +17,9 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilde
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -30,16 +32,31 @@ public class ConceptDroolsValidationService implements org.ihtsdo.drools.service
 	private final BranchCriteria branchCriteria;
 	private final ElasticsearchOperations elasticsearchTemplate;
 	private final QueryService queryService;
+	private final DroolsValidationContext context;
+	private final Map<String, Set<String>> eclResults = new ConcurrentHashMap<>();
 
 	ConceptDroolsValidationService(String branchPath, BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate, QueryService queryService) {
+		this(branchPath, branchCriteria, elasticsearchTemplate, queryService, new DroolsValidationContext(Collections.emptySet()));
+	}
+
+	ConceptDroolsValidationService(String branchPath, BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate, QueryService queryService,
+			DroolsValidationContext context) {
 		this.branchPath = branchPath;
 		this.branchCriteria = branchCriteria;
 		this.elasticsearchTemplate = elasticsearchTemplate;
 		this.queryService = queryService;
+		this.context = context;
 	}
 
 	@Override
 	public boolean isActive(String conceptId) {
+		Boolean prefetchedActive = context.getConceptActivityIndex().isActive(conceptId);
+		if (prefetchedActive != null) {
+			return prefetchedActive;
+		}
+		if (context.getConceptActivityIndex().isPrefetched(conceptId)) {
+			throw new RuleExecutorException(String.format("Concept '%s' not found on branch '%s'", conceptId, branchPath));
+		}
 		NativeSearchQuery query = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
@@ -67,6 +84,11 @@ public class ConceptDroolsValidationService implements org.ihtsdo.drools.service
 			return Collections.emptySet();
 		}
 
+		Set<String> prefetchedAncestors = context.getStatedSelfOrAncestorIds(statedParents);
+		if (prefetchedAncestors != null) {
+			return prefetchedAncestors;
+		}
+
 		StringBuilder ecl = new StringBuilder();
 		Iterator<String> iterator = statedParents.iterator();
 		for (int i = 0; i < statedParents.size(); i++) {
@@ -116,8 +138,10 @@ public class ConceptDroolsValidationService implements org.ihtsdo.drools.service
 		if (statedParentIds.size() > 1) {
 			eclBuilder.append(")");
 		}
-		Page<Long> idPage = queryService.searchForIds(queryService.createQueryBuilder(true).ecl(eclBuilder.toString()), branchPath, LARGE_PAGE);
-		return idPage.getContent().stream().map(Object::toString).collect(Collectors.toSet());
+		return eclResults.computeIfAbsent("ids|" + eclBuilder, key -> {
+			Page<Long> idPage = queryService.searchForIds(queryService.createQueryBuilder(true).ecl(eclBuilder.toString()), branchPath, LARGE_PAGE);
+			return idPage.getContent().stream().map(Object::toString).collect(Collectors.toSet());
+		});
 	}
 
 	private Set<String> getStatedParents(org.ihtsdo.drools.domain.Concept concept) {
@@ -128,9 +152,12 @@ public class ConceptDroolsValidationService implements org.ihtsdo.drools.service
 	}
 
 	private Set<String> getConceptIdsByEcl(boolean stated, String ecl) {
-		Page<ConceptMini> directDescendantsOfRoot = queryService.search(
-				queryService.createQueryBuilder(stated).ecl(ecl),
-				branchPath, PageRequest.of(0, 1000));
-		return directDescendantsOfRoot.getContent().stream().map(ConceptMini::getConceptId).collect(Collectors.toSet());
+		// Results are kept for the duration of the validation run
+		return eclResults.computeIfAbsent(stated + "|" + ecl, key -> {
+			Page<ConceptMini> directDescendantsOfRoot = queryService.search(
+					queryService.createQueryBuilder(stated).ecl(ecl),
+					branchPath, PageRequest.of(0, 1000));
+			return directDescendantsOfRoot.getContent().stream().map(ConceptMini::getConceptId).collect(Collectors.toSet());
+		});
 	}
 }
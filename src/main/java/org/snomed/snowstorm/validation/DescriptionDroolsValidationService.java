@@ -1,9 +1,9 @@
 package org.snomed.snowstorm.validation;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
-import io.kaicode.elasticvc.api.VersionControlHelper;
-import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.ihtsdo.drools.domain.Concept;
 import org.ihtsdo.drools.domain.Constants;
 import org.ihtsdo.drools.domain.Description;
@@ -15,10 +15,10 @@ import org.snomed.snowstorm.core.data.services.DescriptionService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.validation.domain.DroolsDescription;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.util.CloseableIterator;
 
 import javax.annotation.PostConstruct;
 import java.io.BufferedReader;
@@ -28,38 +28,48 @@ import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 
 public class DescriptionDroolsValidationService implements org.ihtsdo.drools.service.DescriptionService {
 
-	private final VersionControlHelper versionControlHelper;
 	private String branchPath;
 	private final BranchCriteria branchCriteria;
 	private ElasticsearchOperations elasticsearchTemplate;
 	private final DescriptionService descriptionService;
 	private final QueryService queryService;
+	private final DroolsValidationContext context;
 
 	@Value("${validation.resourceFiles.path}")
 	private String testResourcesPath;
 
-	private static Set<String> hierarchyRootIds;
 	private static final Map<String, Set<String>> refsetToLanguageSpecificWordsMap = new HashMap<>();
 	private static final Set<String> caseSignificantWords = new HashSet<>();
+	private static final int TERM_QUERY_BATCH_SIZE = 100;
 	private static final Logger LOGGER = LoggerFactory.getLogger(DescriptionDroolsValidationService.class);
 
 	DescriptionDroolsValidationService(String branchPath,
 			BranchCriteria branchCriteria,
-			VersionControlHelper versionControlHelper,
 			ElasticsearchOperations elasticsearchTemplate,
 			DescriptionService descriptionService,
 			QueryService queryService) {
 
+		this(branchPath, branchCriteria, elasticsearchTemplate, descriptionService, queryService, new DroolsValidationContext(Collections.emptySet()));
+	}
+
+	DescriptionDroolsValidationService(String branchPath,
+			BranchCriteria branchCriteria,
+			ElasticsearchOperations elasticsearchTemplate,
+			DescriptionService descriptionService,
+			QueryService queryService,
+			DroolsValidationContext context) {
+
 		this.branchPath = branchPath;
 		this.branchCriteria = branchCriteria;
-		this.versionControlHelper = versionControlHelper;
 		this.elasticsearchTemplate = elasticsearchTemplate;
 		this.descriptionService = descriptionService;
 		this.queryService = queryService;
+		this.context = context;
 	}
 
 	@PostConstruct
@@ -71,6 +81,10 @@ public class DescriptionDroolsValidationService implements org.ihtsdo.drools.ser
 
 	@Override
 	public Set<String> getFSNs(Set<String> conceptIds, String... languageRefsetIds) {
+		Set<String> prefetchedFSNs = context.getFSNs(conceptIds);
+		if (prefetchedFSNs != null) {
+			return prefetchedFSNs;
+		}
 		return descriptionService.findDescriptions(branchPath, conceptIds).stream()
 				.filter(d -> d.getTypeId().equals(Concepts.FSN))
 				.map(org.snomed.snowstorm.core.data.domain.Description::getTerm)
@@ -101,24 +115,89 @@ public class DescriptionDroolsValidationService implements org.ihtsdo.drools.ser
 
 	@Override
 	public Set<org.ihtsdo.drools.domain.Description> findMatchingDescriptionInHierarchy(org.ihtsdo.drools.domain.Concept concept, org.ihtsdo.drools.domain.Description description) {
-		Set<Description> matchingDescriptions = findActiveDescriptionByExactTerm(description.getTerm())
-				.stream().filter(d -> d.getLanguageCode().equals(description.getLanguageCode())).collect(Collectors.toSet());
+		String term = description.getTerm();
+		if (term == null || term.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		// Find root for this concept
+		String conceptHierarchyRootId = findStatedHierarchyRootId(concept);
+		if (conceptHierarchyRootId == null) {
+			return Collections.emptySet();
+		}
+		LOGGER.debug("Found stated hierarchy id {}", conceptHierarchyRootId);
 
-		if (!matchingDescriptions.isEmpty()) {
-			// Filter matching descriptions by hierarchy
+		String termKey = toTermKey(description.getLanguageCode(), term);
+		List<org.snomed.snowstorm.core.data.domain.Description> matchingDescriptions = context.getActiveDescriptionsByTerm(termKey);
+		if (matchingDescriptions == null) {
+			matchingDescriptions = findActiveDescriptionsByTerm(Collections.singleton(description), branchCriteria, elasticsearchTemplate).get(termKey);
+		}
+		if (matchingDescriptions.isEmpty()) {
+			return Collections.emptySet();
+		}
 
-			// Find root for this concept
-			String conceptHierarchyRootId = findStatedHierarchyRootId(concept);
-			if (conceptHierarchyRootId != null) {
-				LOGGER.info("Found stated hierarchy id {}", conceptHierarchyRootId);
+		// Filter matching descriptions by hierarchy using the stated ancestors of their concepts
+		Set<Long> matchingConceptIds = matchingDescriptions.stream()
+				.map(d -> Long.parseLong(d.getConceptId())).collect(Collectors.toSet());
+		Map<Long, Set<Long>> prefetchedAncestorIds = context.getTermMatchStatedAncestorIds(matchingConceptIds);
+		Map<Long, Set<Long>> ancestorIds = prefetchedAncestorIds != null ? prefetchedAncestorIds
+				: queryService.findAncestorIdsMap(branchCriteria, true, matchingConceptIds);
+		Long hierarchyRootId = Long.parseLong(conceptHierarchyRootId);
+		return matchingDescriptions.stream()
+				.filter(d -> ancestorIds.getOrDefault(Long.parseLong(d.getConceptId()), Collections.emptySet()).contains(hierarchyRootId))
+				.map(DroolsDescription::new)
+				.collect(Collectors.toSet());
+	}
 
-				return matchingDescriptions.stream().filter(d -> {
-					Set<Long> matchingDescriptionAncestors = queryService.findAncestorIds(d.getConceptId(), branchPath, true);
-					return matchingDescriptionAncestors.contains(new Long(conceptHierarchyRootId));
-				}).collect(Collectors.toSet());
+	/**
+	 * Active descriptions with the same term and language as any of the given descriptions, keyed by {@link #toTermKey(String, String)}.
+	 * Every term is a key, with an empty list if there are no matches.
+	 */
+	static Map<String, List<org.snomed.snowstorm.core.data.domain.Description>> findActiveDescriptionsByTerm(Collection<? extends Description> descriptions,
+			BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate) {
+
+		Map<String, Description> descriptionsByTerm = new HashMap<>();
+		for (Description description : descriptions) {
+			String term = description.getTerm();
+			if (term != null && !term.isEmpty()) {
+				descriptionsByTerm.putIfAbsent(toTermKey(description.getLanguageCode(), term), description);
 			}
 		}
-		return Collections.emptySet();
+		Map<String, List<org.snomed.snowstorm.core.data.domain.Description>> matchesByTerm = new HashMap<>();
+		descriptionsByTerm.keySet().forEach(termKey -> matchesByTerm.put(termKey, new ArrayList<>()));
+
+		// The phrase and length narrow the match in the index, equality is checked here.
+		for (List<Description> descriptionsSegment : Iterables.partition(descriptionsByTerm.values(), TERM_QUERY_BATCH_SIZE)) {
+			BoolQueryBuilder termClauses = boolQuery();
+			for (Description description : descriptionsSegment) {
+				termClauses.should(boolQuery()
+						.must(termQuery(org.snomed.snowstorm.core.data.domain.Description.Fields.LANGUAGE_CODE, description.getLanguageCode()))
+						.must(termQuery(org.snomed.snowstorm.core.data.domain.Description.Fields.TERM_LEN, description.getTerm().length()))
+						.must(matchPhraseQuery(org.snomed.snowstorm.core.data.domain.Description.Fields.TERM, description.getTerm())));
+			}
+			NativeSearchQuery descriptionQuery = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(org.snomed.snowstorm.core.data.domain.Description.class))
+							.must(termQuery(org.snomed.snowstorm.core.data.domain.Description.Fields.ACTIVE, true))
+							.must(termClauses)
+					)
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<org.snomed.snowstorm.core.data.domain.Description> stream =
+						 elasticsearchTemplate.stream(descriptionQuery, org.snomed.snowstorm.core.data.domain.Description.class)) {
+				stream.forEachRemaining(match -> {
+					List<org.snomed.snowstorm.core.data.domain.Description> matches = matchesByTerm.get(toTermKey(match.getLanguageCode(), match.getTerm()));
+					if (matches != null) {
+						matches.add(match);
+					}
+				});
+			}
+		}
+		return matchesByTerm;
+	}
+
+	static String toTermKey(String languageCode, String term) {
+		return languageCode + "|" + term;
 	}
 
 	@Override
@@ -224,23 +303,28 @@ public class DescriptionDroolsValidationService implements org.ihtsdo.drools.ser
 	}
 
 	private String findStatedHierarchyRootId(org.ihtsdo.drools.domain.Concept concept) {
-		Set<? extends org.ihtsdo.drools.domain.Relationship> statedIsARelationships = concept.getRelationships().stream().filter(r -> r.isActive()
+		Set<String> statedParentIds = concept.getRelationships().stream().filter(r -> r.isActive()
 				&& Concepts.STATED_RELATIONSHIP.equals(r.getCharacteristicTypeId())
-				&& Concepts.ISA.equals(r.getTypeId())).collect(Collectors.toSet());
+				&& Concepts.ISA.equals(r.getTypeId()))
+				.map(Relationship::getDestinationId)
+				.collect(Collectors.toSet());
 
-		if (statedIsARelationships.isEmpty()) {
+		if (statedParentIds.isEmpty()) {
 			return null;
 		}
 
-		Set<String> hierarchyRootIds = findHierarchyRootsOnMAIN();
-		Sets.SetView<String> statedHierarchyRoot = Sets.intersection(hierarchyRootIds, statedIsARelationships);
+		Set<String> hierarchyRootIds = findHierarchyRootIds();
+		Sets.SetView<String> statedHierarchyRoot = Sets.intersection(hierarchyRootIds, statedParentIds);
 		if (!statedHierarchyRoot.isEmpty()) {
 			return statedHierarchyRoot.iterator().next();
 		}
 
 		// Search ancestors of stated is-a relationships
-		String firstStatedParentId = statedIsARelationships.iterator().next().getDestinationId();
-		Set<Long> statedAncestors = queryService.findAncestorIds(firstStatedParentId, branchPath, true);
+		String firstStatedParentId = statedParentIds.iterator().next();
+		Set<String> statedAncestors = context.getStatedSelfOrAncestorIds(Collections.singleton(firstStatedParentId));
+		if (statedAncestors == null) {
+			statedAncestors = queryService.findAncestorIds(firstStatedParentId, branchPath, true).stream().map(Object::toString).collect(Collectors.toSet());
+		}
 		statedHierarchyRoot = Sets.intersection(hierarchyRootIds, statedAncestors);
 		if (!statedHierarchyRoot.isEmpty()) {
 			return statedHierarchyRoot.iterator().next();
@@ -249,25 +333,22 @@ public class DescriptionDroolsValidationService implements org.ihtsdo.drools.ser
 		return null;
 	}
 
-	private Set<String> findHierarchyRootsOnMAIN() {
+	private Set<String> findHierarchyRootIds() {
+		Set<String> hierarchyRootIds = context.getHierarchyRootIds();
 		if (hierarchyRootIds == null) {
-			synchronized (DescriptionDroolsValidationService.class) {
-				QueryBuilder mainBranchCriteria = versionControlHelper.getBranchCriteria("MAIN").getEntityBranchCriteria(org.snomed.snowstorm.core.data.domain.Description.class);
-				NativeSearchQuery query = new NativeSearchQueryBuilder()
-						.withQuery(boolQuery()
-								.must(mainBranchCriteria)
-								.must(termQuery("active", true))
-								.must(termQuery("characteristicTypeId", Concepts.INFERRED_RELATIONSHIP))
-								.must(termQuery("destinationId", Concepts.SNOMEDCT_ROOT)))
-						.withPageable(PageRequest.of(0, 1000))
-						.build();
-				List<Relationship> relationships = elasticsearchTemplate.queryForList(query, Relationship.class);
-				hierarchyRootIds = relationships.stream().map(Relationship::getSourceId).collect(Collectors.toSet());
-			}
+			hierarchyRootIds = findHierarchyRootIds(queryService, branchCriteria);
 		}
 		return hierarchyRootIds;
 	}
 
+	static Set<String> findHierarchyRootIds(QueryService queryService, BranchCriteria branchCriteria) {
+		Long rootId = Long.parseLong(Concepts.SNOMEDCT_ROOT);
+		return queryService.findChildIdsMap(branchCriteria, true, Collections.singleton(rootId))
+				.getOrDefault(rootId, Collections.emptySet()).stream()
+				.map(Object::toString)
+				.collect(Collectors.toSet());
+	}
+
 	private void loadRefsetSpecificWords(String refsetId, String testResourcesPath, String fileName) {
 		Set<String> words = new HashSet<>();
 		File file = new File(testResourcesPath, fileName);
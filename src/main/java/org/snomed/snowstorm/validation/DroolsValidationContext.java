@@ -0,0 +1,130 @@
+package org.snomed.snowstorm.validation;
+
+import org.ihtsdo.drools.domain.Concept;
+import org.ihtsdo.drools.domain.Relationship;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+
+import java.util.*;
+
+/**
+ * Content needed by the rules for one batch of concepts under validation, fetched with bulk queries before the rules run.
+ * Lookups outside of the prefetched concepts return null so that the caller can fall back to a query.
+ */
+class DroolsValidationContext {
+
+	private final Set<String> referencedConceptIds;
+	private Map<Long, Set<Long>> statedAncestorIds = Collections.emptyMap();
+	private Map<String, Set<String>> activeRelationshipTypeIds = Collections.emptyMap();
+	private Map<String, Set<String>> fsnTerms = Collections.emptyMap();
+	private Map<String, List<Description>> activeDescriptionsByTerm = Collections.emptyMap();
+	private Map<Long, Set<Long>> termMatchStatedAncestorIds = Collections.emptyMap();
+	private Set<String> hierarchyRootIds;
+	private ConceptActivityIndex conceptActivityIndex = new ConceptActivityIndex();
+
+	DroolsValidationContext(Collection<? extends Concept> concepts) {
+		referencedConceptIds = new HashSet<>();
+		for (Concept concept : concepts) {
+			addIfConceptId(concept.getId());
+			for (Relationship relationship : concept.getRelationships()) {
+				addIfConceptId(relationship.getDestinationId());
+				addIfConceptId(relationship.getTypeId());
+			}
+		}
+	}
+
+	private void addIfConceptId(String conceptId) {
+		if (IdentifierService.isConceptId(conceptId)) {
+			referencedConceptIds.add(conceptId);
+		}
+	}
+
+	Set<String> getReferencedConceptIds() {
+		return referencedConceptIds;
+	}
+
+	void setStatedAncestorIds(Map<Long, Set<Long>> statedAncestorIds) {
+		this.statedAncestorIds = statedAncestorIds;
+	}
+
+	void setActiveRelationshipTypeIds(Map<String, Set<String>> activeRelationshipTypeIds) {
+		this.activeRelationshipTypeIds = activeRelationshipTypeIds;
+	}
+
+	void setFsnTerms(Map<String, Set<String>> fsnTerms) {
+		this.fsnTerms = fsnTerms;
+	}
+
+	void setActiveDescriptionsByTerm(Map<String, List<Description>> activeDescriptionsByTerm) {
+		this.activeDescriptionsByTerm = activeDescriptionsByTerm;
+	}
+
+	void setTermMatchStatedAncestorIds(Map<Long, Set<Long>> termMatchStatedAncestorIds) {
+		this.termMatchStatedAncestorIds = termMatchStatedAncestorIds;
+	}
+
+	void setConceptActivityIndex(ConceptActivityIndex conceptActivityIndex) {
+		this.conceptActivityIndex = conceptActivityIndex;
+	}
+
+	ConceptActivityIndex getConceptActivityIndex() {
+		return conceptActivityIndex;
+	}
+
+	void setHierarchyRootIds(Set<String> hierarchyRootIds) {
+		this.hierarchyRootIds = hierarchyRootIds;
+	}
+
+	Set<String> getHierarchyRootIds() {
+		return hierarchyRootIds;
+	}
+
+	/**
+	 * Stated self and ancestors of the given concepts, only active concepts are included.
+	 */
+	Set<String> getStatedSelfOrAncestorIds(Set<String> conceptIds) {
+		if (!referencedConceptIds.containsAll(conceptIds)) {
+			return null;
+		}
+		Set<String> selfOrAncestorIds = new HashSet<>();
+		for (String conceptId : conceptIds) {
+			Set<Long> ancestorIds = statedAncestorIds.get(Long.parseLong(conceptId));
+			if (ancestorIds != null) {
+				selfOrAncestorIds.add(conceptId);
+				ancestorIds.forEach(ancestorId -> selfOrAncestorIds.add(ancestorId.toString()));
+			}
+		}
+		return selfOrAncestorIds;
+	}
+
+	Boolean hasActiveRelationship(String sourceId, String typeId) {
+		if (!referencedConceptIds.contains(sourceId)) {
+			return null;
+		}
+		Set<String> typeIds = activeRelationshipTypeIds.getOrDefault(sourceId, Collections.emptySet());
+		return typeId == null || typeId.isEmpty() ? !typeIds.isEmpty() : typeIds.contains(typeId);
+	}
+
+	Set<String> getFSNs(Set<String> conceptIds) {
+		if (!referencedConceptIds.containsAll(conceptIds)) {
+			return null;
+		}
+		Set<String> terms = new HashSet<>();
+		conceptIds.forEach(conceptId -> terms.addAll(fsnTerms.getOrDefault(conceptId, Collections.emptySet())));
+		return terms;
+	}
+
+	List<Description> getActiveDescriptionsByTerm(String termKey) {
+		return activeDescriptionsByTerm.get(termKey);
+	}
+
+	/**
+	 * Stated ancestors of concepts with descriptions matching a prefetched term.
+	 */
+	Map<Long, Set<Long>> getTermMatchStatedAncestorIds(Set<Long> conceptIds) {
+		if (!termMatchStatedAncestorIds.keySet().containsAll(conceptIds)) {
+			return null;
+		}
+		return termMatchStatedAncestorIds;
+	}
+}
@@ -1,29 +1,47 @@
 package org.snomed.snowstorm.validation;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
-import org.elasticsearch.index.query.QueryBuilder;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.ihtsdo.drools.RuleExecutor;
 import org.ihtsdo.drools.response.InvalidContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.core.data.services.BranchMetadataKeys;
 import org.snomed.snowstorm.core.data.services.DescriptionService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.validation.domain.DroolsConcept;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
 @Service
 public class DroolsValidationService {
 
@@ -44,8 +62,16 @@ public class DroolsValidationService {
 
 	private RuleExecutor ruleExecutor;
 
+	// Top level hierarchy concepts, keyed by branch path and head timestamp
+	private final Cache<String, Set<String>> hierarchyRootIdsCache = CacheBuilder.newBuilder()
+			.maximumSize(100)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
 	private String droolsRulesPath;
 
+	private static final SourceFilter CONCEPT_ACTIVITY_SOURCE_FILTER = new FetchSourceFilter(new String[] {Concept.Fields.CONCEPT_ID, Concept.Fields.ACTIVE}, null);
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public DroolsValidationService(@Value("${validation.drools.rules.path}") String droolsRulesPath) {
@@ -74,12 +100,86 @@ public class DroolsValidationService {
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchWithInheritedMetadata);
 		Set<DroolsConcept> droolsConcepts = concepts.stream().map(DroolsConcept::new).collect(Collectors.toSet());
 
-		ConceptDroolsValidationService conceptService = new ConceptDroolsValidationService(branchPath, branchCriteria, elasticsearchOperations, queryService);
-		DescriptionDroolsValidationService descriptionService = new DescriptionDroolsValidationService(branchPath, branchCriteria, versionControlHelper, elasticsearchOperations, this.descriptionService, queryService);
-		RelationshipDroolsValidationService relationshipService = new RelationshipDroolsValidationService(branchCriteria, elasticsearchOperations);
+		DroolsValidationContext context = prefetchValidationContext(droolsConcepts, branchPath, branchCriteria);
+		try {
+			context.setHierarchyRootIds(hierarchyRootIdsCache.get(branchPath + "|" + branchWithInheritedMetadata.getHeadTimestamp(),
+					() -> DescriptionDroolsValidationService.findHierarchyRootIds(queryService, branchCriteria)));
+		} catch (ExecutionException e) {
+			throw new ServiceException("Failed to load hierarchy roots for branch " + branchPath, e);
+		}
+
+		ConceptDroolsValidationService conceptService = new ConceptDroolsValidationService(branchPath, branchCriteria, elasticsearchOperations, queryService, context);
+		DescriptionDroolsValidationService descriptionService = new DescriptionDroolsValidationService(branchPath, branchCriteria, elasticsearchOperations, this.descriptionService, queryService, context);
+		RelationshipDroolsValidationService relationshipService = new RelationshipDroolsValidationService(branchCriteria, elasticsearchOperations, context);
 		return ruleExecutor.execute(ruleSetNames, droolsConcepts, conceptService, descriptionService, relationshipService, false, false);
 	}
 
+	DroolsValidationContext prefetchValidationContext(Set<DroolsConcept> droolsConcepts, String branchPath, BranchCriteria branchCriteria) {
+		TimerUtil timer = new TimerUtil("Drools validation prefetch");
+		DroolsValidationContext context = new DroolsValidationContext(droolsConcepts);
+		Set<String> conceptIds = context.getReferencedConceptIds();
+		if (conceptIds.isEmpty()) {
+			return context;
+		}
+
+		LongSet activeIds = new LongOpenHashSet();
+		LongSet inactiveIds = new LongOpenHashSet();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+							.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsSegment)))
+					.withSourceFilter(CONCEPT_ACTIVITY_SOURCE_FILTER)
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<Concept> stream = elasticsearchOperations.stream(query, Concept.class)) {
+				stream.forEachRemaining(concept -> (concept.isActive() ? activeIds : inactiveIds).add(concept.getConceptIdAsLong()));
+			}
+		}
+		context.setConceptActivityIndex(new ConceptActivityIndex(conceptIds, activeIds, inactiveIds));
+		timer.checkpoint("concept activity");
+
+		context.setStatedAncestorIds(queryService.findAncestorIdsMap(branchCriteria, true,
+				conceptIds.stream().map(Long::parseLong).collect(Collectors.toList())));
+		timer.checkpoint("stated ancestors");
+
+		Map<String, Set<String>> activeRelationshipTypeIds = new HashMap<>();
+		for (List<String> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
+							.must(termsQuery(Relationship.Fields.SOURCE_ID, conceptIdsSegment))
+							.must(termQuery(Relationship.Fields.ACTIVE, true)))
+					.withPageable(LARGE_PAGE)
+					.build();
+			try (CloseableIterator<Relationship> stream = elasticsearchOperations.stream(query, Relationship.class)) {
+				stream.forEachRemaining(relationship ->
+						activeRelationshipTypeIds.computeIfAbsent(relationship.getSourceId(), id -> new HashSet<>()).add(relationship.getTypeId()));
+			}
+		}
+		context.setActiveRelationshipTypeIds(activeRelationshipTypeIds);
+		timer.checkpoint("relationships");
+
+		Map<String, Set<String>> fsnTerms = new HashMap<>();
+		descriptionService.findDescriptions(branchPath, conceptIds).stream()
+				.filter(description -> Concepts.FSN.equals(description.getTypeId()))
+				.forEach(description -> fsnTerms.computeIfAbsent(description.getConceptId(), id -> new HashSet<>()).add(description.getTerm()));
+		context.setFsnTerms(fsnTerms);
+		timer.checkpoint("FSNs");
+
+		Map<String, List<org.snomed.snowstorm.core.data.domain.Description>> activeDescriptionsByTerm = DescriptionDroolsValidationService.findActiveDescriptionsByTerm(
+				droolsConcepts.stream().flatMap(concept -> concept.getDescriptions().stream()).collect(Collectors.toList()), branchCriteria, elasticsearchOperations);
+		context.setActiveDescriptionsByTerm(activeDescriptionsByTerm);
+		Set<Long> termMatchConceptIds = activeDescriptionsByTerm.values().stream().flatMap(Collection::stream)
+				.map(description -> Long.parseLong(description.getConceptId())).collect(Collectors.toSet());
+		Map<Long, Set<Long>> termMatchStatedAncestorIds = new HashMap<>(queryService.findAncestorIdsMap(branchCriteria, true, termMatchConceptIds));
+		termMatchConceptIds.forEach(conceptId -> termMatchStatedAncestorIds.putIfAbsent(conceptId, Collections.emptySet()));
+		context.setTermMatchStatedAncestorIds(termMatchStatedAncestorIds);
+		timer.finish();
+
+		return context;
+	}
+
 	public int reloadRules() {
 		newRuleExecutor();
 		return ruleExecutor.getTotalRulesLoaded();
@@ -9,6 +9,8 @@ import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 
+import java.util.Collections;
+
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
@@ -16,10 +18,16 @@ public class RelationshipDroolsValidationService implements org.ihtsdo.drools.se
 
 	private ElasticsearchOperations elasticsearchTemplate;
 	private BranchCriteria branchCriteria;
+	private DroolsValidationContext context;
 
 	RelationshipDroolsValidationService(BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate) {
+		this(branchCriteria, elasticsearchTemplate, new DroolsValidationContext(Collections.emptySet()));
+	}
+
+	RelationshipDroolsValidationService(BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate, DroolsValidationContext context) {
 		this.branchCriteria = branchCriteria;
 		this.elasticsearchTemplate = elasticsearchTemplate;
+		this.context = context;
 	}
 
 	@Override
@@ -29,6 +37,10 @@ public class RelationshipDroolsValidationService implements org.ihtsdo.drools.se
 
 	@Override
 	public boolean hasActiveInboundStatedRelationship(String conceptId, String relationshipTypeId) {
+		Boolean prefetched = context.hasActiveRelationship(conceptId, relationshipTypeId);
+		if (prefetched != null) {
+			return prefetched;
+		}
 		final BoolQueryBuilder builder = boolQuery()
 				.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
 				.must(termQuery("sourceId", conceptId))
@@ -8,12 +8,11 @@ import org.junit.Test;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class QueryConceptTest {
 
@@ -56,6 +55,12 @@ public class QueryConceptTest {
 		expectedAttrMap.put("1234", Sets.newHashSet("123"));
 		assertEquals(expectedAttrMap, queryConcept.getAttr());
 
+		Map<String, Integer> expectedAttrCount = new HashMap<>();
+		expectedAttrCount.put("all", 4);
+		expectedAttrCount.put("123", 3);
+		expectedAttrCount.put("1234", 1);
+		assertEquals(expectedAttrCount, queryConcept.getAttrCount());
+
 		String json = objectMapper.writeValueAsString(queryConcept);
 
 		QueryConcept queryConcept2 = objectMapper.readValue(json, QueryConcept.class);
@@ -63,4 +68,102 @@ public class QueryConceptTest {
 		assertEquals(groupedAttributesMap, queryConcept2.getGroupedAttributesMap());
 	}
 
+	@Test
+	public void testConcreteValues() throws IOException {
+		QueryConcept queryConcept = new QueryConcept();
+		queryConcept.setConceptIdL(123L);
+		queryConcept.setPath("MAIN");
+
+		queryConcept.addAttribute(0, 123L, 456L);
+		queryConcept.addAttribute(1, 1142135004L, "#250");
+		queryConcept.addAttribute(2, 1142135004L, "#12.5");
+		assertEquals("0:123=456|1:1142135004=#250|2:1142135004=#12.5", queryConcept.getAttrMap());
+
+		// Concrete values are not concept attributes
+		Map<String, Set<String>> expectedAttrMap = new HashMap<>();
+		expectedAttrMap.put("all", Sets.newHashSet("456"));
+		expectedAttrMap.put("123", Sets.newHashSet("456"));
+		assertEquals(expectedAttrMap, queryConcept.getAttr());
+
+		Map<String, Integer> expectedAttrCount = new HashMap<>();
+		expectedAttrCount.put("all", 1);
+		expectedAttrCount.put("123", 1);
+		assertEquals(expectedAttrCount, queryConcept.getAttrCount());
+
+		List<QueryConcept.NumericAttribute> attrNum = queryConcept.getAttrNum();
+		assertEquals(2, attrNum.size());
+		attrNum.sort(Comparator.comparing(QueryConcept.NumericAttribute::getGroup));
+		assertEquals("1142135004", attrNum.get(0).getType());
+		assertEquals(1, attrNum.get(0).getGroup());
+		assertEquals(250, attrNum.get(0).getValue(), 0);
+		assertEquals(2, attrNum.get(1).getGroup());
+		assertEquals(12.5, attrNum.get(1).getValue(), 0);
+
+		String json = objectMapper.writeValueAsString(queryConcept);
+		QueryConcept queryConcept2 = objectMapper.readValue(json, QueryConcept.class);
+		assertEquals(queryConcept.getGroupedAttributesMap(), queryConcept2.getGroupedAttributesMap());
+
+		queryConcept2.removeAttribute(2, 1142135004L, "#12.5");
+		assertEquals("0:123=456|1:1142135004=#250", queryConcept2.getAttrMap());
+	}
+
+	@Test
+	public void testAttributesReader() throws IOException {
+		QueryConcept queryConcept = new QueryConcept();
+		queryConcept.setConceptIdL(123L);
+		queryConcept.addAttribute(1, 363698007L, 39057004L);
+		queryConcept.addAttribute(1, 363698007L, 12738006L);
+		queryConcept.addAttribute(1, 116676008L, 72704001L);
+		queryConcept.addAttribute(2, 1142135004L, "#12.5");
+
+		String json = objectMapper.writeValueAsString(queryConcept);
+		assertFalse(json.contains("attrMap"));
+		QueryConcept queryConcept2 = objectMapper.readValue(json, QueryConcept.class);
+
+		GroupedAttributesReader reader = queryConcept2.getAttributesReader();
+		assertTrue(reader.nextGroup());
+		assertEquals(1, reader.getGroup());
+		assertTrue(reader.nextAttribute());
+		assertEquals(116676008L, reader.getType());
+		assertTrue(reader.nextValue());
+		assertFalse(reader.isConcreteValue());
+		assertEquals(72704001L, reader.getConceptValue());
+		assertFalse(reader.nextValue());
+		assertTrue(reader.nextAttribute());
+		assertEquals(363698007L, reader.getType());
+		assertTrue(reader.nextValue());
+		assertEquals(39057004L, reader.getConceptValue());
+		assertTrue(reader.nextValue());
+		assertEquals(12738006L, reader.getConceptValue());
+		assertFalse(reader.nextValue());
+		assertFalse(reader.nextAttribute());
+		assertTrue(reader.nextGroup());
+		assertEquals(2, reader.getGroup());
+		assertTrue(reader.nextAttribute());
+		assertTrue(reader.nextValue());
+		assertTrue(reader.isConcreteValue());
+		assertEquals(12.5, reader.getConcreteValue(), 0);
+		assertEquals("#12.5", reader.getValue());
+		assertFalse(reader.nextGroup());
+
+		// Unread values are skipped
+		reader.reset();
+		assertTrue(reader.nextGroup());
+		assertTrue(reader.nextGroup());
+		assertEquals(2, reader.getGroup());
+
+		assertEquals(queryConcept.getGroupedAttributesMap(), queryConcept2.getGroupedAttributesMap());
+		assertEquals(queryConcept.getAttr(), queryConcept2.getAttr());
+		assertEquals(queryConcept.getAttrCount(), queryConcept2.getAttrCount());
+	}
+
+	@Test
+	public void testReadLegacyAttrMap() throws IOException {
+		QueryConcept queryConcept = objectMapper.readValue("{\"conceptIdL\":123,\"attrMap\":\"1:123=456,789:1234=123|3:123=456\"}", QueryConcept.class);
+		assertEquals("1:123=456,789:1234=123|3:123=456", queryConcept.getAttrMap());
+
+		QueryConcept queryConcept2 = objectMapper.readValue(objectMapper.writeValueAsString(queryConcept), QueryConcept.class);
+		assertEquals(queryConcept.getGroupedAttributesMap(), queryConcept2.getGroupedAttributesMap());
+	}
+
 }
@@ -734,6 +734,62 @@ public class ConceptServiceTest extends AbstractTest {
 		assertEquals(effectiveTime, memberWithRestoredDate.getEffectiveTimeI());
 	}
 
+	@Test
+	public void testFindConceptMinis() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		List<String> conceptIds = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			String conceptId = String.valueOf(200000 + i) + "00";
+			conceptIds.add(conceptId);
+			concepts.add(new Concept(conceptId, Concepts.CORE_MODULE)
+					.addDescription(fsn("Concept " + i + " (finding)").addLanguageRefsetMember(Concepts.GB_EN_LANG_REFSET, Concepts.PREFERRED))
+					.addDescription(new Description("Concept " + i).addLanguageRefsetMember(Concepts.GB_EN_LANG_REFSET, Concepts.PREFERRED)));
+		}
+		conceptService.create(concepts, "MAIN");
+
+		Map<String, ConceptMini> minis = conceptService.findConceptMinis("MAIN", conceptIds, DEFAULT_LANGUAGE_CODES).getResultsMap();
+		assertEquals(1000, minis.size());
+		ConceptMini mini = minis.get("20004200");
+		assertEquals("Concept 42 (finding)", mini.getFsn());
+		assertEquals("Concept 42", mini.getPt());
+		assertEquals("PRIMITIVE", mini.getDefinitionStatus());
+		assertTrue(mini.getActive());
+		assertEquals(Concepts.CORE_MODULE, mini.getModuleId());
+	}
+
+	@Test
+	public void testFindConceptMinisAfterChanges() throws ServiceException {
+		String conceptId = "100001";
+		conceptService.create(new Concept(conceptId).addDescription(fsn("Heart (body structure)").addLanguageRefsetMember(Concepts.GB_EN_LANG_REFSET, Concepts.PREFERRED)), "MAIN");
+		assertEquals("Heart (body structure)", conceptService.findConceptMinis("MAIN", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+
+		Concept concept = conceptService.find(conceptId, "MAIN");
+		concept.getDescriptions().iterator().next().setTerm("Heart structure (body structure)");
+		conceptService.update(concept, "MAIN");
+		assertEquals("Heart structure (body structure)", conceptService.findConceptMinis("MAIN", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+
+		// Child branch uses the parent labels until the concept is changed on the child
+		branchService.create("MAIN/A");
+		assertEquals("Heart structure (body structure)", conceptService.findConceptMinis("MAIN/A", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+
+		concept = conceptService.find(conceptId, "MAIN/A");
+		concept.getDescriptions().iterator().next().setTerm("Cardiac structure (body structure)");
+		conceptService.update(concept, "MAIN/A");
+		assertEquals("Cardiac structure (body structure)", conceptService.findConceptMinis("MAIN/A", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+		assertEquals("Heart structure (body structure)", conceptService.findConceptMinis("MAIN", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+	}
+
+	@Test
+	public void testFindConceptMinisReturnsCopies() throws ServiceException {
+		String conceptId = "100001";
+		conceptService.create(new Concept(conceptId).addDescription(fsn("Heart (body structure)").addLanguageRefsetMember(Concepts.GB_EN_LANG_REFSET, Concepts.PREFERRED)), "MAIN");
+		ConceptMini mini = conceptService.findConceptMinis("MAIN", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId);
+		mini.getActiveDescriptions().iterator().next().setTerm("Changed by caller");
+
+		// The cached label is not changed through the returned copy
+		assertEquals("Heart (body structure)", conceptService.findConceptMinis("MAIN", Collections.singleton(conceptId), DEFAULT_LANGUAGE_CODES).getResultsMap().get(conceptId).getFsn());
+	}
+
 	// Uncomment to run - takes around 45 seconds.
 //	@Test
 	public void testCreateUpdate10KConcepts() throws ServiceException {
@@ -16,12 +16,14 @@ import org.junit.runner.RunWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,7 @@ import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
 import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
 
@@ -78,6 +81,65 @@ public class DescriptionServiceTest extends AbstractTest {
 		content = descriptionService.findDescriptionsWithAggregations("MAIN", "cramps", ServiceTestUtil.PAGE_REQUEST).getContent();
 		actualTerms = content.stream().map(Description::getTerm).collect(Collectors.toList());
 		assertEquals(Lists.newArrayList("Foot cramps"), actualTerms);
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "f c", ServiceTestUtil.PAGE_REQUEST).getContent();
+		actualTerms = content.stream().map(Description::getTerm).collect(Collectors.toList());
+		assertEquals(Lists.newArrayList("Foot cramp", "Foot cramps"), actualTerms);
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "LUN", ServiceTestUtil.PAGE_REQUEST).getContent();
+		actualTerms = content.stream().map(Description::getTerm).collect(Collectors.toList());
+		assertEquals(Lists.newArrayList("Lung"), actualTerms);
+	}
+
+	@Test
+	public void testDescriptionSearchWithSearchAfter() throws ServiceException {
+		for (int i = 0; i < 25; i++) {
+			testUtil.createConceptWithPathIdAndTerms("MAIN", String.valueOf(100_100 + i), "Foot " + i);
+		}
+		List<String> allTerms = descriptionService.findDescriptionsWithAggregations("MAIN", "Foot", ServiceTestUtil.PAGE_REQUEST).getContent()
+				.stream().map(Description::getTerm).collect(Collectors.toList());
+		assertEquals(25, allTerms.size());
+
+		for (boolean includeAggregations : new boolean[] {false, true}) {
+			List<String> terms = new ArrayList<>();
+			String searchAfter = null;
+			int pages = 0;
+			do {
+				SearchAfterPage<Description> page = descriptionService.findDescriptionsWithAggregations("MAIN", "Foot", null, Collections.singleton("en"),
+						PageRequest.of(0, 10), searchAfter, includeAggregations);
+				// Total and offset mean the same with or without a token
+				assertEquals(25, page.getTotalElements());
+				assertEquals(pages * 10, page.getPageable().getOffset());
+				page.getContent().forEach(description -> terms.add(description.getTerm()));
+				searchAfter = page.getSearchAfter();
+				pages++;
+			} while (searchAfter != null);
+			assertEquals(3, pages);
+			assertEquals("Cursor pages keep the term order of offset pages.", allTerms, terms);
+		}
+	}
+
+	@Test
+	public void testDescriptionSearchFoldedAndStemmed() throws ServiceException {
+		conceptService.create(new Concept("100001").addDescription(new Description("Neumonía").setLanguageCode("es")), "MAIN");
+		conceptService.create(new Concept("100002").addDescription(new Description("Lungebetændelse").setLanguageCode("da")), "MAIN");
+		conceptService.create(new Concept("100003").addDescription(new Description("Pneumonia")), "MAIN");
+
+		List<String> languageCodes = Lists.newArrayList("es", "en");
+		List<Description> content = descriptionService.findDescriptionsWithAggregations("MAIN", "neumonia", null, languageCodes, ServiceTestUtil.PAGE_REQUEST, false).getContent();
+		assertEquals(Lists.newArrayList("Neumonía"), content.stream().map(Description::getTerm).collect(Collectors.toList()));
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "neum", null, languageCodes, ServiceTestUtil.PAGE_REQUEST, false).getContent();
+		assertEquals(Lists.newArrayList("Neumonía"), content.stream().map(Description::getTerm).collect(Collectors.toList()));
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "lungebetændelser", null, Collections.singleton("da"), ServiceTestUtil.PAGE_REQUEST, false).getContent();
+		assertEquals(Lists.newArrayList("Lungebetændelse"), content.stream().map(Description::getTerm).collect(Collectors.toList()));
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "lungebetændelser", null, Lists.newArrayList("en", "da"), ServiceTestUtil.PAGE_REQUEST, false).getContent();
+		assertEquals(Lists.newArrayList("Lungebetændelse"), content.stream().map(Description::getTerm).collect(Collectors.toList()));
+
+		content = descriptionService.findDescriptionsWithAggregations("MAIN", "neumonia", null, Collections.singleton("da"), ServiceTestUtil.PAGE_REQUEST, false).getContent();
+		assertTrue(content.isEmpty());
 	}
 
 	@Test
@@ -109,6 +171,10 @@ public class DescriptionServiceTest extends AbstractTest {
 		assertEquals("{en=3}", getAggregationString("language", pizzaAggs));
 		assertEquals("{pizza=3}", getAggregationString("semanticTags", pizzaAggs));
 		assertEquals("{723592007=1, 723589008=2}", getAggregationString("membership", pizzaAggs));
+
+		AggregatedPage<Description> pizzaPage = descriptionService.findDescriptionsWithAggregations(path, "pizza", null, Collections.singleton("en"), PageRequest.of(0, 10), false);
+		assertEquals(3, pizzaPage.getTotalElements());
+		assertTrue(pizzaPage.getAggregations().asList().isEmpty());
 	}
 
 	@Test
@@ -0,0 +1,134 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Sets;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.Test;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FastResultsMapperTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void testReadEncodedAttributes() {
+		QueryConcept indexed = new QueryConcept(100003L, Sets.newHashSet(100002L), Sets.newHashSet(100002L, 138875005L), true);
+		indexed.addAttribute(1, 123L, 456L);
+		indexed.addAttribute(1, 123L, 789L);
+		indexed.addAttribute(2, 1142135004L, "#12.5");
+
+		ObjectNode source = getSource(indexed.getConceptIdL(), indexed.isStated());
+		source.putArray(QueryConcept.Fields.PARENTS).add(100002L);
+		source.putArray(QueryConcept.Fields.ANCESTORS).add(100002L).add(138875005L);
+		source.put(QueryConcept.Fields.ATTR_ENC, indexed.getAttrEnc());
+
+		QueryConcept projection = FastResultsMapper.readQueryConceptProjection(getHit(indexed.getConceptIdForm(), source));
+		assertEquals(Long.valueOf(100003L), projection.getConceptIdL());
+		assertEquals("100003_s", projection.getConceptIdForm());
+		assertTrue(projection.isStated());
+		assertEquals(Sets.newHashSet(100002L), projection.getParents());
+		assertEquals(Sets.newHashSet(100002L, 138875005L), projection.getAncestors());
+		assertEquals(indexed.getAttrEnc(), projection.getAttrEnc());
+		assertEquals("1:123=456,789|2:1142135004=#12.5", projection.getAttrMap());
+		assertVersionControlFieldsNotRead(projection);
+	}
+
+	@Test
+	public void testReadLegacyAttributeMap() {
+		ObjectNode source = getSource(100003L, false);
+		source.putArray(QueryConcept.Fields.PARENTS).add(138875005L);
+		source.putArray(QueryConcept.Fields.ANCESTORS).add(138875005L);
+		source.put(QueryConcept.Fields.ATTR_MAP, "1:123=456,789:1234=123|3:123=456");
+
+		QueryConcept projection = FastResultsMapper.readQueryConceptProjection(getHit("100003_i", source));
+		assertEquals("100003_i", projection.getConceptIdForm());
+		assertFalse(projection.isStated());
+		assertEquals(Sets.newHashSet(138875005L), projection.getParents());
+		assertEquals("1:123=456,789:1234=123|3:123=456", projection.getAttrMap());
+
+		// Saved again in the compact encoding
+		QueryConcept encoded = new QueryConcept();
+		encoded.setAttrEnc(projection.getAttrEnc());
+		assertEquals("1:123=456,789:1234=123|3:123=456", encoded.getAttrMap());
+		assertVersionControlFieldsNotRead(projection);
+	}
+
+	@Test
+	public void testReadWithoutAttributes() {
+		ObjectNode source = getSource(138875005L, true);
+		source.putArray(QueryConcept.Fields.PARENTS);
+		source.putArray(QueryConcept.Fields.ANCESTORS);
+		source.putNull(QueryConcept.Fields.ATTR_ENC);
+
+		QueryConcept projection = FastResultsMapper.readQueryConceptProjection(getHit("138875005_s", source));
+		assertEquals(Long.valueOf(138875005L), projection.getConceptIdL());
+		assertTrue(projection.getParents().isEmpty());
+		assertTrue(projection.getAncestors().isEmpty());
+		assertEquals("", projection.getAttrMap());
+	}
+
+	@Test
+	public void testQueryConceptProjectionMapper() {
+		ObjectNode encodedSource = getSource(100002L, true);
+		encodedSource.putArray(QueryConcept.Fields.ANCESTORS).add(138875005L);
+		QueryConcept indexed = new QueryConcept();
+		indexed.addAttribute(0, 123L, 456L);
+		encodedSource.put(QueryConcept.Fields.ATTR_ENC, indexed.getAttrEnc());
+
+		ObjectNode legacySource = getSource(100003L, true);
+		legacySource.putArray(QueryConcept.Fields.ANCESTORS).add(100002L).add(138875005L);
+		legacySource.put(QueryConcept.Fields.ATTR_MAP, "0:123=789");
+
+		SearchHit[] hits = {getHit("100002_s", encodedSource), getHit("100003_s", legacySource)};
+		InternalSearchResponse internalResponse = new InternalSearchResponse(new SearchHits(hits, 5, 1), null, null, null, false, null, 1);
+		SearchResponse response = new SearchResponse(internalResponse, null, 1, 1, 0, 1, ShardSearchFailure.EMPTY_ARRAY);
+
+		AggregatedPage<QueryConcept> page = FastResultsMapper.QUERY_CONCEPT_PROJECTION.mapResults(response, QueryConcept.class, PageRequest.of(0, 2));
+		assertEquals(5, page.getTotalElements());
+		assertEquals(2, page.getContent().size());
+		assertEquals(Long.valueOf(100002L), page.getContent().get(0).getConceptIdL());
+		assertEquals("0:123=456", page.getContent().get(0).getAttrMap());
+		assertEquals(Long.valueOf(100003L), page.getContent().get(1).getConceptIdL());
+		assertEquals(Sets.newHashSet(100002L, 138875005L), page.getContent().get(1).getAncestors());
+		assertEquals("0:123=789", page.getContent().get(1).getAttrMap());
+	}
+
+	private ObjectNode getSource(Long conceptId, boolean stated) {
+		ObjectNode source = objectMapper.createObjectNode();
+		// Fields outside of the projection are skipped, including objects
+		source.put("path", "MAIN");
+		source.put("start", 1530000000000L);
+		source.putObject(QueryConcept.Fields.ATTR).putArray("123").add("456");
+		source.put(QueryConcept.Fields.CONCEPT_ID, conceptId);
+		source.put(QueryConcept.Fields.STATED, stated);
+		return source;
+	}
+
+	private SearchHit getHit(String id, ObjectNode source) {
+		SearchHit hit = new SearchHit(0, id, new Text("query-concept"), Collections.emptyMap());
+		hit.sourceRef(new BytesArray(source.toString()));
+		return hit;
+	}
+
+	private void assertVersionControlFieldsNotRead(QueryConcept projection) {
+		// Only saved as a new version, which sets these from the commit
+		assertNull(projection.getInternalId());
+		assertNull(projection.getPath());
+		assertNull(projection.getStart());
+		assertNull(projection.getEnd());
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.ComponentService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.config.elasticsearch.SnowstormElasticsearchTemplate;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class IndexMigrationServiceTest extends AbstractTest {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private IndexMigrationService indexMigrationService;
+
+	@Autowired
+	private SnowstormElasticsearchTemplate elasticsearchTemplate;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		// Replace the description index with one mapped the way it was before the term sub-fields were added
+		ElasticsearchPersistentEntity<Description> persistentEntity = elasticsearchTemplate.getPersistentEntityFor(Description.class);
+		Map<String, Object> mapping = elasticsearchTemplate.getMapping(Description.class);
+		Map<String, Object> termProperty = (Map<String, Object>) ((Map<String, Object>) mapping.get("properties")).get(Description.Fields.TERM);
+		termProperty.remove("fields");
+		elasticsearchTemplate.deleteIndex(Description.class);
+		elasticsearchTemplate.createIndex(persistentEntity.getIndexName());
+		elasticsearchTemplate.putMapping(persistentEntity.getIndexName(), persistentEntity.getIndexType(), mapping);
+		descriptionService.clearTermPrefixIndexed();
+
+		branchService.create("MAIN");
+	}
+
+	@After
+	public void restoreDescriptionIndex() {
+		elasticsearchTemplate.deleteIndex(Description.class);
+		elasticsearchTemplate.createIndex(Description.class);
+		elasticsearchTemplate.putMapping(Description.class);
+		descriptionService.clearTermPrefixIndexed();
+	}
+
+	@Test
+	public void testSearchBeforeAndAfterMigration() throws ServiceException {
+		conceptService.create(new Concept("100001").addDescription(new Description("Clinical finding")), "MAIN");
+		conceptService.create(new Concept("100002").addDescription(new Description("Neumonía").setLanguageCode("es")), "MAIN");
+		List<String> languageCodes = Lists.newArrayList("en", "es");
+
+		// Whole words and prefixes still match in an index without the sub-fields
+		assertFalse(descriptionService.isTermPrefixIndexed());
+		assertEquals(Lists.newArrayList("Clinical finding"), findTerms("clinical finding", languageCodes));
+		assertEquals(Lists.newArrayList("Neumonía"), findTerms("neumonía", languageCodes));
+		assertEquals(Lists.newArrayList("Clinical finding"), findTerms("clin fin", languageCodes));
+		assertTrue(findTerms("neumonia", languageCodes).isEmpty());
+
+		assertEquals(2, indexMigrationService.updateMappingAndReindex(Description.class));
+		descriptionService.clearTermPrefixIndexed();
+		assertTrue("Prefix field found behind the alias.", descriptionService.isTermPrefixIndexed());
+
+		String aliasName = elasticsearchTemplate.getPersistentEntityFor(Description.class).getIndexName();
+		String[] indices = elasticsearchTemplate.getClient().admin().indices().prepareGetIndex().setIndices(aliasName).get().getIndices();
+		assertEquals(1, indices.length);
+		assertTrue("Index name is now an alias of the new index.", indices[0].startsWith(aliasName + "_"));
+
+		assertEquals(Lists.newArrayList("Clinical finding"), findTerms("clinical finding", languageCodes));
+		assertEquals(Lists.newArrayList("Clinical finding"), findTerms("clin fin", languageCodes));
+		assertEquals(Lists.newArrayList("Neumonía"), findTerms("neumonia", languageCodes));
+
+		// Content saved after the migration goes to the new index
+		conceptService.create(new Concept("100003").addDescription(new Description("Clinical history")), "MAIN");
+		assertEquals(Sets.newHashSet("Clinical finding", "Clinical history"), new HashSet<>(findTerms("clin", Collections.singleton("en"))));
+	}
+
+	@Test
+	public void testDeleteAndRecreateIndexAfterMigration() {
+		indexMigrationService.updateMappingAndReindex(Description.class);
+		String aliasName = elasticsearchTemplate.getPersistentEntityFor(Description.class).getIndexName();
+		String migratedIndexName = elasticsearchTemplate.getClient().admin().indices().prepareGetIndex().setIndices(aliasName).get().getIndices()[0];
+
+		// As at startup with the delete indices flag
+		ComponentService.initialiseIndexAndMappingForPersistentClasses(true, elasticsearchTemplate, Description.class);
+
+		assertFalse("Index behind the alias is deleted.", elasticsearchTemplate.indexExists(migratedIndexName));
+		String[] indices = elasticsearchTemplate.getClient().admin().indices().prepareGetIndex().setIndices(aliasName).get().getIndices();
+		assertArrayEquals("Index name is a concrete index again.", new String[] {aliasName}, indices);
+		assertTrue(elasticsearchTemplate.deleteIndex(Description.class));
+		assertFalse(elasticsearchTemplate.indexExists(Description.class));
+	}
+
+	private List<String> findTerms(String term, Collection<String> languageCodes) {
+		return descriptionService.findDescriptionsWithAggregations("MAIN", term, null, languageCodes, ServiceTestUtil.PAGE_REQUEST, false).getContent()
+				.stream().map(Description::getTerm).collect(Collectors.toList());
+	}
+
+}
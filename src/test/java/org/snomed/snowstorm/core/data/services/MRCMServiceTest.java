@@ -1,8 +1,15 @@
 package org.snomed.snowstorm.core.data.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_CODES;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -12,12 +19,16 @@ import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.mrcm.MRCMService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.fasterxml.jackson.databind.*;
+import com.google.common.collect.Sets;
 
 import io.kaicode.elasticvc.api.BranchService;
 
@@ -25,6 +36,10 @@ import io.kaicode.elasticvc.api.BranchService;
 @ContextConfiguration(classes = TestConfig.class)
 public class MRCMServiceTest extends AbstractTest {
 
+	private static final String PROCEDURE = "71388002";
+	private static final String FINDING_SITE = "363698007";
+	private static final String ANATOMICAL_STRUCTURE = "442083009";
+
 	@Autowired
 	private BranchService branchService;
 
@@ -54,4 +69,63 @@ public class MRCMServiceTest extends AbstractTest {
 		assertEquals(1, attributes.size());
 		assertEquals(Concepts.ISA, attributes.iterator().next().getId());
 	}
+
+	@Test
+	public void testDomainAttributesFollowBranchContent() throws ServiceException {
+		mrcmService.loadFromFiles();
+		conceptService.create(Arrays.asList(
+				new Concept(Concepts.SNOMEDCT_ROOT),
+				new Concept(Concepts.CLINICAL_FINDING).addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)),
+				new Concept(PROCEDURE).addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)),
+				new Concept(FINDING_SITE).addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)),
+				new Concept("100001").addRelationship(inferredIsA(Concepts.CLINICAL_FINDING))
+		), "MAIN");
+
+		assertTrue(getDomainAttributeIds(Concepts.CLINICAL_FINDING).contains(FINDING_SITE));
+		assertTrue(getDomainAttributeIds("100001").contains(FINDING_SITE));
+		assertFalse(getDomainAttributeIds(PROCEDURE).contains(FINDING_SITE));
+
+		// A concept from a later commit is placed in the domain using its own ancestors
+		conceptService.create(new Concept("100002").addRelationship(inferredIsA("100001")), "MAIN");
+		assertTrue(getDomainAttributeIds("100002").contains(FINDING_SITE));
+	}
+
+	@Test
+	public void testAttributeValuesPagedWithinRange() throws ServiceException {
+		mrcmService.loadFromFiles();
+		conceptService.create(Arrays.asList(
+				new Concept(Concepts.SNOMEDCT_ROOT),
+				new Concept(FINDING_SITE).addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)),
+				new Concept(ANATOMICAL_STRUCTURE).addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)).addFSN("Anatomical or acquired body structure"),
+				new Concept("100001").addRelationship(inferredIsA(ANATOMICAL_STRUCTURE)).addFSN("Heart structure"),
+				new Concept("100002").addRelationship(inferredIsA(ANATOMICAL_STRUCTURE)).addFSN("Heart valve structure"),
+				new Concept("100003").addRelationship(inferredIsA("100002")).addFSN("Heart valve leaflet structure"),
+				new Concept("100004").addRelationship(inferredIsA(Concepts.SNOMEDCT_ROOT)).addFSN("Heart procedure")
+		), "MAIN");
+
+		Page<ConceptMini> page = mrcmService.retrieveAttributeValues("MAIN", FINDING_SITE, "Heart", DEFAULT_LANGUAGE_CODES, PageRequest.of(0, 2));
+		assertEquals(3, page.getTotalElements());
+		assertEquals(2, page.getContent().size());
+
+		page = mrcmService.retrieveAttributeValues("MAIN", FINDING_SITE, "Heart", DEFAULT_LANGUAGE_CODES, PageRequest.of(1, 2));
+		assertEquals(3, page.getTotalElements());
+		assertEquals(1, page.getContent().size());
+
+		// Concepts outside the range are not returned
+		page = mrcmService.retrieveAttributeValues("MAIN", FINDING_SITE, "Heart", DEFAULT_LANGUAGE_CODES, PageRequest.of(0, 10));
+		Set<String> conceptIds = page.getContent().stream().map(ConceptMini::getConceptId).collect(Collectors.toSet());
+		assertEquals(Sets.newHashSet("100001", "100002", "100003"), conceptIds);
+
+		page = mrcmService.retrieveAttributeValues("MAIN", FINDING_SITE, "He", DEFAULT_LANGUAGE_CODES, PageRequest.of(0, 10));
+		assertEquals(0, page.getTotalElements());
+	}
+
+	private Set<String> getDomainAttributeIds(String parentId) {
+		return mrcmService.retrieveDomainAttributes("MAIN", Collections.singleton(Long.parseLong(parentId)), null).stream()
+				.map(ConceptMini::getConceptId).collect(Collectors.toSet());
+	}
+
+	private Relationship inferredIsA(String parentId) {
+		return new Relationship(Concepts.ISA, parentId).setCharacteristicTypeId(Concepts.INFERRED_RELATIONSHIP);
+	}
 }
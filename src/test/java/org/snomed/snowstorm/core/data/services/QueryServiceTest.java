@@ -10,12 +10,16 @@ import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 import static org.junit.Assert.assertEquals;
@@ -78,4 +82,49 @@ public class QueryServiceTest extends AbstractTest {
 		assertEquals("Really Cheesy Pizza", matches.get(1).getFsn());
 	}
 
+	@Test
+	public void testSearchWithSearchAfter() throws ServiceException {
+		String path = "MAIN";
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		for (int i = 0; i < 25; i++) {
+			concepts.add(new Concept(String.valueOf(100_100 + i)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Pizza " + i));
+		}
+		conceptService.create(concepts, path);
+
+		// ECL search continues after the last concept id
+		List<String> eclMatches = searchAll(service.createQueryBuilder(true).ecl("<" + SNOMEDCT_ROOT), path);
+		assertEquals(25, eclMatches.size());
+		assertEquals(25, new HashSet<>(eclMatches).size());
+
+		// Term search continues after the sort values of the last description
+		List<String> termMatches = searchAll(service.createQueryBuilder(true).termPrefix("Pizza"), path);
+		assertEquals(25, termMatches.size());
+		assertEquals(25, new HashSet<>(termMatches).size());
+		List<String> firstPage = service.search(service.createQueryBuilder(true).termPrefix("Pizza"), path, PageRequest.of(0, 25)).getContent()
+				.stream().map(ConceptMini::getConceptId).collect(Collectors.toList());
+		assertEquals("Cursor pages keep the term order of offset pages.", firstPage, termMatches);
+
+		// Term and ECL search pages in memory using the offset of the token
+		List<String> termAndEclMatches = searchAll(service.createQueryBuilder(true).ecl("<" + SNOMEDCT_ROOT).termPrefix("Pizza"), path);
+		assertEquals(firstPage, termAndEclMatches);
+	}
+
+	private List<String> searchAll(QueryService.ConceptQueryBuilder queryBuilder, String path) {
+		List<String> conceptIds = new ArrayList<>();
+		String searchAfter = null;
+		int pages = 0;
+		do {
+			SearchAfterPage<ConceptMini> page = service.search(queryBuilder, path, PageRequest.of(0, 10), searchAfter);
+			// Total and offset mean the same with or without a token
+			assertEquals(25, page.getTotalElements());
+			assertEquals(pages * 10, page.getPageable().getOffset());
+			page.getContent().forEach(conceptMini -> conceptIds.add(conceptMini.getConceptId()));
+			searchAfter = page.getSearchAfter();
+			pages++;
+		} while (searchAfter != null);
+		assertEquals(3, pages);
+		return conceptIds;
+	}
+
 }
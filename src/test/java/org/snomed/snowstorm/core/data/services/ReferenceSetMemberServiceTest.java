@@ -1,21 +1,31 @@
 package org.snomed.snowstorm.core.data.services;
 
+import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
-import org.snomed.snowstorm.core.data.domain.Concept;
-import org.snomed.snowstorm.core.data.domain.Concepts;
-import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.repositories.ReferenceSetMemberRepository;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.lang.Long.parseLong;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = TestConfig.class)
@@ -30,6 +40,12 @@ public class ReferenceSetMemberServiceTest extends AbstractTest {
 	@Autowired
 	private BranchService branchService;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ReferenceSetMemberRepository memberRepository;
+
 	private static final String MAIN = "MAIN";
 	private static final PageRequest PAGE = PageRequest.of(0, 10);
 
@@ -54,4 +70,89 @@ public class ReferenceSetMemberServiceTest extends AbstractTest {
 		assertEquals(0, memberService.findMembers(MAIN, Concepts.CLINICAL_FINDING, PAGE).getTotalElements());
 	}
 
+	@Test
+	public void findMembersWithSearchAfter() {
+		for (int i = 0; i < 25; i++) {
+			memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.CONCEPT_INACTIVATION_INDICATOR_REFERENCE_SET, Concepts.CLINICAL_FINDING));
+		}
+
+		Set<String> memberIds = new HashSet<>();
+		String lastMemberId = "";
+		String searchAfter = null;
+		int pages = 0;
+		do {
+			SearchAfterPage<ReferenceSetMember> page = memberService.findMembers(MAIN, null, Concepts.CONCEPT_INACTIVATION_INDICATOR_REFERENCE_SET,
+					null, null, null, PAGE, searchAfter);
+			// Total and offset mean the same with or without a token
+			assertEquals(25, page.getTotalElements());
+			assertEquals(pages * 10, page.getPageable().getOffset());
+			for (ReferenceSetMember member : page.getContent()) {
+				assertTrue(member.getMemberId().compareTo(lastMemberId) > 0);
+				lastMemberId = member.getMemberId();
+				memberIds.add(member.getMemberId());
+			}
+			searchAfter = page.getSearchAfter();
+			pages++;
+		} while (searchAfter != null);
+
+		assertEquals(3, pages);
+		assertEquals(25, memberIds.size());
+	}
+
+	@Test
+	public void denormalisedFieldsSetOnSave() throws ServiceException {
+		conceptService.create(new Concept("100001").addDescription(new Description("Heart")), MAIN);
+		String descriptionId = conceptService.find("100001", MAIN).getDescriptions().iterator().next().getDescriptionId();
+
+		memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.US_EN_LANG_REFSET, descriptionId)
+				.setAdditionalField(ReferenceSetMember.LanguageFields.ACCEPTABILITY_ID, Concepts.PREFERRED));
+		memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.US_EN_LANG_REFSET, "100001"));
+
+		ReferenceSetMember descriptionMember = memberService.findMembers(MAIN, descriptionId, PAGE).getContent().get(0);
+		assertEquals(ComponentType.Description.name(), descriptionMember.getReferencedComponentType());
+		assertEquals("100001", descriptionMember.getConceptId());
+
+		ReferenceSetMember conceptMember = memberService.findMembers(MAIN, "100001", PAGE).getContent().get(0);
+		assertEquals(ComponentType.Concept.name(), conceptMember.getReferencedComponentType());
+
+		Set<Long> conceptsInRefset = memberService.findConceptsInReferenceSet(versionControlHelper.getBranchCriteria(MAIN), Concepts.US_EN_LANG_REFSET);
+		assertEquals(Collections.singleton(100001L), conceptsInRefset);
+	}
+
+	@Test
+	public void backfillDenormalisedFieldsOnlyUpdatesBranchContent() {
+		ReferenceSetMember member = memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.US_EN_LANG_REFSET, Concepts.CLINICAL_FINDING));
+
+		// Simulate a member indexed before the referencedComponentType field existed
+		ReferenceSetMember legacyMember = memberService.findMember(MAIN, member.getMemberId());
+		legacyMember.setReferencedComponentType(null);
+		memberRepository.save(legacyMember);
+		assertNull(memberService.findMember(MAIN, member.getMemberId()).getReferencedComponentType());
+
+		// Still found before the backfill
+		assertEquals(Collections.singleton(parseLong(Concepts.CLINICAL_FINDING)),
+				memberService.findConceptsInReferenceSet(versionControlHelper.getBranchCriteria(MAIN), Concepts.US_EN_LANG_REFSET));
+
+		// Inherited members are not rewritten on the child branch
+		branchService.create("MAIN/A");
+		assertEquals(0, memberService.backfillDenormalisedFields("MAIN/A"));
+		assertEquals(MAIN, memberService.findMember("MAIN/A", member.getMemberId()).getPath());
+
+		assertEquals(1, memberService.backfillDenormalisedFields(MAIN));
+		assertEquals(ComponentType.Concept.name(), memberService.findMember(MAIN, member.getMemberId()).getReferencedComponentType());
+	}
+
+	@Test
+	public void conceptsInReferenceSetCachedPerBranchHead() throws ServiceException {
+		conceptService.create(new Concept("100001"), MAIN);
+		memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.US_EN_LANG_REFSET, Concepts.CLINICAL_FINDING));
+
+		Set<Long> conceptIds = memberService.findConceptsInReferenceSet(MAIN, Concepts.US_EN_LANG_REFSET);
+		assertEquals(Collections.singleton(parseLong(Concepts.CLINICAL_FINDING)), conceptIds);
+		assertSame("Same branch head should be served from the cache.", conceptIds, memberService.findConceptsInReferenceSet(MAIN, Concepts.US_EN_LANG_REFSET));
+
+		memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.US_EN_LANG_REFSET, "100001"));
+		assertEquals(Sets.newHashSet(parseLong(Concepts.CLINICAL_FINDING), 100001L), memberService.findConceptsInReferenceSet(MAIN, Concepts.US_EN_LANG_REFSET));
+	}
+
 }
@@ -0,0 +1,83 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.pojo.SearchAfterPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class RelationshipServiceTest extends AbstractTest {
+
+	@Autowired
+	private RelationshipService relationshipService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	private static final String MAIN = "MAIN";
+	private static final PageRequest PAGE = PageRequest.of(0, 10);
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create(MAIN);
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		for (int i = 0; i < 25; i++) {
+			concepts.add(new Concept(String.valueOf(100_100 + i)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)));
+		}
+		conceptService.create(concepts, MAIN);
+	}
+
+	@Test
+	public void findRelationshipsWithSearchAfter() {
+		Set<String> relationshipIds = new HashSet<>();
+		String lastRelationshipId = "";
+		String searchAfter = null;
+		int pages = 0;
+		do {
+			SearchAfterPage<Relationship> page = relationshipService.findRelationships(MAIN, null, true, null, null, null, ISA, SNOMEDCT_ROOT,
+					null, null, PAGE, searchAfter);
+			assertEquals(25, page.getTotalElements());
+			assertEquals(pages * 10, page.getPageable().getOffset());
+			for (Relationship relationship : page.getContent()) {
+				assertTrue(relationship.getRelationshipId().compareTo(lastRelationshipId) > 0);
+				lastRelationshipId = relationship.getRelationshipId();
+				relationshipIds.add(relationship.getRelationshipId());
+			}
+			searchAfter = page.getSearchAfter();
+			pages++;
+		} while (searchAfter != null);
+
+		assertEquals(3, pages);
+		assertEquals(25, relationshipIds.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void findRelationshipsWithInvalidSearchAfter() {
+		relationshipService.findRelationships(MAIN, null, true, null, null, null, ISA, SNOMEDCT_ROOT, null, null, PAGE, "not a token");
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class ReleaseServiceTest extends AbstractTest {
+
+	@Autowired
+	private ReleaseService releaseService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Before
+	public void setup() {
+		branchService.create("MAIN");
+		releaseService.setBatchSaveSize(10);
+	}
+
+	@After
+	public void resetBatchSaveSize() {
+		releaseService.setBatchSaveSize(10_000);
+	}
+
+	@Test
+	public void testCreateVersionInSeveralBatchesPerType() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		for (int i = 0; i < 25; i++) {
+			concepts.add(new Concept(String.valueOf(100_100 + i))
+					.addDescription(new Description("Finding " + i))
+					.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)));
+		}
+		conceptService.create(concepts, "MAIN");
+
+		releaseService.createVersion(20180731, "MAIN");
+
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria("MAIN");
+		assertReleased(Concept.class, 26, branchCriteria);
+		assertReleased(Description.class, 25, branchCriteria);
+		assertReleased(Relationship.class, 25, branchCriteria);
+
+		Concept concept = conceptService.find("100124", "MAIN");
+		assertEquals("20180731", concept.getEffectiveTime());
+		assertTrue(concept.isReleased());
+		assertEquals("20180731", concept.getDescriptions().iterator().next().getEffectiveTime());
+		assertEquals("20180731", concept.getRelationships().iterator().next().getEffectiveTime());
+	}
+
+	private void assertReleased(Class<? extends SnomedComponent> componentType, int expectedCount, BranchCriteria branchCriteria) {
+		// The version replaced by each batch is ended, so there is still one version of each component
+		assertEquals(expectedCount, elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(componentType)).build(), componentType));
+		assertEquals(expectedCount, elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(componentType))
+						.must(termQuery(SnomedComponent.Fields.EFFECTIVE_TIME, 20180731))
+						.must(termQuery("released", true)))
+				.build(), componentType));
+	}
+
+}
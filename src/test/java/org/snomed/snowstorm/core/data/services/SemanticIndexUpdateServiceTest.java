@@ -210,6 +210,44 @@ public class SemanticIndexUpdateServiceTest extends AbstractTest {
 		assertTC(hamPizza, pizza, root);
 	}
 
+	@Test
+	public void testIncrementalStatedUpdateUsingAxiomAttributeChanges() throws Exception {
+		Concept root = new Concept(SNOMEDCT_ROOT);
+		Concept toppingAttribute = new Concept("110000000").addAxiom(new Relationship(ISA, root.getId()));
+		Concept hamTopping = new Concept("220000000").addAxiom(new Relationship(ISA, root.getId()));
+		Concept pizza = new Concept("200000000").addAxiom(new Relationship(ISA, root.getId()));
+		Concept hamPizza = new Concept("400000000").addAxiom(new Relationship(ISA, pizza.getId()));
+		Concept thinHamPizza = new Concept("500000000").addAxiom(new Relationship(ISA, hamPizza.getId()));
+
+		String branch = "MAIN";
+		conceptService.create(Lists.newArrayList(root, toppingAttribute, hamTopping, pizza, hamPizza, thinHamPizza), branch);
+
+		String eclAnyConceptWithATopping = "<" + root.getId() + ":" + toppingAttribute.getId() + "=*";
+		assertEquals(0, eclSearch(eclAnyConceptWithATopping, branch).getTotalElements());
+		assertTC(thinHamPizza, hamPizza, pizza, root);
+
+		// Add a topping to the existing axiom of ham pizza, the parents stay the same
+		Concept savedHamPizza = conceptService.find(hamPizza.getId(), branch);
+		savedHamPizza.getAdditionalAxioms().iterator().next().getRelationships()
+				.add(new Relationship(toppingAttribute.getId(), hamTopping.getId()).setSourceId(hamPizza.getId()));
+		conceptService.update(savedHamPizza, branch);
+
+		assertEquals("Should now find ham pizza with a topping", 1, eclSearch(eclAnyConceptWithATopping, branch).getTotalElements());
+		assertTC(hamPizza, pizza, root);
+		assertTC(thinHamPizza, hamPizza, pizza, root);
+
+		// Move ham pizza, a parent change in the same axiom
+		savedHamPizza = conceptService.find(hamPizza.getId(), branch);
+		Set<Relationship> fragments = savedHamPizza.getAdditionalAxioms().iterator().next().getRelationships();
+		fragments.removeIf(relationship -> relationship.getTypeId().equals(ISA));
+		fragments.add(new Relationship(ISA, root.getId()).setSourceId(hamPizza.getId()));
+		conceptService.update(savedHamPizza, branch);
+
+		assertEquals(1, eclSearch(eclAnyConceptWithATopping, branch).getTotalElements());
+		assertTC(hamPizza, root);
+		assertTC(thinHamPizza, hamPizza, root);
+	}
+
 	private Page<ConceptMini> eclSearch(String ecl, String branch) {
 		return queryService.search(queryService.createQueryBuilder(true).ecl(ecl), branch, LARGE_PAGE);
 	}
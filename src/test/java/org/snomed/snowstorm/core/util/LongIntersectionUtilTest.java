@@ -0,0 +1,48 @@
+package org.snomed.snowstorm.core.util;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIntersectionUtilTest {
+
+	@Test
+	public void orderedIntersection() {
+		List<Long> orderedListA = Arrays.asList(5L, 3L, 9L, 1L, 7L);
+		List<Long> listB = new LongArrayList(new long[] {1L, 2L, 3L, 7L, 9L, 10L, 11L});
+
+		Page<Long> page = LongIntersectionUtil.orderedIntersection(orderedListA, listB, PageRequest.of(0, 2));
+		assertEquals(Arrays.asList(3L, 9L), page.getContent());
+		assertEquals(4, page.getTotalElements());
+
+		page = LongIntersectionUtil.orderedIntersection(orderedListA, listB, PageRequest.of(1, 2));
+		assertEquals(Arrays.asList(1L, 7L), page.getContent());
+		assertEquals(4, page.getTotalElements());
+
+		// Smaller second list
+		page = LongIntersectionUtil.orderedIntersection(orderedListA, Arrays.asList(7L, 5L), PageRequest.of(0, 10));
+		assertEquals(Arrays.asList(5L, 7L), page.getContent());
+		assertEquals(2, page.getTotalElements());
+
+		page = LongIntersectionUtil.orderedIntersection(orderedListA, Collections.emptyList(), PageRequest.of(0, 10));
+		assertEquals(0, page.getTotalElements());
+
+		// Unpaged
+		page = LongIntersectionUtil.orderedIntersection(orderedListA, listB, Pageable.unpaged());
+		assertEquals(Arrays.asList(3L, 9L, 1L, 7L), page.getContent());
+
+		// Sorted array
+		page = LongIntersectionUtil.orderedIntersection(orderedListA, new long[] {1L, 2L, 3L, 7L, 9L, 10L, 11L}, PageRequest.of(1, 2));
+		assertEquals(Arrays.asList(1L, 7L), page.getContent());
+		assertEquals(4, page.getTotalElements());
+	}
+
+}
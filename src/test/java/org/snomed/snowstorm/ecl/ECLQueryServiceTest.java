@@ -5,6 +5,7 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.junit.Before;
@@ -14,9 +15,11 @@ import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
@@ -27,8 +30,10 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.VersionControlHelper.LARGE_PAGE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.snomed.snowstorm.core.data.domain.Concepts.*;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -94,6 +99,9 @@ public class ECLQueryServiceTest extends AbstractTest {
 	@Autowired
 	protected ElasticsearchTemplate elasticsearchTemplate;
 
+	@Autowired
+	protected QueryService queryService;
+
 	protected Set<String> allConceptIds;
 	protected BranchCriteria branchCriteria;
 
@@ -285,6 +293,34 @@ public class ECLQueryServiceTest extends AbstractTest {
 		);
 	}
 
+	@Test
+	public void selectMemberOfReferenceSetAtPointInTime() {
+		BranchCriteria criteriaBeforeChange = versionControlHelper.getBranchCriteria(branchService.findLatest(MAIN));
+		// Loads the branch head cache
+		assertEquals(
+				Sets.newHashSet(CLINICAL_FINDING, BODY_STRUCTURE),
+				strings(selectConceptIds("^" + REFSET_MRCM_ATTRIBUTE_DOMAIN))
+		);
+
+		memberService.createMember(MAIN, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN, PROCEDURE));
+
+		// Branch head
+		assertEquals(
+				Sets.newHashSet(CLINICAL_FINDING, BODY_STRUCTURE, PROCEDURE),
+				strings(eclQueryService.selectConceptIds("^" + REFSET_MRCM_ATTRIBUTE_DOMAIN, versionControlHelper.getBranchCriteria(MAIN), MAIN, STATED, (PageRequest) null).getContent())
+		);
+
+		// Point in time before the change
+		assertEquals(
+				Sets.newHashSet(CLINICAL_FINDING, BODY_STRUCTURE),
+				strings(eclQueryService.selectConceptIds("^" + REFSET_MRCM_ATTRIBUTE_DOMAIN, criteriaBeforeChange, MAIN, STATED, (PageRequest) null).getContent())
+		);
+		assertEquals(
+				Sets.newHashSet(CLINICAL_FINDING, BODY_STRUCTURE),
+				strings(eclQueryService.selectConceptIds("^*", criteriaBeforeChange, MAIN, STATED, (PageRequest) null).getContent())
+		);
+	}
+
 	@Test
 	public void selectByAttributeType() {
 		assertEquals(
@@ -516,6 +552,40 @@ public class ECLQueryServiceTest extends AbstractTest {
 				strings(selectConceptIds("<" + CLINICAL_FINDING + "." + FINDING_SITE + "." + LATERALITY)));
 	}
 
+	@Test
+	public void dottedAttributeAcrossChunks() throws ServiceException {
+		// More focus concepts than fit in one lookup, some destinations are shared across chunks and some only reached from the last chunk
+		String focusParent = "3000000";
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(focusParent).addRelationship(new Relationship(ISA, CLINICAL_FINDING)));
+		Set<String> expectedDestinations = new HashSet<>();
+		for (int i = 0; i < 40; i++) {
+			String destination = String.valueOf(4_000_000 + i);
+			concepts.add(new Concept(destination).addRelationship(new Relationship(ISA, BODY_STRUCTURE)));
+			expectedDestinations.add(destination);
+		}
+		for (int i = 0; i < CLAUSE_LIMIT + 10; i++) {
+			int destination = i < CLAUSE_LIMIT ? i % 30 : 30 + i - CLAUSE_LIMIT;
+			concepts.add(new Concept(String.valueOf(5_000_000 + i))
+					.addRelationship(new Relationship(ISA, focusParent))
+					.addRelationship(new Relationship(FINDING_SITE, String.valueOf(4_000_000 + destination))));
+		}
+		conceptService.create(concepts, MAIN);
+		branchCriteria = versionControlHelper.getBranchCriteria(MAIN);
+
+		String ecl = "<" + focusParent + "." + FINDING_SITE;
+		assertEquals(expectedDestinations, strings(selectConceptIds(ecl)));
+
+		Set<String> pagedDestinations = new HashSet<>();
+		for (int page = 0; page < 4; page++) {
+			Page<Long> destinationPage = eclQueryService.selectConceptIds(ecl, branchCriteria, MAIN, STATED, PageRequest.of(page, 10));
+			assertEquals(40, destinationPage.getTotalElements());
+			assertEquals(10, destinationPage.getContent().size());
+			pagedDestinations.addAll(strings(destinationPage.getContent()));
+		}
+		assertEquals(expectedDestinations, pagedDestinations);
+	}
+
 	@Test
 	public void conjunctionWithReverseFlag() {
 		assertEquals(
@@ -523,8 +593,71 @@ public class ECLQueryServiceTest extends AbstractTest {
 				strings(selectConceptIds("<" + BODY_STRUCTURE + " AND (<" + DISORDER + "." + FINDING_SITE + ")")));
 	}
 
+	@Test
+	public void selectByNumericConcreteValue() throws ServiceException {
+		String strength = "1142135004";
+		String product = "1000100";
+		String product250 = "1000200";
+		String product500 = "1000300";
+		String product1000 = "1000400";
+		conceptService.create(Arrays.asList(
+				new Concept(strength).addRelationship(new Relationship(ISA, MODEL_COMPONENT)),
+				new Concept(product).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)),
+				new Concept(product250).addRelationship(new Relationship(ISA, product)).addRelationship(new Relationship(strength, "#250.0")),
+				new Concept(product500).addRelationship(new Relationship(ISA, product)).addRelationship(new Relationship(strength, "#500.0").setGroupId(1)),
+				new Concept(product1000).addRelationship(new Relationship(ISA, product)).addRelationship(new Relationship(strength, "#1000.0").setGroupId(2))
+		), MAIN);
+		branchCriteria = versionControlHelper.getBranchCriteria(MAIN);
+
+		assertEquals(Sets.newHashSet(product500), strings(selectConceptIds("<" + product + ":" + strength + "=#500")));
+		assertEquals(Sets.newHashSet(product250, product1000), strings(selectConceptIds("<" + product + ":" + strength + "!=#500")));
+		assertEquals(Sets.newHashSet(product250), strings(selectConceptIds("<" + product + ":" + strength + "<#500")));
+		assertEquals(Sets.newHashSet(product250, product500), strings(selectConceptIds("<" + product + ":" + strength + "<=#500")));
+		assertEquals(Sets.newHashSet(product1000), strings(selectConceptIds("<" + product + ":" + strength + ">#500")));
+		assertEquals(Sets.newHashSet(product500, product1000), strings(selectConceptIds("<" + product + ":" + strength + ">=#500")));
+		assertEquals(Sets.newHashSet(product250, product500, product1000), strings(selectConceptIds("<" + product + ":" + strength + ">=#250.0")));
+
+		// Wildcard attribute type
+		assertEquals(Sets.newHashSet(product1000), strings(selectConceptIds("<" + product + ":*>#999.5")));
+
+		// Cardinality and attribute groups are checked against the fetched index records
+		assertEquals(Sets.newHashSet(product250), strings(selectConceptIds("<" + product + ":[0..0]" + strength + ">=#500")));
+		assertEquals(Sets.newHashSet(product500, product1000), strings(selectConceptIds("<" + product + ":{" + strength + ">#300}")));
+
+		// Concrete values are not concept attribute values
+		assertEquals(Sets.newHashSet(), strings(selectConceptIds("<" + product + ":" + strength + "=*")));
+	}
+
 	// TODO: Add reverse flag with cardinality
 
+	@Test
+	public void attributeCardinalityOnSemanticIndexWithoutAttributeCounts() {
+		// Remove the attribute counts, as in a semantic index built before they were introduced
+		String indexName = elasticsearchTemplate.getPersistentEntityFor(QueryConcept.class).getIndexName();
+		String indexType = elasticsearchTemplate.getPersistentEntityFor(QueryConcept.class).getIndexType();
+		for (SearchHit hit : elasticsearchTemplate.getClient().prepareSearch(indexName).setSize(LARGE_PAGE.getPageSize()).get().getHits()) {
+			Map<String, Object> source = hit.getSourceAsMap();
+			source.remove(QueryConcept.Fields.ATTR_COUNT);
+			elasticsearchTemplate.getClient().prepareIndex(indexName, indexType, hit.getId()).setSource(source).get();
+		}
+		elasticsearchTemplate.refresh(QueryConcept.class);
+		queryService.clearAttributeCountIndexed();
+		try {
+			assertFalse(queryService.isAttributeCountIndexed());
+			assertEquals(
+					Sets.newHashSet(BLEEDING_SKIN, PENTALOGY_OF_FALLOT, PENTALOGY_OF_FALLOT_INCORRECT_GROUPING),
+					strings(selectConceptIds("<<" + CLINICAL_FINDING + ":[1..2]" + FINDING_SITE + "=*")));
+			assertEquals(
+					Sets.newHashSet(BLEEDING_SKIN),
+					strings(selectConceptIds("<<" + CLINICAL_FINDING + ":[1..1]" + FINDING_SITE + "=*")));
+			assertEquals(
+					Sets.newHashSet(BLEEDING_SKIN, CLINICAL_FINDING, DISORDER, BLEEDING),
+					strings(selectConceptIds("<<" + CLINICAL_FINDING + ":[0..1]" + FINDING_SITE + "=*")));
+		} finally {
+			queryService.clearAttributeCountIndexed();
+		}
+	}
+
 	@Test
 	public void attributeCardinality() {
 		assertEquals(
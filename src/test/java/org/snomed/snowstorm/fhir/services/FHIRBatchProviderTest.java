@@ -0,0 +1,139 @@
+package org.snomed.snowstorm.fhir.services;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchService;
+import org.hl7.fhir.dstu3.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.fhir.config.FHIRConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class FHIRBatchProviderTest extends AbstractTest {
+
+	@Autowired
+	private FHIRBatchProvider batchProvider;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create("MAIN");
+		CodeSystem codeSystem = new CodeSystem("SNOMEDCT", "MAIN");
+		codeSystemService.createCodeSystem(codeSystem);
+		conceptService.create(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100002").addRelationship(inferredIsA(SNOMEDCT_ROOT)).addFSN("Pizza"),
+				new Concept("100003").addRelationship(inferredIsA("100002")).addFSN("Cheese Pizza"),
+				new Concept("100004").addRelationship(inferredIsA("100002")).addFSN("Ham Pizza")
+		), "MAIN");
+		codeSystemService.createVersion(codeSystem, 20180731, "Test version");
+	}
+
+	@Test
+	public void batchLookup() {
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.BATCH);
+		addEntry(bundle, "CodeSystem/$lookup?system=" + FHIRConstants.SNOMED_URI + "&code=100002", null);
+		Parameters parameters = new Parameters();
+		parameters.addParameter().setName("system").setValue(new UriType(FHIRConstants.SNOMED_URI));
+		parameters.addParameter().setName("code").setValue(new CodeType("100003"));
+		addEntry(bundle, "/CodeSystem/$lookup", parameters);
+		addEntry(bundle, "CodeSystem/$lookup?system=" + FHIRConstants.SNOMED_URI + "&code=123001", null);
+		addEntry(bundle, "CodeSystem/$lookup?code=100002", null);
+		addEntry(bundle, "ValueSet/$expand?url=" + FHIRConstants.SNOMED_URI, null);
+
+		Bundle response = batchProvider.batch(bundle);
+		assertEquals(Bundle.BundleType.BATCHRESPONSE, response.getType());
+		assertEquals(5, response.getEntry().size());
+
+		// Entries are answered in request order
+		Bundle.BundleEntryComponent pizza = response.getEntry().get(0);
+		assertEquals("200 OK", pizza.getResponse().getStatus());
+		Parameters pizzaLookup = (Parameters) pizza.getResource();
+		assertEquals(Sets.newHashSet(SNOMEDCT_ROOT), getPropertyValues(pizzaLookup, FHIRConstants.PARENT.getValue()));
+		assertEquals(Sets.newHashSet("100003", "100004"), getPropertyValues(pizzaLookup, FHIRConstants.CHILD.getValue()));
+
+		Bundle.BundleEntryComponent cheesePizza = response.getEntry().get(1);
+		assertEquals("200 OK", cheesePizza.getResponse().getStatus());
+		Parameters cheesePizzaLookup = (Parameters) cheesePizza.getResource();
+		assertEquals(Sets.newHashSet("100002"), getPropertyValues(cheesePizzaLookup, FHIRConstants.PARENT.getValue()));
+		assertTrue(getPropertyValues(cheesePizzaLookup, FHIRConstants.CHILD.getValue()).isEmpty());
+
+		assertEquals("404 Not Found", response.getEntry().get(2).getResponse().getStatus());
+		assertEquals("400 Bad Request", response.getEntry().get(3).getResponse().getStatus());
+		assertEquals("400 Bad Request", response.getEntry().get(4).getResponse().getStatus());
+	}
+
+	@Test
+	public void batchSubsumesAndValidateCode() {
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.BATCH);
+		String system = "system=" + FHIRConstants.SNOMED_URI;
+		addEntry(bundle, "CodeSystem/$subsumes?" + system + "&codeA=100002&codeB=100003", null);
+		addEntry(bundle, "CodeSystem/$validate-code?" + system + "&code=100004&display=Ham%20Pizza", null);
+		addEntry(bundle, "CodeSystem/$subsumes?" + system + "&codeA=100003&codeB=100004", null);
+		addEntry(bundle, "CodeSystem/$validate-code?" + system + "&code=100004&display=Cheese%20Pizza", null);
+		addEntry(bundle, "CodeSystem/$subsumes?" + system + "&codeA=100002&codeB=123001", null);
+		addEntry(bundle, "CodeSystem/$validate-code?" + system + "&code=123001", null);
+
+		Bundle response = batchProvider.batch(bundle);
+		assertEquals(6, response.getEntry().size());
+		assertEquals(FHIRConstants.SUBSUMPTION_SUBSUMES, getParameterValue(response.getEntry().get(0), FHIRConstants.OUTCOME));
+		assertEquals("true", getParameterValue(response.getEntry().get(1), FHIRConstants.RESULT));
+		assertEquals(FHIRConstants.SUBSUMPTION_NOT_SUBSUMED, getParameterValue(response.getEntry().get(2), FHIRConstants.OUTCOME));
+		assertEquals("false", getParameterValue(response.getEntry().get(3), FHIRConstants.RESULT));
+		assertEquals("404 Not Found", response.getEntry().get(4).getResponse().getStatus());
+		assertEquals("false", getParameterValue(response.getEntry().get(5), FHIRConstants.RESULT));
+	}
+
+	private Relationship inferredIsA(String parentId) {
+		return new Relationship(ISA, parentId).setCharacteristicTypeId(Concepts.INFERRED_RELATIONSHIP);
+	}
+
+	private String getParameterValue(Bundle.BundleEntryComponent entry, String name) {
+		assertEquals("200 OK", entry.getResponse().getStatus());
+		return ((Parameters) entry.getResource()).getParameter().stream()
+				.filter(parameter -> name.equals(parameter.getName())).findFirst().get().getValue().primitiveValue();
+	}
+
+	private void addEntry(Bundle bundle, String url, Resource resource) {
+		Bundle.BundleEntryComponent entry = bundle.addEntry().setResource(resource);
+		entry.getRequest().setMethod(Bundle.HTTPVerb.GET).setUrl(url);
+	}
+
+	private Set<String> getPropertyValues(Parameters parameters, String propertyCode) {
+		return parameters.getParameter().stream()
+				.filter(parameter -> FHIRConstants.PROPERTY.equals(parameter.getName()))
+				.filter(property -> property.getPart().stream().anyMatch(part -> FHIRConstants.CODE.equals(part.getName()) && propertyCode.equals(part.getValue().primitiveValue())))
+				.map(property -> property.getPart().stream().filter(part -> FHIRConstants.VALUE.equals(part.getName())).findFirst().get().getValue().primitiveValue())
+				.collect(Collectors.toSet());
+	}
+
+}
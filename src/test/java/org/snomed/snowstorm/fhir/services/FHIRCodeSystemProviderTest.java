@@ -0,0 +1,113 @@
+package org.snomed.snowstorm.fhir.services;
+
+import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchService;
+import org.hl7.fhir.dstu3.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.fhir.config.FHIRConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class FHIRCodeSystemProviderTest extends AbstractTest {
+
+	@Autowired
+	private FHIRCodeSystemProvider codeSystemProvider;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create("MAIN");
+		CodeSystem codeSystem = new CodeSystem("SNOMEDCT", "MAIN");
+		codeSystemService.createCodeSystem(codeSystem);
+		conceptService.create(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100002").addRelationship(inferredIsA(SNOMEDCT_ROOT)).addFSN("Pizza"),
+				new Concept("100003").addRelationship(inferredIsA("100002")).addFSN("Cheese Pizza"),
+				new Concept("100004").addRelationship(inferredIsA("100003")).addFSN("Really Cheesy Pizza"),
+				new Concept("100005").addRelationship(inferredIsA("100002")).addFSN("Ham Pizza"),
+				new Concept("100006", null, false, Concepts.CORE_MODULE, Concepts.PRIMITIVE).addFSN("Old Pizza")
+		), "MAIN");
+		codeSystemService.createVersion(codeSystem, 20180731, "Test version");
+	}
+
+	@Test
+	public void subsumes() throws FHIROperationException {
+		assertEquals(FHIRConstants.SUBSUMPTION_EQUIVALENT, subsumes("100002", "100002"));
+		assertEquals(FHIRConstants.SUBSUMPTION_SUBSUMES, subsumes("100002", "100004"));
+		assertEquals(FHIRConstants.SUBSUMPTION_SUBSUMED_BY, subsumes("100004", "100002"));
+		assertEquals(FHIRConstants.SUBSUMPTION_NOT_SUBSUMED, subsumes("100004", "100005"));
+
+		try {
+			subsumes("100002", "123001");
+			fail("Unknown code should not be found.");
+		} catch (NotFoundException e) {
+			// Expected
+		}
+		try {
+			subsumes("100002", "100006");
+			fail("Inactive concept should not be found.");
+		} catch (NotFoundException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void validateCode() throws FHIROperationException {
+		assertTrue(validateCode("100003", null));
+		assertTrue(validateCode("100003", "Cheese Pizza"));
+		assertFalse(validateCode("100003", "Ham Pizza"));
+		assertFalse(validateCode("100006", null));
+		assertFalse(validateCode("123001", null));
+		assertFalse(validateCode("not-a-code", null));
+	}
+
+	private Relationship inferredIsA(String parentId) {
+		return new Relationship(ISA, parentId).setCharacteristicTypeId(Concepts.INFERRED_RELATIONSHIP);
+	}
+
+	private String subsumes(String codeA, String codeB) throws FHIROperationException {
+		Parameters parameters = codeSystemProvider.subsumes(new MockHttpServletRequest(), new MockHttpServletResponse(),
+				new CodeType(codeA), new CodeType(codeB), new UriType(FHIRConstants.SNOMED_URI), null);
+		return getParameterValue(parameters, FHIRConstants.OUTCOME);
+	}
+
+	private boolean validateCode(String code, String display) throws FHIROperationException {
+		Parameters parameters = codeSystemProvider.validateCode(new MockHttpServletRequest(), new MockHttpServletResponse(),
+				new CodeType(code), new UriType(FHIRConstants.SNOMED_URI), null, display != null ? new StringType(display) : null);
+		return Boolean.parseBoolean(getParameterValue(parameters, FHIRConstants.RESULT));
+	}
+
+	private String getParameterValue(Parameters parameters, String name) {
+		return parameters.getParameter().stream().filter(parameter -> name.equals(parameter.getName())).findFirst().get().getValue().primitiveValue();
+	}
+
+}
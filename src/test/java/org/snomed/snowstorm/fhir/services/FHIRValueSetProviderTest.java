@@ -0,0 +1,128 @@
+package org.snomed.snowstorm.fhir.services;
+
+import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchService;
+import org.hl7.fhir.dstu3.model.IntegerType;
+import org.hl7.fhir.dstu3.model.OperationOutcome.IssueType;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class FHIRValueSetProviderTest extends AbstractTest {
+
+	private static final String URL = "http://snomed.info/sct?fhir_vs=ecl/<100002";
+
+	@Autowired
+	private FHIRValueSetProvider valueSetProvider;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create("MAIN");
+		CodeSystem codeSystem = new CodeSystem("SNOMEDCT", "MAIN");
+		codeSystemService.createCodeSystem(codeSystem);
+		conceptService.create(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100002").addRelationship(inferredIsA(SNOMEDCT_ROOT)).addFSN("Pizza"),
+				new Concept("100003").addRelationship(inferredIsA("100002")).addFSN("Cheese Pizza"),
+				new Concept("100004").addRelationship(inferredIsA("100002")).addFSN("Really Cheesy Pizza"),
+				new Concept("100005").addRelationship(inferredIsA("100002")).addFSN("So Cheesy Pizza"),
+				new Concept("100006").addRelationship(inferredIsA("100002")).addFSN("Ham Pizza")
+		), "MAIN");
+		codeSystemService.createVersion(codeSystem, 20180731, "Test version");
+	}
+
+	@Test
+	public void expandPages() throws FHIROperationException {
+		ValueSet valueSet = expand(URL, null, 0, 10);
+		assertEquals(4, valueSet.getExpansion().getTotal());
+		assertEquals(0, valueSet.getExpansion().getOffset());
+		assertEquals(Lists.newArrayList("100003", "100004", "100005", "100006"), getCodes(valueSet));
+
+		ValueSet secondPage = expand(URL, null, 2, 2);
+		assertEquals(4, secondPage.getExpansion().getTotal());
+		assertEquals(2, secondPage.getExpansion().getOffset());
+		assertEquals(Lists.newArrayList("100005", "100006"), getCodes(secondPage));
+
+		ValueSet pastTheEnd = expand(URL, null, 10, 2);
+		assertEquals(4, pastTheEnd.getExpansion().getTotal());
+		assertTrue(getCodes(pastTheEnd).isEmpty());
+	}
+
+	@Test
+	public void expandWithFilter() throws FHIROperationException {
+		ValueSet valueSet = expand(URL, "Cheesy", 0, 10);
+		assertEquals(2, valueSet.getExpansion().getTotal());
+		Set<String> codes = getCodes(valueSet).stream().collect(Collectors.toSet());
+		assertTrue(codes.contains("100004"));
+		assertTrue(codes.contains("100005"));
+
+		// The ECL still applies to term matches
+		valueSet = expand(URL, "Pizza", 0, 10);
+		assertEquals(4, valueSet.getExpansion().getTotal());
+		assertFalse(getCodes(valueSet).contains("100002"));
+
+		valueSet = expand(URL, "Cheesy", 1, 1);
+		assertEquals(2, valueSet.getExpansion().getTotal());
+		assertEquals(1, getCodes(valueSet).size());
+	}
+
+	@Test
+	public void expandWithShortFilterRejected() throws FHIROperationException {
+		try {
+			expand(URL, "Pi", 0, 10);
+			fail("Filter shorter than the minimum term length should be rejected.");
+		} catch (FHIROperationException e) {
+			assertEquals(IssueType.VALUE, e.getIssueType());
+		}
+
+		// Rejection is not cached, a valid filter on the same value set still expands
+		assertEquals(4, expand(URL, "Piz", 0, 10).getExpansion().getTotal());
+	}
+
+	private Relationship inferredIsA(String parentId) {
+		return new Relationship(ISA, parentId).setCharacteristicTypeId(Concepts.INFERRED_RELATIONSHIP);
+	}
+
+	private ValueSet expand(String url, String filter, int offset, int count) throws FHIROperationException {
+		return valueSetProvider.expand(new MockHttpServletRequest(), new MockHttpServletResponse(), url, filter, null, new IntegerType(offset), new IntegerType(count));
+	}
+
+	private List<String> getCodes(ValueSet valueSet) {
+		return valueSet.getExpansion().getContains().stream().map(ValueSet.ValueSetExpansionContainsComponent::getCode).collect(Collectors.toList());
+	}
+
+}
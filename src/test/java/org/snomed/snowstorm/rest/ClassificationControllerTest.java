@@ -0,0 +1,106 @@
+package org.snomed.snowstorm.rest;
+
+import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.classification.Classification;
+import org.snomed.snowstorm.core.data.domain.classification.ClassificationStatus;
+import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
+import org.snomed.snowstorm.core.data.repositories.ClassificationRepository;
+import org.snomed.snowstorm.core.data.repositories.classification.RelationshipChangeRepository;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = TestConfig.class)
+public class ClassificationControllerTest extends AbstractTest {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private ClassificationRepository classificationRepository;
+
+	@Autowired
+	private RelationshipChangeRepository relationshipChangeRepository;
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create("MAIN");
+		conceptService.create(Lists.newArrayList(
+				new Concept(Concepts.ISA).addFSN("Is a (attribute)"),
+				new Concept("100001").addFSN("Heart structure (body structure)"),
+				new Concept("100002").addFSN("Cardiac \"valve\" structure (body structure)")
+		), "MAIN");
+	}
+
+	@Test
+	public void testStreamRelationshipChangesAcrossChunks() {
+		String classificationId = UUID.randomUUID().toString();
+		Classification classification = new Classification();
+		classification.setId(classificationId);
+		classification.setPath("MAIN");
+		classification.setStatus(ClassificationStatus.COMPLETED);
+		classificationRepository.save(classification);
+
+		List<RelationshipChange> changes = new ArrayList<>();
+		Set<String> relationshipIds = new HashSet<>();
+		for (int i = 0; i < 1_100; i++) {
+			String relationshipId = String.valueOf(300_000 + i);
+			relationshipIds.add(relationshipId);
+			changes.add(new RelationshipChange(classificationId, relationshipId, i % 2 == 0, "100002", "100001", 0, Concepts.ISA, Concepts.EXISTENTIAL));
+		}
+		relationshipChangeRepository.saveAll(changes);
+
+		String responseBody = this.restTemplate.getForObject("http://localhost:" + port + "/MAIN/classifications/" + classificationId + "/relationship-changes/stream", String.class);
+
+		String[] lines = responseBody.split("\\n");
+		assertThat(lines[0]).isEqualTo("changeNature\tsourceId\tsourceFsn\ttypeId\ttypeFsn\tdestinationId\tdestinationFsn\tdestinationNegated\tcharacteristicTypeId\tgroup\tid\tunionGroup\tmodifier");
+		assertThat(lines).hasSize(1 + changes.size());
+		Set<String> streamedIds = new HashSet<>();
+		for (int i = 1; i < lines.length; i++) {
+			String[] columns = lines[i].split("\t", -1);
+			assertThat(columns).hasSize(14);
+			assertThat(columns[0]).isIn("INFERRED", "REDUNDANT");
+			assertThat(columns[1]).isEqualTo("100002");
+			// Concept labels are joined for every chunk, not just the first
+			assertThat(columns[2]).isEqualTo("\"Cardiac \"valve\" structure (body structure)\"");
+			assertThat(columns[3]).isEqualTo(Concepts.ISA);
+			assertThat(columns[4]).isEqualTo("\"Is a (attribute)\"");
+			assertThat(columns[5]).isEqualTo("100001");
+			assertThat(columns[6]).isEqualTo("\"Heart structure (body structure)\"");
+			assertThat(columns[7]).isEqualTo("false");
+			assertThat(columns[8]).isEqualTo(Concepts.INFERRED_RELATIONSHIP);
+			assertThat(columns[9]).isEqualTo("0");
+			streamedIds.add(columns[10]);
+			assertThat(columns[11]).isEqualTo("0");
+			assertThat(columns[12]).isEqualTo("EXISTENTIAL");
+		}
+		assertThat(streamedIds).isEqualTo(relationshipIds);
+	}
+
+}
@@ -9,6 +9,7 @@ import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,7 +20,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.HashMap;
+import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -84,4 +85,39 @@ public class ConceptControllerTest extends AbstractTest {
 		assertThat(responseBody).contains("\"Wallace \\\"69\\\" side-to-end anastomosis - action (qualifier value)\"");
 		assertThat(responseBody).contains("\"Wallace \\\"69\\\" side-to-end anastomosis - action\"");
 	}
+
+	@Test
+	public void testStreamConceptsAcrossChunks() throws ServiceException {
+		String parentId = "100001";
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(parentId).addFSN("Parent (test)"));
+		Set<String> childIds = new HashSet<>();
+		for (int i = 0; i < 1_100; i++) {
+			String childId = String.valueOf(200_000 + i);
+			childIds.add(childId);
+			concepts.add(new Concept(childId).addRelationship(new Relationship(Concepts.ISA, parentId)).addFSN("Child " + i + " (test)"));
+		}
+		conceptService.create(concepts, "MAIN");
+
+		HashMap<String, Object> urlVariables = new HashMap<>();
+		urlVariables.put("statedEcl", "<" + parentId);
+		String responseBody = this.restTemplate.getForObject("http://localhost:" + port + "/MAIN/concepts/stream?statedEcl={statedEcl}", String.class, urlVariables);
+
+		String[] lines = responseBody.split("\n");
+		assertThat(lines[0]).isEqualTo("id\tfsn\teffectiveTime\tactive\tmoduleId\tdefinitionStatus");
+		assertThat(lines).hasSize(1 + childIds.size());
+		Set<String> streamedIds = new HashSet<>();
+		for (int i = 1; i < lines.length; i++) {
+			String[] columns = lines[i].split("\t", -1);
+			assertThat(columns).hasSize(6);
+			streamedIds.add(columns[0]);
+			assertThat(columns[1]).isEqualTo("Child " + (Integer.parseInt(columns[0]) - 200_000) + " (test)");
+			// Unreleased concepts have no effective time
+			assertThat(columns[2]).isEmpty();
+			assertThat(columns[3]).isEqualTo("true");
+			assertThat(columns[4]).isEqualTo(Concepts.CORE_MODULE);
+			assertThat(columns[5]).isEqualTo("PRIMITIVE");
+		}
+		assertThat(streamedIds).isEqualTo(childIds);
+	}
 }
@@ -2,6 +2,7 @@ package org.snomed.snowstorm.validation;
 
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.ihtsdo.drools.exception.RuleExecutorException;
 import org.junit.Assert;
 import org.junit.Before;
@@ -19,6 +20,9 @@ import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = TestConfig.class)
 public class ConceptDroolsValidationServiceTest extends AbstractTest {
@@ -62,4 +66,22 @@ public class ConceptDroolsValidationServiceTest extends AbstractTest {
 		}
 	}
 
+	@Test
+	public void isActivePrefetched() throws Exception {
+		DroolsValidationContext context = new DroolsValidationContext(Collections.emptySet());
+		context.setConceptActivityIndex(new ConceptActivityIndex(Arrays.asList("100001", "100002", "100003"),
+				new LongOpenHashSet(new long[] {100001}), new LongOpenHashSet(new long[] {100002})));
+		ConceptDroolsValidationService prefetchedService = new ConceptDroolsValidationService("MAIN", versionControlHelper.getBranchCriteria("MAIN"),
+				elasticsearchOperations, queryService, context);
+
+		Assert.assertTrue(prefetchedService.isActive("100001"));
+		Assert.assertFalse(prefetchedService.isActive("100002"));
+		try {
+			prefetchedService.isActive("100003");
+			Assert.fail("Should have thrown exception.");
+		} catch (RuleExecutorException e) {
+			// good
+		}
+	}
+
 }
@@ -0,0 +1,127 @@
+package org.snomed.snowstorm.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.validation.domain.DroolsConcept;
+import org.snomed.snowstorm.validation.domain.DroolsDescription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class DescriptionDroolsValidationServiceTest extends AbstractTest {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private QueryService queryService;
+
+	@Autowired
+	private DroolsValidationService droolsValidationService;
+
+	private DescriptionDroolsValidationService validationService;
+
+	private BranchCriteria branchCriteria;
+
+	@Before
+	public void setup() throws ServiceException {
+		String branch = "MAIN";
+		branchService.create(branch);
+		conceptService.create(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Body structure"),
+				new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Clinical finding"),
+				new Concept("100003").addRelationship(new Relationship(ISA, "100001")).addDescription(new Description("Structure of heart")),
+				new Concept("100004").addRelationship(new Relationship(ISA, "100002")).addDescription(new Description("Structure of heart")),
+				new Concept("100005").addRelationship(new Relationship(ISA, "100001")).addDescription(new Description("Structure of heart wall")),
+				new Concept("100006").addRelationship(new Relationship(ISA, "100003")).addDescription(new Description("Structure of heart"))
+		), branch);
+
+		branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		validationService = new DescriptionDroolsValidationService(branch, branchCriteria,
+				elasticsearchOperations, descriptionService, queryService);
+	}
+
+	@Test
+	public void findMatchingDescriptionInHierarchy() {
+		Concept concept = new Concept("100007").addRelationship(new Relationship(ISA, "100003"));
+		Description description = new Description("Structure of heart");
+		concept.addDescription(description);
+
+		Set<org.ihtsdo.drools.domain.Description> matches = validationService.findMatchingDescriptionInHierarchy(new DroolsConcept(concept), new DroolsDescription(description));
+		Assert.assertEquals(Sets.newHashSet("100003", "100006"), matches.stream().map(org.ihtsdo.drools.domain.Description::getConceptId).collect(Collectors.toSet()));
+
+		Description noMatch = new Description("Structure of");
+		concept.addDescription(noMatch);
+		Assert.assertTrue(validationService.findMatchingDescriptionInHierarchy(new DroolsConcept(concept), new DroolsDescription(noMatch)).isEmpty());
+	}
+
+	@Test
+	public void findMatchingDescriptionInHierarchyPrefetched() {
+		Concept heartConcept = new Concept("100007").addRelationship(new Relationship(ISA, "100003"));
+		Description heart = new Description("Structure of heart");
+		heartConcept.addDescription(heart);
+		Concept wallConcept = new Concept("100008").addRelationship(new Relationship(ISA, "100002"));
+		Description wall = new Description("Structure of heart wall");
+		wallConcept.addDescription(wall);
+		Set<DroolsConcept> droolsConcepts = Sets.newHashSet(new DroolsConcept(heartConcept), new DroolsConcept(wallConcept));
+
+		// All terms of the batch are matched by the prefetch, not per description
+		DroolsValidationContext context = droolsValidationService.prefetchValidationContext(droolsConcepts, "MAIN", branchCriteria);
+		Assert.assertEquals(3, context.getActiveDescriptionsByTerm(DescriptionDroolsValidationService.toTermKey("en", "Structure of heart")).size());
+		Assert.assertEquals(1, context.getActiveDescriptionsByTerm(DescriptionDroolsValidationService.toTermKey("en", "Structure of heart wall")).size());
+
+		context.setHierarchyRootIds(Sets.newHashSet("100001", "100002"));
+		DescriptionDroolsValidationService prefetchedService = new DescriptionDroolsValidationService("MAIN", branchCriteria,
+				elasticsearchOperations, descriptionService, queryService, context);
+		for (DroolsConcept droolsConcept : droolsConcepts) {
+			for (org.ihtsdo.drools.domain.Description description : droolsConcept.getDescriptions()) {
+				Assert.assertEquals(validationService.findMatchingDescriptionInHierarchy(droolsConcept, description).stream()
+								.map(org.ihtsdo.drools.domain.Description::getId).collect(Collectors.toSet()),
+						prefetchedService.findMatchingDescriptionInHierarchy(droolsConcept, description).stream()
+								.map(org.ihtsdo.drools.domain.Description::getId).collect(Collectors.toSet()));
+			}
+		}
+		Assert.assertEquals(Sets.newHashSet("100003", "100006"), prefetchedService.findMatchingDescriptionInHierarchy(new DroolsConcept(heartConcept), new DroolsDescription(heart))
+				.stream().map(org.ihtsdo.drools.domain.Description::getConceptId).collect(Collectors.toSet()));
+		Assert.assertTrue(prefetchedService.findMatchingDescriptionInHierarchy(new DroolsConcept(wallConcept), new DroolsDescription(wall)).isEmpty());
+	}
+
+}
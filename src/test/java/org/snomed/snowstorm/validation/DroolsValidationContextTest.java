@@ -0,0 +1,127 @@
+package org.snomed.snowstorm.validation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.ihtsdo.drools.exception.RuleExecutorException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.validation.domain.DroolsConcept;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class DroolsValidationContextTest extends AbstractTest {
+
+	private static final String BRANCH = "MAIN";
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Autowired
+	private QueryService queryService;
+
+	@Autowired
+	private DroolsValidationService droolsValidationService;
+
+	@Before
+	public void setup() throws ServiceException {
+		branchService.create(BRANCH);
+		conceptService.create(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Body structure (body structure)"),
+				new Concept("100002").addRelationship(new Relationship(ISA, "100001")).addFSN("Heart structure (body structure)"),
+				new Concept("100003").addRelationship(new Relationship(ISA, "100002")).addFSN("Heart valve structure (body structure)"),
+				new Concept("100004", null, false, Concepts.CORE_MODULE, Concepts.PRIMITIVE).addFSN("Old structure (body structure)")
+		), BRANCH);
+	}
+
+	@Test
+	public void prefetchedLookupsMatchPerCallLookups() {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(BRANCH);
+		DroolsConcept newConcept = new DroolsConcept(new Concept("100005")
+				.addRelationship(new Relationship(ISA, "100003"))
+				.addRelationship(new Relationship("100001", "100004")));
+		DroolsConcept existingConcept = new DroolsConcept(conceptService.find("100002", BRANCH));
+
+		DroolsValidationContext context = droolsValidationService.prefetchValidationContext(Sets.newHashSet(newConcept, existingConcept), BRANCH, branchCriteria);
+		Set<String> referencedIds = Sets.newHashSet(SNOMEDCT_ROOT, "100001", "100002", "100003", "100004");
+		Assert.assertTrue(context.getReferencedConceptIds().containsAll(Sets.newHashSet("100001", "100002", "100003", "100004")));
+		Assert.assertNotNull("Ancestors of referenced concepts are prefetched.", context.getStatedSelfOrAncestorIds(Collections.singleton("100003")));
+		Assert.assertNotNull("Relationships of referenced concepts are prefetched.", context.hasActiveRelationship("100003", ISA));
+		Assert.assertNotNull("Activity of referenced concepts is prefetched.", context.getConceptActivityIndex().isActive("100004"));
+
+		ConceptDroolsValidationService perCallConcepts = new ConceptDroolsValidationService(BRANCH, branchCriteria, elasticsearchOperations, queryService);
+		ConceptDroolsValidationService prefetchedConcepts = new ConceptDroolsValidationService(BRANCH, branchCriteria, elasticsearchOperations, queryService, context);
+		Assert.assertEquals(Sets.newHashSet(SNOMEDCT_ROOT, "100001", "100002", "100003"), perCallConcepts.findStatedAncestorsOfConcept(newConcept));
+		Assert.assertEquals(perCallConcepts.findStatedAncestorsOfConcept(newConcept), prefetchedConcepts.findStatedAncestorsOfConcept(newConcept));
+		Assert.assertEquals(perCallConcepts.findStatedAncestorsOfConcept(existingConcept), prefetchedConcepts.findStatedAncestorsOfConcept(existingConcept));
+		for (String conceptId : Lists.newArrayList("100001", "100002", "100003", "100004")) {
+			Assert.assertEquals(conceptId, perCallConcepts.isActive(conceptId), prefetchedConcepts.isActive(conceptId));
+		}
+		assertNotFound(perCallConcepts, "100005");
+		assertNotFound(prefetchedConcepts, "100005");
+
+		RelationshipDroolsValidationService perCallRelationships = new RelationshipDroolsValidationService(branchCriteria, elasticsearchOperations);
+		RelationshipDroolsValidationService prefetchedRelationships = new RelationshipDroolsValidationService(branchCriteria, elasticsearchOperations, context);
+		for (String conceptId : referencedIds) {
+			for (String typeId : Lists.newArrayList(null, ISA, "100001")) {
+				Assert.assertEquals(conceptId + " " + typeId, perCallRelationships.hasActiveInboundStatedRelationship(conceptId, typeId),
+						prefetchedRelationships.hasActiveInboundStatedRelationship(conceptId, typeId));
+			}
+		}
+
+		DescriptionDroolsValidationService perCallDescriptions = new DescriptionDroolsValidationService(BRANCH, branchCriteria,
+				elasticsearchOperations, descriptionService, queryService);
+		DescriptionDroolsValidationService prefetchedDescriptions = new DescriptionDroolsValidationService(BRANCH, branchCriteria,
+				elasticsearchOperations, descriptionService, queryService, context);
+		Set<String> fsnConceptIds = Sets.newHashSet("100001", "100003", "100004");
+		Assert.assertNotNull("FSNs of referenced concepts are prefetched.", context.getFSNs(fsnConceptIds));
+		Assert.assertEquals(perCallDescriptions.getFSNs(fsnConceptIds), prefetchedDescriptions.getFSNs(fsnConceptIds));
+		Assert.assertEquals(perCallDescriptions.getFSNs(Collections.singleton("100002")), prefetchedDescriptions.getFSNs(Collections.singleton("100002")));
+	}
+
+	private void assertNotFound(ConceptDroolsValidationService service, String conceptId) {
+		try {
+			service.isActive(conceptId);
+			Assert.fail("Should have thrown exception.");
+		} catch (RuleExecutorException e) {
+			// good
+		}
+	}
+
+}